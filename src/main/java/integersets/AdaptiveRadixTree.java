@@ -0,0 +1,912 @@
+package integersets;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of the {@code AdaptiveRadixTree} data structure (Leis, Kemper and Neumann), a
+ * radix trie over the 8 bytes of the keys, most significant byte first, so that at most 8 inner
+ * nodes are visited per operation.
+ *
+ * <p>The inner nodes adapt their layout to the number of children: {@code Node4} and
+ * {@code Node16} keep sorted arrays of key bytes and children, {@code Node48} maps each byte to one
+ * of 48 children and {@code Node256} indexes its children directly by byte. Paths are compressed:
+ * every inner node stores the bytes shared by all keys below it, so chains of single-child nodes
+ * never exist. Expansion is lazy: a leaf is stored as soon as its key is unique, at any depth.
+ *
+ * <p>Every inner node counts the leaves below it, which gives rank and select in one descent.
+ */
+public class AdaptiveRadixTree implements RankSelectPredecessorUpdate {
+
+  /**
+   * Word size.
+   */
+  private static final int w = Long.SIZE;
+
+  abstract static class ArtNode {
+
+    /**
+     * The number of leaves below. Inner nodes also copy the counts of their children into an
+     * array parallel to them, so that rank and select scan contiguous memory.
+     */
+    long count;
+  }
+
+  static class Leaf extends ArtNode {
+
+    final long key;
+
+    Leaf(final long key) {
+      this.key = key;
+      count = 1;
+    }
+  }
+
+  /**
+   * Inner node. All keys below share their first {@code level} bytes, those of {@code prefix},
+   * and the node branches on byte {@code level}.
+   */
+  abstract static class Inner extends ArtNode {
+
+    final int level;
+    final long prefix;
+
+    Inner(final int level, final long prefix, final long count) {
+      this.level = level;
+      this.prefix = prefix & maskTop(level);
+      this.count = count;
+    }
+
+    /** Returns the number of children. */
+    abstract int size();
+
+    /** Returns the child at byte {@code c}, or {@code null}. */
+    abstract ArtNode find(int c);
+
+    /** Adds a child at byte {@code c}, which must be free, and returns the node to be used. */
+    abstract Inner add(int c, ArtNode child);
+
+    /** Replaces the child at byte {@code c}, which must exist. */
+    abstract void replace(int c, ArtNode child);
+
+    /** Removes the child at byte {@code c}, which must exist, and returns the node to be used. */
+    abstract Inner remove(int c);
+
+    /** Returns the smallest byte larger than {@code c} with a child, or {@code 256}. */
+    abstract int next(int c);
+
+    /** Returns the largest byte smaller than {@code c} with a child, or {@code -1}. */
+    abstract int prev(int c);
+
+    /** Returns the number of leaves below the children at bytes smaller than {@code c}. */
+    abstract long countBelow(int c);
+
+    /** Returns the byte of the child holding the leaf of rank {@code rank} below this node. */
+    abstract int selectByte(long rank);
+  }
+
+  /**
+   * Inner node keeping its key bytes and children in sorted arrays.
+   */
+  abstract static class SortedNode extends Inner {
+
+    final byte[] keys;
+    final ArtNode[] children;
+    final long[] counts;
+    int size;
+
+    SortedNode(final int capacity, final int level, final long prefix, final long count) {
+      super(level, prefix, count);
+      keys = new byte[capacity];
+      children = new ArtNode[capacity];
+      counts = new long[capacity];
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    private int indexOf(final int c) {
+      for (int i = 0; i < size; i++) {
+        if ((keys[i] & 0xFF) == c) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    ArtNode find(final int c) {
+      final int i = indexOf(c);
+      return i < 0 ? null : children[i];
+    }
+
+    /** Inserts a child at byte {@code c}. There must be room for it. */
+    void put(final int c, final ArtNode child) {
+      int i = size;
+      while (i > 0 && (keys[i - 1] & 0xFF) > c) {
+        keys[i] = keys[i - 1];
+        children[i] = children[i - 1];
+        counts[i] = counts[i - 1];
+        i--;
+      }
+      keys[i] = (byte) c;
+      children[i] = child;
+      counts[i] = child.count;
+      size++;
+    }
+
+    @Override
+    void replace(final int c, final ArtNode child) {
+      final int i = indexOf(c);
+      children[i] = child;
+      counts[i] = child.count;
+    }
+
+    /** Removes the child at byte {@code c}. */
+    void erase(final int c) {
+      final int i = indexOf(c);
+      System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+      System.arraycopy(children, i + 1, children, i, size - i - 1);
+      System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+      size--;
+      children[size] = null;
+    }
+
+    @Override
+    int next(final int c) {
+      for (int i = 0; i < size; i++) {
+        if ((keys[i] & 0xFF) > c) {
+          return keys[i] & 0xFF;
+        }
+      }
+      return 256;
+    }
+
+    @Override
+    int prev(final int c) {
+      for (int i = size - 1; i >= 0; i--) {
+        if ((keys[i] & 0xFF) < c) {
+          return keys[i] & 0xFF;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    long countBelow(final int c) {
+      long res = 0;
+      for (int i = 0; i < size && (keys[i] & 0xFF) < c; i++) {
+        res += counts[i];
+      }
+      return res;
+    }
+
+    @Override
+    int selectByte(long rank) {
+      int i = 0;
+      while (rank >= counts[i]) {
+        rank -= counts[i++];
+      }
+      return keys[i] & 0xFF;
+    }
+  }
+
+  static class Node4 extends SortedNode {
+
+    Node4(final int level, final long prefix, final long count) {
+      super(4, level, prefix, count);
+    }
+
+    @Override
+    Inner add(final int c, final ArtNode child) {
+      if (size < 4) {
+        put(c, child);
+        return this;
+      }
+      final Node16 res = new Node16(level, prefix, count);
+      for (int i = 0; i < size; i++) {
+        res.put(keys[i] & 0xFF, children[i]);
+      }
+      res.put(c, child);
+      return res;
+    }
+
+    @Override
+    Inner remove(final int c) {
+      erase(c);
+      return this;
+    }
+  }
+
+  static class Node16 extends SortedNode {
+
+    Node16(final int level, final long prefix, final long count) {
+      super(16, level, prefix, count);
+    }
+
+    @Override
+    Inner add(final int c, final ArtNode child) {
+      if (size < 16) {
+        put(c, child);
+        return this;
+      }
+      final Node48 res = new Node48(level, prefix, count);
+      for (int i = 0; i < size; i++) {
+        res.add(keys[i] & 0xFF, children[i]);
+      }
+      res.add(c, child);
+      return res;
+    }
+
+    @Override
+    Inner remove(final int c) {
+      erase(c);
+      if (size > 3) {
+        return this;
+      }
+      final Node4 res = new Node4(level, prefix, count);
+      for (int i = 0; i < size; i++) {
+        res.put(keys[i] & 0xFF, children[i]);
+      }
+      return res;
+    }
+  }
+
+  static class Node48 extends Inner {
+
+    /** The position in {@code children} plus one of the child at each byte, zero if none. */
+    final byte[] index = new byte[256];
+    final ArtNode[] children = new ArtNode[48];
+    final long[] counts = new long[48];
+    int size;
+
+    Node48(final int level, final long prefix, final long count) {
+      super(level, prefix, count);
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    ArtNode find(final int c) {
+      final int i = index[c];
+      return i == 0 ? null : children[i - 1];
+    }
+
+    @Override
+    Inner add(final int c, final ArtNode child) {
+      if (size < 48) {
+        int i = 0;
+        while (children[i] != null) {
+          i++;
+        }
+        children[i] = child;
+        counts[i] = child.count;
+        index[c] = (byte) (i + 1);
+        size++;
+        return this;
+      }
+      final Node256 res = new Node256(level, prefix, count);
+      for (int b = 0; b < 256; b++) {
+        if (index[b] != 0) {
+          res.add(b, children[index[b] - 1]);
+        }
+      }
+      res.add(c, child);
+      return res;
+    }
+
+    @Override
+    void replace(final int c, final ArtNode child) {
+      children[index[c] - 1] = child;
+      counts[index[c] - 1] = child.count;
+    }
+
+    @Override
+    Inner remove(final int c) {
+      children[index[c] - 1] = null;
+      counts[index[c] - 1] = 0;
+      index[c] = 0;
+      size--;
+      if (size > 12) {
+        return this;
+      }
+      final Node16 res = new Node16(level, prefix, count);
+      for (int b = 0; b < 256; b++) {
+        if (index[b] != 0) {
+          res.put(b, children[index[b] - 1]);
+        }
+      }
+      return res;
+    }
+
+    @Override
+    int next(int c) {
+      while (++c < 256 && index[c] == 0) {
+        continue;
+      }
+      return c;
+    }
+
+    @Override
+    int prev(int c) {
+      while (--c >= 0 && index[c] == 0) {
+        continue;
+      }
+      return c;
+    }
+
+    @Override
+    long countBelow(final int c) {
+      // scan the shorter side of c
+      long res = 0;
+      if (c <= 128) {
+        for (int b = 0; b < c; b++) {
+          if (index[b] != 0) {
+            res += counts[index[b] - 1];
+          }
+        }
+        return res;
+      }
+      for (int b = c; b < 256; b++) {
+        if (index[b] != 0) {
+          res += counts[index[b] - 1];
+        }
+      }
+      return count - res;
+    }
+
+    @Override
+    int selectByte(long rank) {
+      int b = 0;
+      while (index[b] == 0 || rank >= counts[index[b] - 1]) {
+        if (index[b] != 0) {
+          rank -= counts[index[b] - 1];
+        }
+        b++;
+      }
+      return b;
+    }
+  }
+
+  static class Node256 extends Inner {
+
+    final ArtNode[] children = new ArtNode[256];
+    final long[] counts = new long[256];
+    int size;
+
+    Node256(final int level, final long prefix, final long count) {
+      super(level, prefix, count);
+    }
+
+    @Override
+    int size() {
+      return size;
+    }
+
+    @Override
+    ArtNode find(final int c) {
+      return children[c];
+    }
+
+    @Override
+    Inner add(final int c, final ArtNode child) {
+      children[c] = child;
+      counts[c] = child.count;
+      size++;
+      return this;
+    }
+
+    @Override
+    void replace(final int c, final ArtNode child) {
+      children[c] = child;
+      counts[c] = child.count;
+    }
+
+    @Override
+    Inner remove(final int c) {
+      children[c] = null;
+      counts[c] = 0;
+      size--;
+      if (size > 37) {
+        return this;
+      }
+      final Node48 res = new Node48(level, prefix, count);
+      for (int b = 0; b < 256; b++) {
+        if (children[b] != null) {
+          res.add(b, children[b]);
+        }
+      }
+      return res;
+    }
+
+    @Override
+    int next(int c) {
+      while (++c < 256 && children[c] == null) {
+        continue;
+      }
+      return c;
+    }
+
+    @Override
+    int prev(int c) {
+      while (--c >= 0 && children[c] == null) {
+        continue;
+      }
+      return c;
+    }
+
+    @Override
+    long countBelow(final int c) {
+      // scan the shorter side of c
+      long res = 0;
+      if (c <= 128) {
+        for (int b = 0; b < c; b++) {
+          res += counts[b];
+        }
+        return res;
+      }
+      for (int b = c; b < 256; b++) {
+        res += counts[b];
+      }
+      return count - res;
+    }
+
+    @Override
+    int selectByte(long rank) {
+      int b = 0;
+      while (rank >= counts[b]) {
+        rank -= counts[b++];
+      }
+      return b;
+    }
+  }
+
+  private ArtNode root;
+  private long removed; // the key found by the last deleteByRank
+
+  /**
+   * Constructs an empty {@code AdaptiveRadixTree}.
+   */
+  public AdaptiveRadixTree() {
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    root = null;
+  }
+
+  @Override
+  public long size() {
+    return root == null ? 0 : root.count;
+  }
+
+  /**
+   * Returns a word with the bits of the first {@code level} bytes set.
+   */
+  private static long maskTop(final int level) {
+    return level == 0 ? 0L : -1L << (w - 8 * level);
+  }
+
+  /**
+   * Returns byte {@code level} of {@code x}, counting from the most significant.
+   */
+  private static int byteAt(final long x, final int level) {
+    return (int) (x >>> (w - 8 - 8 * level)) & 0xFF;
+  }
+
+  /**
+   * Returns the index of the first byte where {@code x} and {@code y} differ.
+   */
+  private static int firstDifferingByte(final long x, final long y) {
+    return (w - 1 - Util.msb(x ^ y)) / 8;
+  }
+
+  /**
+   * Returns {@code true} if {@code x} has the prefix of the inner node {@code node}.
+   */
+  private static boolean matches(final Inner node, final long x) {
+    return ((x ^ node.prefix) & maskTop(node.level)) == 0;
+  }
+
+  @Override
+  public void insert(final long x) {
+    if (root == null) {
+      root = new Leaf(x);
+      return;
+    }
+    if (member(x)) {
+      return;
+    }
+    root = insert(root, x);
+  }
+
+  private ArtNode insert(final ArtNode node, final long x) {
+    if (node instanceof Leaf) {
+      final long key = ((Leaf) node).key;
+      final int level = firstDifferingByte(x, key);
+      final Node4 res = new Node4(level, x, 2);
+      res.put(byteAt(key, level), node);
+      res.put(byteAt(x, level), new Leaf(x));
+      return res;
+    }
+
+    Inner inner = (Inner) node;
+    if (!matches(inner, x)) {
+      // x leaves the compressed path of the node: a new node branches above it
+      final int level = firstDifferingByte(x, inner.prefix);
+      final Node4 res = new Node4(level, x, inner.count + 1);
+      res.put(byteAt(inner.prefix, level), inner);
+      res.put(byteAt(x, level), new Leaf(x));
+      return res;
+    }
+
+    final int c = byteAt(x, inner.level);
+    final ArtNode child = inner.find(c);
+    if (child == null) {
+      inner = inner.add(c, new Leaf(x));
+    } else {
+      inner.replace(c, insert(child, x));
+    }
+    inner.count++;
+    return inner;
+  }
+
+  @Override
+  public void delete(final long x) {
+    if (!member(x)) {
+      return;
+    }
+    root = delete(root, x);
+  }
+
+  private ArtNode delete(final ArtNode node, final long x) {
+    if (node instanceof Leaf) {
+      return null;
+    }
+
+    final Inner inner = (Inner) node;
+    final int c = byteAt(x, inner.level);
+    final ArtNode child = inner.find(c);
+    return shrink(inner, c, delete(child, x));
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+    root = deleteByRank(root, rank);
+    return removed;
+  }
+
+  /**
+   * Removes the key with rank {@code rank} below {@code node}, descending by the counts as in
+   * {@code select}.
+   */
+  private ArtNode deleteByRank(final ArtNode node, final long rank) {
+    if (node instanceof Leaf) {
+      removed = ((Leaf) node).key;
+      return null;
+    }
+
+    final Inner inner = (Inner) node;
+    final int c = inner.selectByte(rank);
+    return shrink(inner, c, deleteByRank(inner.find(c), rank - inner.countBelow(c)));
+  }
+
+  /**
+   * Replaces the child at byte {@code c} of {@code inner}, from which one key has been removed,
+   * by {@code newChild}, and returns the node that replaces {@code inner}.
+   */
+  private static ArtNode shrink(Inner inner, final int c, final ArtNode newChild) {
+    if (newChild == null) {
+      inner = inner.remove(c);
+      if (inner.size() == 1) {
+        // the remaining child already holds the whole compressed path
+        return inner.find(inner.next(-1));
+      }
+    } else {
+      inner.replace(c, newChild);
+    }
+    inner.count--;
+    return inner;
+  }
+
+  @Override
+  public boolean member(final long x) {
+    ArtNode node = root;
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      if (!matches(inner, x)) {
+        return false;
+      }
+      node = inner.find(byteAt(x, inner.level));
+    }
+    return node != null && ((Leaf) node).key == x;
+  }
+
+  @Override
+  public long rank(final long x) {
+    long res = 0;
+    ArtNode node = root;
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      if (!matches(inner, x)) {
+        // either all or none of the keys below are smaller than x
+        return Long.compareUnsigned(x, inner.prefix) > 0 ? res + inner.count : res;
+      }
+      final int c = byteAt(x, inner.level);
+      res += inner.countBelow(c);
+      node = inner.find(c);
+    }
+    if (node != null && Long.compareUnsigned(((Leaf) node).key, x) < 0) {
+      res++;
+    }
+    return res;
+  }
+
+  @Override
+  public Long select(long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    ArtNode node = root;
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      final int c = inner.selectByte(rank);
+      rank -= inner.countBelow(c);
+      node = inner.find(c);
+    }
+    return ((Leaf) node).key;
+  }
+
+  @Override
+  public Long successor(final long x) {
+    return root == null ? null : successor(root, x);
+  }
+
+  private Long successor(final ArtNode node, final long x) {
+    if (node instanceof Leaf) {
+      final long key = ((Leaf) node).key;
+      return Long.compareUnsigned(key, x) >= 0 ? key : null;
+    }
+
+    final Inner inner = (Inner) node;
+    if (!matches(inner, x)) {
+      return Long.compareUnsigned(x, inner.prefix) < 0 ? min(inner) : null;
+    }
+    final int c = byteAt(x, inner.level);
+    final ArtNode child = inner.find(c);
+    if (child != null) {
+      final Long res = successor(child, x);
+      if (res != null) {
+        return res;
+      }
+    }
+    final int next = inner.next(c);
+    return next < 256 ? min(inner.find(next)) : null;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    return root == null ? null : predecessor(root, x);
+  }
+
+  private Long predecessor(final ArtNode node, final long x) {
+    if (node instanceof Leaf) {
+      final long key = ((Leaf) node).key;
+      return Long.compareUnsigned(key, x) < 0 ? key : null;
+    }
+
+    final Inner inner = (Inner) node;
+    if (!matches(inner, x)) {
+      return Long.compareUnsigned(x, inner.prefix) > 0 ? max(inner) : null;
+    }
+    final int c = byteAt(x, inner.level);
+    final ArtNode child = inner.find(c);
+    if (child != null) {
+      final Long res = predecessor(child, x);
+      if (res != null) {
+        return res;
+      }
+    }
+    final int prev = inner.prev(c);
+    return prev >= 0 ? max(inner.find(prev)) : null;
+  }
+
+  @Override
+  public Long peekFirst() {
+    return root == null ? null : min(root);
+  }
+
+  @Override
+  public Long peekLast() {
+    return root == null ? null : max(root);
+  }
+
+  private static long min(ArtNode node) {
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      node = inner.find(inner.next(-1));
+    }
+    return ((Leaf) node).key;
+  }
+
+  private static long max(ArtNode node) {
+    while (node instanceof Inner) {
+      final Inner inner = (Inner) node;
+      node = inner.find(inner.prev(256));
+    }
+    return ((Leaf) node).key;
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor keeps the inner nodes from the root to its leaf, and the byte taken at each,
+   * in an explicit stack of at most 8 entries, so a full scan visits every node a constant number
+   * of times and moves to the next byte of a node with {@code next} or {@code prev}.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new ArtCursor();
+  }
+
+  private final class ArtCursor implements LongCursor {
+
+    // path[i] is the inner node at depth i and bytes[i] the byte of its child on the path
+    private final Inner[] path = new Inner[8];
+    private final int[] bytes = new int[8];
+    private int depth;
+    private Leaf leaf; // the leaf at the cursor, or null if the cursor is off the keys
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      depth = 0;
+      leaf = null;
+      ArtNode node = root;
+      if (node == null) {
+        after = true;
+        return false;
+      }
+
+      while (node instanceof Inner) {
+        final Inner inner = (Inner) node;
+        if (!matches(inner, x)) {
+          // either all or none of the keys below are smaller than x
+          if (Long.compareUnsigned(x, inner.prefix) < 0) {
+            descend(inner, false);
+            return true;
+          }
+          descend(inner, true);
+          return next();
+        }
+        final int c = byteAt(x, inner.level);
+        node = inner.find(c);
+        if (node == null) {
+          final int next = inner.next(c);
+          if (next < 256) {
+            push(inner, next);
+            descend(inner.find(next), false);
+            return true;
+          }
+          final int prev = inner.prev(c);
+          push(inner, prev);
+          descend(inner.find(prev), true);
+          return next();
+        }
+        push(inner, c);
+      }
+      leaf = (Leaf) node;
+      return Long.compareUnsigned(leaf.key, x) >= 0 || next();
+    }
+
+    @Override
+    public boolean next() {
+      if (leaf == null) {
+        if (after || root == null) {
+          after = true;
+          return false;
+        }
+        depth = 0;
+        descend(root, false);
+        return true;
+      }
+
+      while (depth > 0) {
+        final Inner inner = path[depth - 1];
+        final int c = inner.next(bytes[depth - 1]);
+        if (c < 256) {
+          bytes[depth - 1] = c;
+          descend(inner.find(c), false);
+          return true;
+        }
+        depth--;
+      }
+      leaf = null;
+      after = true;
+      return false;
+    }
+
+    @Override
+    public boolean prev() {
+      if (leaf == null) {
+        if (!after || root == null) {
+          after = false;
+          return false;
+        }
+        depth = 0;
+        descend(root, true);
+        return true;
+      }
+
+      while (depth > 0) {
+        final Inner inner = path[depth - 1];
+        final int c = inner.prev(bytes[depth - 1]);
+        if (c >= 0) {
+          bytes[depth - 1] = c;
+          descend(inner.find(c), true);
+          return true;
+        }
+        depth--;
+      }
+      leaf = null;
+      after = false;
+      return false;
+    }
+
+    @Override
+    public long current() {
+      if (leaf == null) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return leaf.key;
+    }
+
+    private void push(final Inner inner, final int c) {
+      path[depth] = inner;
+      bytes[depth++] = c;
+    }
+
+    /**
+     * Pushes the path from {@code node} to its smallest leaf, or its largest if {@code largest}.
+     */
+    private void descend(ArtNode node, final boolean largest) {
+      while (node instanceof Inner) {
+        final Inner inner = (Inner) node;
+        final int c = largest ? inner.prev(256) : inner.next(-1);
+        push(inner, c);
+        node = inner.find(c);
+      }
+      leaf = (Leaf) node;
+    }
+  }
+
+  /**
+   * Returns the number of levels of inner nodes on the longest path, at most 8.
+   * @return the height of the tree
+   */
+  public int height() {
+    return height(root);
+  }
+
+  private int height(final ArtNode node) {
+    if (!(node instanceof Inner)) {
+      return 0;
+    }
+    final Inner inner = (Inner) node;
+    int res = 0;
+    for (int c = inner.next(-1); c < 256; c = inner.next(c)) {
+      res = Math.max(res, height(inner.find(c)));
+    }
+    return res + 1;
+  }
+}
@@ -0,0 +1,175 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * Helper functions for the batched queries of {@code RankSelectPredecessorUpdate}. A batch
+ * implementation handles its queries in ascending order, so that every query can go on from where
+ * the previous one stopped; {@code inOrder} hands it the queries as they are if they are sorted, and
+ * a radix sorted copy otherwise.
+ */
+final class BatchQueries {
+
+  private static final int DIGIT = 8;
+  private static final int RADIX = 1 << DIGIT;
+
+  /**
+   * The largest gap in rank that {@code selectSorted} crosses by moving its cursor instead of
+   * selecting again.
+   */
+  private static final int MAX_STEPS = 16;
+
+  private BatchQueries() {}
+
+  /**
+   * Answers {@code queries} with {@code sorted}, a batch implementation for queries in ascending
+   * unsigned order, sorting a copy of the queries first if they are not in order.
+   * @param queries the queries
+   * @param out the array receiving the answer to {@code queries[i]} at position {@code i}
+   * @param sorted the batch implementation for sorted queries
+   */
+  static void inOrder(final long[] queries, final long[] out,
+      final BiConsumer<long[], long[]> sorted) {
+    checkLength(queries, out);
+    if (isSorted(queries)) {
+      sorted.accept(queries, out);
+      return;
+    }
+
+    final int[] order = sortedOrder(queries);
+    final long[] keys = new long[queries.length];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = queries[order[i]];
+    }
+    final long[] res = new long[keys.length];
+    sorted.accept(keys, res);
+    for (int i = 0; i < keys.length; i++) {
+      out[order[i]] = res[i];
+    }
+  }
+
+  static void checkLength(final long[] queries, final long[] out) {
+    if (out.length < queries.length) {
+      throw new IllegalArgumentException("The output array is shorter than the queries.");
+    }
+  }
+
+  static void checkGroup(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    if (group < 1) {
+      throw new IllegalArgumentException("The group must hold at least one query.");
+    }
+    checkLength(queries, ranks);
+    checkLength(queries, predecessors);
+  }
+
+  static void checkRanks(final RankSelectPredecessorUpdate set, final long[] ranks) {
+    final long size = set.size();
+    for (final long rank : ranks) {
+      if (rank < 0 || rank >= size) {
+        throw new IndexOutOfBoundsException("Rank out of bounds.");
+      }
+    }
+  }
+
+  /**
+   * Returns the rank of the {@code q}-quantile of {@code n} keys by the nearest-rank method, the
+   * rank {@code k - 1} of the smallest {@code k >= 1} such that {@code k / n >= q}. The estimate
+   * {@code ceil(q * n)} is corrected by comparing {@code k / n} with {@code q} as doubles, as
+   * {@code percentileRank} computes it, so that a quantile of a percentile rank is its key.
+   * @throws IllegalArgumentException if {@code q} is not in {@code [0, 1]}
+   * @throws NoSuchElementException if {@code n} is {@code 0}
+   */
+  static long quantileRank(final double q, final long n) {
+    if (!(q >= 0 && q <= 1)) {
+      throw new IllegalArgumentException("The quantile must be between 0 and 1.");
+    }
+    if (n == 0) {
+      throw new NoSuchElementException("The set is empty.");
+    }
+
+    long k = Math.max(1, Math.min(n, (long) Math.ceil(q * n)));
+    while (k > 1 && (double) (k - 1) / n >= q) {
+      k--;
+    }
+    while (k < n && (double) k / n < q) {
+      k++;
+    }
+    return k - 1;
+  }
+
+  /**
+   * Selects the keys of the ascending ranks {@code ranks} of {@code set} with one cursor, which
+   * moves to the next rank if it is close and seeks it otherwise. The set must not be a multiset.
+   */
+  static void selectSorted(final RankSelectPredecessorUpdate set, final long[] ranks,
+      final long[] out) {
+    final LongCursor cursor = set.cursor();
+    long curr = -1;
+    for (int i = 0; i < ranks.length; i++) {
+      final long rank = ranks[i];
+      if (rank - curr <= MAX_STEPS) {
+        for (; curr < rank; curr++) {
+          cursor.next();
+        }
+      } else {
+        cursor.seek(set.select(rank));
+        curr = rank;
+      }
+      out[i] = cursor.current();
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code a} is in ascending unsigned order.
+   */
+  static boolean isSorted(final long[] a) {
+    for (int i = 1; i < a.length; i++) {
+      if (Long.compareUnsigned(a[i - 1], a[i]) > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the positions of the keys of {@code a} in ascending unsigned order, computed with a
+   * stable least significant digit radix sort. The passes over digits that are equal in all the
+   * keys are skipped.
+   */
+  static int[] sortedOrder(final long[] a) {
+    final int n = a.length;
+    int[] order = new int[n];
+    int[] tmp = new int[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+
+    if (n == 0) {
+      return order;
+    }
+
+    final int[] count = new int[RADIX + 1];
+    for (int shift = 0; shift < Long.SIZE; shift += DIGIT) {
+      Arrays.fill(count, 0);
+      for (final long x : a) {
+        count[((int) (x >>> shift) & (RADIX - 1)) + 1]++;
+      }
+      if (count[((int) (a[0] >>> shift) & (RADIX - 1)) + 1] == n) {
+        continue;
+      }
+      for (int d = 0; d < RADIX; d++) {
+        count[d + 1] += count[d];
+      }
+      for (final int i : order) {
+        tmp[count[(int) (a[i] >>> shift) & (RADIX - 1)]++] = i;
+      }
+      final int[] swap = order;
+      order = tmp;
+      tmp = swap;
+    }
+    return order;
+  }
+}
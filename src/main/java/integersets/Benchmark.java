@@ -0,0 +1,728 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Benchmark harness for the {@code RankSelectPredecessorUpdate} implementations. Every
+ * implementation is filled with the same pseudo-random keys and queried with the same
+ * pseudo-random queries. The results are printed as CSV rows with the average time per operation
+ * in nanoseconds.
+ */
+public abstract class Benchmark {
+
+  /**
+   * This abstract class cannot be instantiated.
+   */
+  public Benchmark(){}
+
+  /**
+   * The number of measured rounds. One additional round is run before them to warm up the JIT.
+   */
+  static final int rounds = 5;
+
+  /**
+   * Accumulates query results so that the JIT cannot discard the measured loops.
+   */
+  static long sink;
+
+  /**
+   * The number of queries between two inserts in {@code runCached}.
+   */
+  static final int UPDATE_PERIOD = 100_000;
+
+  /**
+   * Runs the benchmark for the tries.
+   * @param args optionally, the number of keys and the number of queries
+   */
+  public static void main(final String[] args) {
+    final int n = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    final int q = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+    printHeader();
+    run("BinarySearchTrie", BinarySearchTrie::new, n, q);
+    run("AdaptiveRadixTree", AdaptiveRadixTree::new, n, q);
+    run("RedBlackBST", RedBlackBST::new, n, q);
+    run("RoaringRankSelect", RoaringRankSelect::new, n, q);
+    run("XFastTrie", XFastTrie::new, n, q);
+    run("YFastTrie", YFastTrie::new, n, q);
+    runStatic("StaticFusionTree", StaticFusionTree::new, n, q);
+    runStatic("EytzingerArray", EytzingerArray::new, n, q);
+
+    printPriorityQueueHeader();
+    runPriorityQueue("PriorityQueue", Heap::new, n, q);
+    runPriorityQueue("BinarySearchTrie", BinarySearchTrie::new, n, q);
+    runPriorityQueue("AdaptiveRadixTree", AdaptiveRadixTree::new, n, q);
+    runPriorityQueue("RedBlackBST", RedBlackBST::new, n, q);
+    runPriorityQueue("XFastTrie", XFastTrie::new, n, q);
+    runPriorityQueue("YFastTrie", YFastTrie::new, n, q);
+    runPriorityQueue("ConcurrentSkipList", ConcurrentSkipList::new, n, q);
+
+    printInterleavedHeader();
+    for (int group = 1; group <= 32; group *= 2) {
+      runInterleaved("BinarySearchTrie", BinarySearchTrie::new, group, n, q);
+      runInterleaved("RedBlackBST", RedBlackBST::new, group, n, q);
+    }
+
+    printCachedHeader();
+    for (final double skew : new double[] {0.8, 1.0, 1.2}) {
+      runCached("BinarySearchTrie", BinarySearchTrie::new, skew, n, q);
+      runCached("RedBlackBST", RedBlackBST::new, skew, n, q);
+      runCached("YFastTrie", YFastTrie::new, skew, n, q);
+    }
+
+    printConcurrentHeader();
+    final int maxThreads = Runtime.getRuntime().availableProcessors();
+    for (final int updates : new int[] {20, 80}) {
+      for (int threads = 1; threads <= maxThreads; threads *= 2) {
+        runConcurrent("ConcurrentSkipList", ConcurrentSkipList::new, threads, updates, n, q);
+        runConcurrent("Locked BinarySearchTrie", () -> new Locked(new BinarySearchTrie()),
+            threads, updates, n, q);
+        runConcurrent("Locked AdaptiveRadixTree", () -> new Locked(new AdaptiveRadixTree()),
+            threads, updates, n, q);
+        runConcurrent("Locked YFastTrie", () -> new Locked(new YFastTrie()), threads, updates, n,
+            q);
+      }
+    }
+  }
+
+  /**
+   * Prints the header of the CSV rows produced by {@code run}.
+   */
+  public static void printHeader() {
+    Util.println("structure,n,insert,member,predecessor,successor,rank,select,delete");
+  }
+
+  /**
+   * Measures the average time per operation of a fresh set produced by {@code supplier}, holding
+   * {@code n} keys and answering {@code q} queries of each kind, and prints the results as a CSV
+   * row.
+   *
+   * @param name the name of the structure in the output
+   * @param supplier produces empty sets
+   * @param n the number of keys
+   * @param q the number of queries
+   */
+  public static void run(final String name, final Supplier<RankSelectPredecessorUpdate> supplier,
+      final int n, final int q) {
+    final long[] keys = randomLongs(n, 42);
+    final long[] queries = randomLongs(q, 1337);
+    final long[] ranks = new long[q];
+    for (int i = 0; i < q; i++) {
+      ranks[i] = Long.remainderUnsigned(queries[i], n);
+    }
+
+    final double[] total = new double[7];
+    for (int round = 0; round <= rounds; round++) {
+      final RankSelectPredecessorUpdate set = supplier.get();
+      final double[] res = measure(set, keys, queries, ranks);
+      if (round > 0) {
+        for (int i = 0; i < total.length; i++) {
+          total[i] += res[i] / rounds;
+        }
+      }
+    }
+
+    print(name, n, total);
+  }
+
+  /**
+   * Measures the average time per query of a read-only set produced by {@code builder} from
+   * {@code n} sorted keys, answering {@code q} queries of each kind, and prints the results as a
+   * CSV row. The insert column holds the build time per key and the delete column is empty.
+   *
+   * @param name the name of the structure in the output
+   * @param builder builds a set from distinct keys in unsigned sorted order
+   * @param n the number of keys
+   * @param q the number of queries
+   */
+  public static void runStatic(final String name,
+      final Function<long[], RankSelectPredecessorUpdate> builder, final int n, final int q) {
+    final long[] keys = sortedDistinct(randomLongs(n, 42));
+    final long[] queries = randomLongs(q, 1337);
+    final long[] ranks = new long[q];
+    for (int i = 0; i < q; i++) {
+      ranks[i] = Long.remainderUnsigned(queries[i], keys.length);
+    }
+
+    final double[] total = new double[7];
+    for (int round = 0; round <= rounds; round++) {
+      final double[] res = new double[7];
+      final long start = System.nanoTime();
+      final RankSelectPredecessorUpdate set = builder.apply(keys);
+      res[0] = (double) (System.nanoTime() - start) / keys.length;
+      sink += measureQueries(set, queries, ranks, res);
+      res[6] = Double.NaN;
+      if (round > 0) {
+        for (int i = 0; i < total.length; i++) {
+          total[i] += res[i] / rounds;
+        }
+      }
+    }
+    print(name, keys.length, total);
+  }
+
+  /**
+   * Prints the header of the CSV rows produced by {@code runPriorityQueue}.
+   */
+  public static void printPriorityQueueHeader() {
+    Util.println("structure,n,ops,hold");
+  }
+
+  /**
+   * Measures the average time of the hold operation of a monotone priority queue, as used by
+   * timers and by Dijkstra's algorithm with integer distances, and prints it as a CSV row in
+   * nanoseconds. A set produced by {@code supplier} is filled with {@code n} keys, and each of the
+   * {@code ops} operations removes the smallest key with {@code pollFirst} and inserts it again
+   * increased by a pseudo-random amount.
+   *
+   * @param name the name of the structure in the output
+   * @param supplier produces empty sets
+   * @param n the number of keys
+   * @param ops the number of hold operations
+   */
+  public static void runPriorityQueue(final String name,
+      final Supplier<RankSelectPredecessorUpdate> supplier, final int n, final int ops) {
+    final long[] keys = randomLongs(n, 42);
+    final long[] increments = randomLongs(ops, 1337);
+    for (int i = 0; i < n; i++) {
+      keys[i] >>>= 24; // room for the increments
+    }
+    for (int i = 0; i < ops; i++) {
+      increments[i] = 1 + (increments[i] >>> 32);
+    }
+
+    double total = 0;
+    for (int round = 0; round <= rounds; round++) {
+      final RankSelectPredecessorUpdate set = supplier.get();
+      for (final long key : keys) {
+        set.insert(key);
+      }
+
+      long acc = 0;
+      final long start = System.nanoTime();
+      for (final long increment : increments) {
+        final long x = set.pollFirst();
+        set.insert(x + increment);
+        acc += x;
+      }
+      final double res = (double) (System.nanoTime() - start) / ops;
+      sink += acc;
+      if (round > 0) {
+        total += res / rounds;
+      }
+    }
+    Util.println(name + "," + n + "," + ops + "," + String.format("%.1f", total));
+  }
+
+  /**
+   * Prints the header of the CSV rows produced by {@code runInterleaved}.
+   */
+  public static void printInterleavedHeader() {
+    Util.println("structure,group,n,q,mqps");
+  }
+
+  /**
+   * Measures the throughput of {@code rankAndPredecessorBatch} on a set produced by
+   * {@code supplier} and filled with {@code n} keys, answering {@code q} queries with
+   * {@code group} of them in flight, and prints it as a CSV row in millions of queries per second.
+   * The gain over a group of one shows how much of the memory latency the interleaving hides, so
+   * it grows with {@code n} once the set no longer fits in the cache.
+   *
+   * @param name the name of the structure in the output
+   * @param supplier produces empty sets
+   * @param group the number of queries in flight
+   * @param n the number of keys
+   * @param q the number of queries
+   */
+  public static void runInterleaved(final String name,
+      final Supplier<RankSelectPredecessorUpdate> supplier, final int group, final int n,
+      final int q) {
+    final long[] keys = randomLongs(n, 42);
+    final long[] queries = randomLongs(q, 1337);
+    final long[] ranks = new long[q];
+    final long[] predecessors = new long[q];
+
+    final RankSelectPredecessorUpdate set = supplier.get();
+    for (final long key : keys) {
+      set.insert(key);
+    }
+
+    double total = 0;
+    for (int round = 0; round <= rounds; round++) {
+      final long start = System.nanoTime();
+      set.rankAndPredecessorBatch(queries, group, ranks, predecessors);
+      final double mqps = (double) q * 1_000 / (System.nanoTime() - start);
+      sink += ranks[q - 1] + predecessors[q - 1];
+      if (round > 0) {
+        total += mqps / rounds;
+      }
+    }
+    Util.println(name + "," + group + "," + n + "," + q + "," + String.format("%.2f", total));
+  }
+
+  /**
+   * Prints the header of the CSV rows produced by {@code runCached}.
+   */
+  public static void printCachedHeader() {
+    Util.println("structure,skew,n,q,hitratio,uncached,cached");
+  }
+
+  /**
+   * Measures the average time per query, in nanoseconds, of a set produced by {@code supplier} and
+   * filled with {@code n} keys, alone and behind a {@code CachedSet}, and prints both with the hit
+   * ratio of the cache as a CSV row. The queries are a mix of predecessor, successor and rank, and
+   * their keys are drawn from {@code n} distinct keys with a Zipf distribution of parameter
+   * {@code skew}; one query in {@code UPDATE_PERIOD} is followed by an insert, which invalidates
+   * the cache.
+   *
+   * @param name the name of the structure in the output
+   * @param supplier produces empty sets
+   * @param skew the exponent of the Zipf distribution
+   * @param n the number of keys
+   * @param q the number of queries
+   */
+  public static void runCached(final String name,
+      final Supplier<RankSelectPredecessorUpdate> supplier, final double skew, final int n,
+      final int q) {
+    final long[] keys = randomLongs(n, 42);
+    final long[] queries = zipfLongs(q, randomLongs(n, 1337), skew, 7);
+    final long[] updates = randomLongs(q / UPDATE_PERIOD + 1, 9);
+
+    final double[] total = new double[2];
+    double hitRatio = 0;
+    for (int round = 0; round <= rounds; round++) {
+      for (int c = 0; c < 2; c++) {
+        final RankSelectPredecessorUpdate set = c == 0 ? supplier.get()
+            : new CachedSet(supplier.get());
+        for (final long key : keys) {
+          set.insert(key);
+        }
+
+        long acc = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < q; i++) {
+          final long x = queries[i];
+          if (i % 3 == 0) {
+            acc += set.rank(x);
+          } else {
+            final Long y = i % 3 == 1 ? set.predecessor(x) : set.successor(x);
+            acc += y == null ? 0 : y;
+          }
+          if (i % UPDATE_PERIOD == UPDATE_PERIOD - 1) {
+            set.insert(updates[i / UPDATE_PERIOD]);
+          }
+        }
+        final double time = (double) (System.nanoTime() - start) / q;
+        sink += acc;
+        if (round > 0) {
+          total[c] += time / rounds;
+        }
+        if (c == 1) {
+          hitRatio = ((CachedSet) set).hitRatio();
+        }
+      }
+    }
+    Util.println(name + "," + skew + "," + n + "," + q + "," + String.format("%.3f", hitRatio) + ","
+        + String.format("%.1f", total[0]) + "," + String.format("%.1f", total[1]));
+  }
+
+  /**
+   * Prints the header of the CSV rows produced by {@code runConcurrent}.
+   */
+  public static void printConcurrentHeader() {
+    Util.println("structure,threads,updates,n,ops,mops");
+  }
+
+  /**
+   * Measures the throughput of a set produced by {@code supplier} and filled with {@code n} keys,
+   * while {@code threads} threads run {@code ops} operations each, and prints it as a CSV row in
+   * millions of operations per second. Each operation is an insert or a delete with probability
+   * {@code updates / 200} each, and otherwise a member, predecessor, rank or select query.
+   *
+   * @param name the name of the structure in the output
+   * @param supplier produces empty sets, safe for use by concurrent threads
+   * @param threads the number of threads
+   * @param updates the percentage of operations that are inserts or deletes
+   * @param n the number of keys
+   * @param ops the number of operations run by each thread
+   */
+  public static void runConcurrent(final String name,
+      final Supplier<RankSelectPredecessorUpdate> supplier, final int threads, final int updates,
+      final int n, final int ops) {
+    final long[] keys = randomLongs(n, 42);
+
+    double total = 0;
+    for (int round = 0; round <= rounds; round++) {
+      final RankSelectPredecessorUpdate set = supplier.get();
+      for (final long key : keys) {
+        set.insert(key);
+      }
+
+      final Thread[] workers = new Thread[threads];
+      final long[] acc = new long[threads];
+      for (int t = 0; t < threads; t++) {
+        final int id = t;
+        workers[t] = new Thread(() -> acc[id] = work(set, keys, updates, ops, 1337 + id));
+      }
+      final long start = System.nanoTime();
+      for (final Thread worker : workers) {
+        worker.start();
+      }
+      for (final Thread worker : workers) {
+        try {
+          worker.join();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+      }
+      final double mops = (double) threads * ops * 1_000 / (System.nanoTime() - start);
+      for (final long a : acc) {
+        sink += a;
+      }
+      if (round > 0) {
+        total += mops / rounds;
+      }
+    }
+    Util.println(name + "," + threads + "," + updates + "," + n + "," + ops + ","
+        + String.format("%.2f", total));
+  }
+
+  /**
+   * Runs {@code ops} mixed operations on {@code set}, as described in {@code runConcurrent}.
+   * @return the accumulated query results
+   */
+  private static long work(final RankSelectPredecessorUpdate set, final long[] keys,
+      final int updates, final int ops, final long seed) {
+    final Random rand = new Random(seed);
+    long acc = 0;
+    for (int i = 0; i < ops; i++) {
+      final int update = rand.nextInt(200);
+      if (update < updates) {
+        set.insert(rand.nextLong());
+        continue;
+      } else if (update < 2 * updates) {
+        set.delete(keys[rand.nextInt(keys.length)]);
+        continue;
+      }
+      final int op = 2 + rand.nextInt(8);
+      final long x = rand.nextLong();
+      if (op < 4) {
+        acc += set.member(x) ? 1 : 0;
+      } else if (op < 6) {
+        final Long y = set.predecessor(x);
+        acc += y == null ? 0 : y;
+      } else if (op < 8) {
+        acc += set.rank(x);
+      } else {
+        final Long y = set.select(Long.remainderUnsigned(x, keys.length));
+        acc += y == null ? 0 : y;
+      }
+    }
+    return acc;
+  }
+
+  /**
+   * A set guarded by a read-write lock, the baseline of {@code runConcurrent}.
+   */
+  private static final class Locked implements RankSelectPredecessorUpdate {
+
+    private final RankSelectPredecessorUpdate set;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    Locked(final RankSelectPredecessorUpdate set) {
+      this.set = set;
+    }
+
+    @Override
+    public void insert(final long x) {
+      lock.writeLock().lock();
+      try {
+        set.insert(x);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    @Override
+    public void delete(final long x) {
+      lock.writeLock().lock();
+      try {
+        set.delete(x);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    @Override
+    public boolean member(final long x) {
+      lock.readLock().lock();
+      try {
+        return set.member(x);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public Long predecessor(final long x) {
+      lock.readLock().lock();
+      try {
+        return set.predecessor(x);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public Long successor(final long x) {
+      lock.readLock().lock();
+      try {
+        return set.successor(x);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public long rank(final long x) {
+      lock.readLock().lock();
+      try {
+        return set.rank(x);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public Long select(final long rank) {
+      lock.readLock().lock();
+      try {
+        return set.select(rank);
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public long size() {
+      lock.readLock().lock();
+      try {
+        return set.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+
+    @Override
+    public void reset() {
+      lock.writeLock().lock();
+      try {
+        set.reset();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * A binary heap of boxed keys, the baseline of {@code runPriorityQueue}. It only supports the
+   * operations of a priority queue.
+   */
+  private static final class Heap implements RankSelectPredecessorUpdate {
+
+    private final PriorityQueue<Long> queue = new PriorityQueue<>(Long::compareUnsigned);
+
+    @Override
+    public void insert(final long x) {
+      queue.add(x);
+    }
+
+    @Override
+    public void delete(final long x) {
+      queue.remove(x);
+    }
+
+    @Override
+    public long rank(final long x) {
+      throw new UnsupportedOperationException("Heap does not support rank.");
+    }
+
+    @Override
+    public Long select(final long rank) {
+      throw new UnsupportedOperationException("Heap does not support select.");
+    }
+
+    @Override
+    public Long peekFirst() {
+      return queue.peek();
+    }
+
+    @Override
+    public Long pollFirst() {
+      return queue.poll();
+    }
+
+    @Override
+    public long size() {
+      return queue.size();
+    }
+
+    @Override
+    public void reset() {
+      queue.clear();
+    }
+  }
+
+  /**
+   * Prints a CSV row, with an empty field for every {@code NaN} time.
+   */
+  private static void print(final String name, final int n, final double[] total) {
+    final StringBuilder sb = new StringBuilder(name).append(",").append(n);
+    for (final double t : total) {
+      sb.append(",").append(Double.isNaN(t) ? "" : String.format("%.1f", t));
+    }
+    Util.println(sb.toString());
+  }
+
+  /**
+   * Returns the average time per operation, in nanoseconds, of insert, member, predecessor,
+   * successor, rank, select and delete, in this order.
+   */
+  private static double[] measure(final RankSelectPredecessorUpdate set, final long[] keys,
+      final long[] queries, final long[] ranks) {
+    final double[] res = new double[7];
+    long acc = 0;
+
+    long start = System.nanoTime();
+    for (final long key : keys) {
+      set.insert(key);
+    }
+    res[0] = (double) (System.nanoTime() - start) / keys.length;
+
+    acc += measureQueries(set, queries, ranks, res);
+
+    start = System.nanoTime();
+    for (final long key : keys) {
+      set.delete(key);
+    }
+    res[6] = (double) (System.nanoTime() - start) / keys.length;
+
+    sink += acc;
+    return res;
+  }
+
+  /**
+   * Stores the average time per query, in nanoseconds, of member, predecessor, successor, rank
+   * and select in {@code res[1]} to {@code res[5]}.
+   * @return the accumulated query results
+   */
+  private static long measureQueries(final RankSelectPredecessorUpdate set, final long[] queries,
+      final long[] ranks, final double[] res) {
+    long acc = 0;
+
+    long start = System.nanoTime();
+    for (final long x : queries) {
+      acc += set.member(x) ? 1 : 0;
+    }
+    res[1] = (double) (System.nanoTime() - start) / queries.length;
+
+    start = System.nanoTime();
+    for (final long x : queries) {
+      final Long y = set.predecessor(x);
+      acc += y == null ? 0 : y;
+    }
+    res[2] = (double) (System.nanoTime() - start) / queries.length;
+
+    start = System.nanoTime();
+    for (final long x : queries) {
+      final Long y = set.successor(x);
+      acc += y == null ? 0 : y;
+    }
+    res[3] = (double) (System.nanoTime() - start) / queries.length;
+
+    start = System.nanoTime();
+    for (final long x : queries) {
+      acc += set.rank(x);
+    }
+    res[4] = (double) (System.nanoTime() - start) / queries.length;
+
+    start = System.nanoTime();
+    for (final long r : ranks) {
+      final Long y = set.select(r);
+      acc += y == null ? 0 : y;
+    }
+    res[5] = (double) (System.nanoTime() - start) / ranks.length;
+
+    return acc;
+  }
+
+  /**
+   * Returns an array of {@code n} pseudo-random {@code long}s, in the order they were produced.
+   * @param n the number of keys
+   * @param seed the seed of the pseudo-random generator
+   * @return the keys
+   */
+  static long[] randomLongs(final int n, final long seed) {
+    final Random rand = new Random(seed);
+    final long[] res = new long[n];
+    for (int i = 0; i < n; i++) {
+      res[i] = rand.nextLong();
+    }
+    return res;
+  }
+
+  /**
+   * Returns an array of {@code n} pseudo-random draws from {@code values}, where the value at
+   * position {@code i} is drawn with probability proportional to {@code 1 / (i + 1)^skew}.
+   * @param n the number of draws
+   * @param values the values drawn
+   * @param skew the exponent of the Zipf distribution
+   * @param seed the seed of the pseudo-random generator
+   * @return the draws
+   */
+  static long[] zipfLongs(final int n, final long[] values, final double skew, final long seed) {
+    final double[] cumulative = new double[values.length];
+    double sum = 0;
+    for (int i = 0; i < values.length; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      cumulative[i] = sum;
+    }
+
+    final Random rand = new Random(seed);
+    final long[] res = new long[n];
+    for (int i = 0; i < n; i++) {
+      final int j = Arrays.binarySearch(cumulative, rand.nextDouble() * sum);
+      res[i] = values[Math.min(j < 0 ? -j - 1 : j, values.length - 1)];
+    }
+    return res;
+  }
+
+  /**
+   * Returns the distinct values of {@code keys} in unsigned sorted order.
+   * @param keys the keys
+   * @return the sorted keys, without repetitions
+   */
+  static long[] sortedDistinct(final long[] keys) {
+    final long[] res = new long[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      res[i] = keys[i] ^ Long.MIN_VALUE;
+    }
+    Arrays.sort(res);
+    int m = 0;
+    for (int i = 0; i < res.length; i++) {
+      if (m == 0 || res[i] != res[m - 1]) {
+        res[m++] = res[i];
+      }
+    }
+    for (int i = 0; i < m; i++) {
+      res[i] ^= Long.MIN_VALUE;
+    }
+    return Arrays.copyOf(res, m);
+  }
+}
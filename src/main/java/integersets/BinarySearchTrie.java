@@ -1,16 +1,26 @@
 package integersets;
 
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.RecursiveTask;
+
 /**
  * Implementation of the {@code BinarySearchTrie} data structure, as described in Section A.2.1 of
  * the report.
+ *
+ * <p>Constructed as a multiset, the {@code leavesBelow} of a leaf is the multiplicity of its key,
+ * so that the {@code leavesBelow} of every node weighs the leaves below it by their counts.
  */
-public class BinarySearchTrie implements RankSelectPredecessorUpdate {
+public class BinarySearchTrie implements RankSelectPredecessorMap,
+    RankSelectPredecessorMultiset {
 
   static class BSTrieNode<E> extends Node<E> {
 
     BSTrieNode<E> left;
     BSTrieNode<E> right;
-    int leavesBelow;
+    long leavesBelow;
+    long value; // only meaningful in leaves
 
     public BSTrieNode(final E key) {
       super(key);
@@ -29,17 +39,35 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
   }
 
   private BSTrieNode<BitsKey> root;
+  private final boolean multiset;
+  private long removed; // the key found by the last deleteByRank
+  private long modCount; // the number of updates, which invalidate the fingers
+  // the path from the root to the largest key, valid while spineStamp == modCount
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private final BSTrieNode<BitsKey>[] spine = new BSTrieNode[BitsKey.w + 1];
+  private int spineDepth;
+  private long spineStamp = -1;
 
   /**
    * Constructs an empty {@code BinarySearchTrie}.
    */
   public BinarySearchTrie() {
+    this(false);
+  }
+
+  /**
+   * Constructs an empty {@code BinarySearchTrie}.
+   * @param multiset whether {@code insert} adds copies of members
+   */
+  public BinarySearchTrie(final boolean multiset) {
+    this.multiset = multiset;
     reset();
   }
 
   @Override
   public void reset() {
     root = null;
+    modCount++;
   }
 
   @Override
@@ -50,12 +78,20 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
     return 0;
   }
 
+  /**
+   * {@inheritDoc}
+   * <br>A key larger than all the others is appended to the right spine without a descent.
+   */
   @Override
   public void insert(final long x) {
+    if (append(x)) {
+      return;
+    }
 
     // We create the BitsKey at this stage because later we conveniently have access
     // to the bit(d) method
     root = insert(root, new BitsKey(x), BitsKey.w - 1);
+    modCount++;
 
     updateLeavesBelow(root);
 
@@ -69,6 +105,9 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
 
     if (curr.children() == 0) {
       if (curr.key != null && curr.key.equals(v)) {
+        if (multiset) {
+          curr.leavesBelow++;
+        }
         return curr;
       }
       return split(new BSTrieNode<BitsKey>(v), curr, d);
@@ -89,7 +128,7 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
   private BSTrieNode<BitsKey> split(final BSTrieNode<BitsKey> p, final BSTrieNode<BitsKey> q,
       final int d) {
     final BSTrieNode<BitsKey> t = new BSTrieNode<BitsKey>(null);
-    t.leavesBelow = 2;
+    t.leavesBelow = p.leavesBelow + q.leavesBelow;
     final BitsKey v = p.key;
     final BitsKey w = q.key;
 
@@ -139,6 +178,7 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
   public void delete(final long x) {
     final BitsKey delete = new BitsKey(x);
     root = delete(root, delete, BitsKey.w - 1);
+    modCount++;
   }
 
   private BSTrieNode<BitsKey> delete(final BSTrieNode<BitsKey> curr, final BitsKey v, final int d) {
@@ -149,7 +189,7 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
 
     } else if (curr.key != null) {
       if (curr.key.equals(v)) {
-        return null;
+        return --curr.leavesBelow == 0 ? null : curr;
       } else {
         return curr;
       }
@@ -161,9 +201,47 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
       curr.right = delete(curr.right, v, d - 1);
     }
 
-    // if there is only one child AND the child is a leaf,
-    // then return the child (either curr.left or curr.right).
-    // Otherwise return curr.
+    return collapse(curr);
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    root = deleteByRank(root, rank);
+    modCount++;
+    return removed;
+  }
+
+  /**
+   * Removes one copy of the key with rank {@code rank} below {@code curr}, following the counts
+   * instead of the bits of the key.
+   */
+  private BSTrieNode<BitsKey> deleteByRank(final BSTrieNode<BitsKey> curr, final long rank) {
+    if (curr.children() == 0) {
+      removed = curr.key.val;
+      return --curr.leavesBelow == 0 ? null : curr;
+    }
+
+    if (curr.children() == 3 && rank >= curr.left.leavesBelow) {
+      curr.right = deleteByRank(curr.right, rank - curr.left.leavesBelow);
+    } else if (curr.children() == 2) {
+      curr.right = deleteByRank(curr.right, rank);
+    } else {
+      curr.left = deleteByRank(curr.left, rank);
+    }
+
+    return collapse(curr);
+  }
+
+  /**
+   * Called on the way up after a deletion below {@code curr}. If there is only one child AND the
+   * child is a leaf, then returns the child (either curr.left or curr.right). Otherwise updates
+   * and returns curr.
+   */
+  private BSTrieNode<BitsKey> collapse(final BSTrieNode<BitsKey> curr) {
     if (curr.children() == 1 || curr.children() == 2) { // has a single child
       if (curr.children() == 1 && curr.left.children() == 0) {
         return curr.left; // has a single child and that child is a leaf
@@ -216,7 +294,7 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
 
     if (curr.children() == 0) { // leaf node, there will be a key.
       if (curr.key.compareTo(v) < 0) {
-        return 1;
+        return curr.leavesBelow;
       } else {
         return 0;
       }
@@ -244,6 +322,81 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
     return select(root, rank, 0).key.val;   
   }
 
+  @Override
+  public void put(final long x, final long value) {
+    final BitsKey searchKey = new BitsKey(x);
+    BSTrieNode<BitsKey> res = search(root, searchKey, BitsKey.w - 1);
+    if (res == null || !res.key.equals(searchKey)) {
+      insert(x);
+      res = search(root, searchKey, BitsKey.w - 1);
+    }
+    res.value = value;
+  }
+
+  @Override
+  public Long get(final long x) {
+    final BitsKey searchKey = new BitsKey(x);
+    final BSTrieNode<BitsKey> res = search(root, searchKey, BitsKey.w - 1);
+    return res != null && res.key.equals(searchKey) ? res.value : null;
+  }
+
+  @Override
+  public Long predecessorValue(final long x) {
+    final BSTrieNode<BitsKey> leaf = lowerLeaf(x);
+    return leaf == null ? null : leaf.value;
+  }
+
+  @Override
+  public boolean predecessorEntry(final long x, final long[] entry) {
+    final BSTrieNode<BitsKey> leaf = lowerLeaf(x);
+    if (leaf == null) {
+      return false;
+    }
+    entry[0] = leaf.key.val;
+    entry[1] = leaf.value;
+    return true;
+  }
+
+  /**
+   * Returns the leaf of the largest key smaller than {@code x}, or {@code null}, with one descent:
+   * the search for {@code x} remembers the last left subtree it passed by going right, whose
+   * largest leaf is the answer unless the search ends on a smaller key.
+   */
+  private BSTrieNode<BitsKey> lowerLeaf(final long x) {
+    BSTrieNode<BitsKey> curr = root;
+    BSTrieNode<BitsKey> passed = null;
+    for (int d = BitsKey.w - 1; curr != null && curr.children() != 0; d--) {
+      if (Util.bit(d, x) == 1) {
+        if (curr.left != null) {
+          passed = curr.left;
+        }
+        curr = curr.right;
+      } else {
+        curr = curr.left;
+      }
+    }
+    if (curr != null && Long.compareUnsigned(curr.key.val, x) < 0) {
+      return curr;
+    }
+    return passed == null ? null : extremeLeaf(passed, true);
+  }
+
+  @Override
+  public long count(final long x) {
+    final BitsKey searchKey = new BitsKey(x);
+    final BSTrieNode<BitsKey> res = search(root, searchKey, BitsKey.w - 1);
+    return res != null && res.key.equals(searchKey) ? res.leavesBelow : 0;
+  }
+
+  @Override
+  public Long valueAt(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return select(root, rank, 0).value;
+  }
+
   private BSTrieNode<BitsKey> select(final BSTrieNode<BitsKey> curr,
       final long rank, final long keySoFar) {
 
@@ -266,6 +419,848 @@ public class BinarySearchTrie implements RankSelectPredecessorUpdate {
     }
   }
   
+  /* SPLIT AND JOIN */
+
+  /**
+   * Removes the keys larger than or equal to {@code x} from this trie and returns them in a new
+   * trie. Only the nodes on the path of {@code x} are visited, so it takes O(w) time.
+   * @param x the split key
+   * @return the trie holding the keys larger than or equal to {@code x}
+   */
+  public BinarySearchTrie splitAt(final long x) {
+    final BinarySearchTrie res = new BinarySearchTrie(multiset);
+    if (root != null) {
+      final BSTrieNode<BitsKey>[] parts = split(root, new BitsKey(x), BitsKey.w - 1);
+      root = parts[0];
+      res.root = parts[1];
+      modCount++;
+    }
+    return res;
+  }
+
+  /**
+   * Splits the subtree {@code curr} into the keys smaller than {@code v} and the rest. The nodes
+   * on the path of {@code v} are shared out between both parts, the others are kept whole.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private BSTrieNode<BitsKey>[] split(final BSTrieNode<BitsKey> curr, final BitsKey v,
+      final int d) {
+    final BSTrieNode<BitsKey>[] res = new BSTrieNode[2];
+    if (curr == null) {
+      return res;
+    }
+
+    if (curr.children() == 0) {
+      res[curr.key.compareTo(v) < 0 ? 0 : 1] = curr;
+      return res;
+    }
+
+    final BSTrieNode<BitsKey> other = new BSTrieNode<BitsKey>(null);
+    if (v.bit(d) == 0) {
+      // the right subtree is larger than v: curr keeps it, and the left subtree is split
+      final BSTrieNode<BitsKey>[] parts = split(curr.left, v, d - 1);
+      other.left = parts[0];
+      curr.left = parts[1];
+      res[0] = tidy(other);
+      res[1] = tidy(curr);
+    } else {
+      final BSTrieNode<BitsKey>[] parts = split(curr.right, v, d - 1);
+      curr.right = parts[0];
+      other.right = parts[1];
+      res[0] = tidy(curr);
+      res[1] = tidy(other);
+    }
+    return res;
+  }
+
+  /**
+   * Appends the keys of {@code other}, which must all be larger than the keys of this trie, and
+   * leaves {@code other} empty. Only the nodes on the paths of the largest key of this trie and
+   * the smallest key of {@code other} are visited, so it takes O(w) time.
+   * @param other the trie to be appended
+   * @throws IllegalArgumentException if a key of {@code other} is not larger than every key of
+   *      this trie
+   */
+  public void join(final BinarySearchTrie other) {
+    if (other.root == null) {
+      return;
+    }
+    if (root != null && Long.compareUnsigned(select(size() - 1), other.select(0)) >= 0) {
+      throw new IllegalArgumentException("The keys of other must be larger than the keys of this.");
+    }
+
+    root = root == null ? other.root : join(root, other.root, BitsKey.w - 1);
+    modCount++;
+    other.reset();
+  }
+
+  /**
+   * Merges the subtrees {@code a} and {@code b}, both branching on bit {@code d}, where every key
+   * of {@code a} is smaller than every key of {@code b}. On each level both have children on at
+   * most one side, so the recursion follows a single path.
+   */
+  private BSTrieNode<BitsKey> join(final BSTrieNode<BitsKey> a, final BSTrieNode<BitsKey> b,
+      final int d) {
+    if (a.children() == 0) {
+      return attach(b, a, d);
+    }
+    if (b.children() == 0) {
+      return attach(a, b, d);
+    }
+
+    a.left = a.left == null ? b.left : b.left == null ? a.left : join(a.left, b.left, d - 1);
+    a.right = a.right == null ? b.right : b.right == null ? a.right : join(a.right, b.right, d - 1);
+    updateLeavesBelow(a);
+    return a;
+  }
+
+  /**
+   * Inserts the leaf {@code leaf}, whose key is not in the subtree {@code curr}, keeping its count
+   * and value.
+   */
+  private BSTrieNode<BitsKey> attach(final BSTrieNode<BitsKey> curr,
+      final BSTrieNode<BitsKey> leaf, final int d) {
+    if (curr == null) {
+      return leaf;
+    }
+    if (curr.children() == 0) {
+      return split(leaf, curr, d);
+    }
+
+    if (leaf.key.bit(d) == 0) {
+      curr.left = attach(curr.left, leaf, d - 1);
+    } else {
+      curr.right = attach(curr.right, leaf, d - 1);
+    }
+    updateLeavesBelow(curr);
+    return curr;
+  }
+
+  /**
+   * Restores the shape of the internal node {@code curr} after its children have been replaced:
+   * an internal node without children is removed and one holding a single leaf is replaced by it.
+   */
+  private BSTrieNode<BitsKey> tidy(final BSTrieNode<BitsKey> curr) {
+    if (curr.children() == 0) {
+      return null;
+    }
+    return collapse(curr);
+  }
+
+  /* APPEND */
+
+  /**
+   * Inserts the keys of {@code keys}, in ascending unsigned order. The keys larger than every key
+   * of the trie are built into a separate trie and joined to this one in O(w) time, unless this
+   * is a multiset, where they are appended one by one.
+   * @param keys the keys, in ascending unsigned order and possibly repeated
+   * @throws IllegalArgumentException if {@code keys} is not in ascending order
+   */
+  public void appendAll(final long[] keys) {
+    if (!BatchQueries.isSorted(keys)) {
+      throw new IllegalArgumentException("The keys must be in ascending order.");
+    }
+
+    // the keys not larger than the largest one of the trie are inserted on their own
+    final Long max = root == null ? null : largest();
+    int i = 0;
+    while (i < keys.length && max != null && Long.compareUnsigned(keys[i], max) <= 0) {
+      insert(keys[i++]);
+    }
+    if (multiset) {
+      for (; i < keys.length; i++) {
+        insert(keys[i]);
+      }
+      return;
+    }
+
+    final long[] distinct = new long[keys.length - i];
+    int count = 0;
+    for (; i < keys.length; i++) {
+      if (count == 0 || keys[i] != distinct[count - 1]) {
+        distinct[count++] = keys[i];
+      }
+    }
+    final BinarySearchTrie other = new BinarySearchTrie();
+    other.build(Arrays.copyOf(distinct, count));
+    join(other);
+  }
+
+  /**
+   * Inserts {@code x} if it is larger than every key of the trie, next to the largest key. The
+   * path of the largest key is kept until another update changes the trie, so a run of appends
+   * only visits the nodes where the new keys part from it, and increments the counts above them.
+   * @return {@code false} if {@code x} must be inserted from the root
+   */
+  private boolean append(final long x) {
+    if (root == null) {
+      return false;
+    }
+    if (spineStamp != modCount) {
+      largest();
+    }
+
+    final BSTrieNode<BitsKey> leaf = spine[spineDepth];
+    if (Long.compareUnsigned(x, leaf.key.val) <= 0) {
+      return false;
+    }
+
+    // x parts from the largest key at depth l, where the largest key goes left and x right
+    final int l = Long.numberOfLeadingZeros(leaf.key.val ^ x);
+    final BSTrieNode<BitsKey> node = new BSTrieNode<BitsKey>(new BitsKey(x));
+    final int top;
+    if (l < spineDepth) {
+      spine[l].right = node;
+      spine[l + 1] = node;
+      spineDepth = l + 1;
+      top = l + 1;
+    } else {
+      final BSTrieNode<BitsKey> t = split(node, leaf, BitsKey.w - 1 - spineDepth);
+      if (spineDepth == 0) {
+        root = t;
+      } else if (spine[spineDepth - 1].right == leaf) {
+        spine[spineDepth - 1].right = t;
+      } else {
+        spine[spineDepth - 1].left = t;
+      }
+      top = spineDepth;
+      extendSpine(t, spineDepth);
+    }
+    for (int d = 0; d < top; d++) {
+      spine[d].leavesBelow++;
+    }
+    spineStamp = ++modCount;
+    return true;
+  }
+
+  /**
+   * Rebuilds the path from the root to the largest key, which must exist, and returns the key.
+   */
+  private long largest() {
+    extendSpine(root, 0);
+    spineStamp = modCount;
+    return spine[spineDepth].key.val;
+  }
+
+  /**
+   * Sets the path from {@code curr}, at depth {@code depth}, to its largest leaf as the end of the
+   * spine.
+   */
+  private void extendSpine(BSTrieNode<BitsKey> curr, final int depth) {
+    int d = depth;
+    spine[d] = curr;
+    while (curr.children() != 0) {
+      curr = curr.right != null ? curr.right : curr.left;
+      spine[++d] = curr;
+    }
+    spineDepth = d;
+  }
+
+  /* BULK BUILD */
+
+  /**
+   * Replaces the keys of this trie with {@code keys}, which must be distinct and in ascending
+   * unsigned order. The trie is given the shape that inserting the keys one by one would give it,
+   * and the subtrees of large nodes are built in parallel in the common {@code ForkJoinPool}.
+   * @param keys the keys, distinct and in ascending unsigned order
+   */
+  void build(final long[] keys) {
+    root = keys.length == 0 ? null : new Build(keys, 0, keys.length, BitsKey.w - 1).invoke();
+    modCount++;
+  }
+
+  /**
+   * Builds the subtree of the keys {@code keys[lo, hi)}, which agree on the bits above {@code d}.
+   * A single key is a leaf, and more keys are shared out between the children of an internal node
+   * by their bit {@code d}; a child without keys is {@code null}. Both children are built in
+   * parallel if there are more than {@code THRESHOLD} keys.
+   */
+  private static final class Build extends RecursiveTask<BSTrieNode<BitsKey>> {
+
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 1 << 13;
+
+    private final long[] keys;
+    private final int lo;
+    private final int hi;
+    private final int d;
+
+    Build(final long[] keys, final int lo, final int hi, final int d) {
+      this.keys = keys;
+      this.lo = lo;
+      this.hi = hi;
+      this.d = d;
+    }
+
+    @Override
+    protected BSTrieNode<BitsKey> compute() {
+      if (hi - lo <= THRESHOLD) {
+        return subtree(keys, lo, hi, d);
+      }
+
+      final int mid = firstOne(keys, lo, hi, d);
+      final BSTrieNode<BitsKey> node = new BSTrieNode<BitsKey>(null);
+      if (mid == lo || mid == hi) {
+        final BSTrieNode<BitsKey> child = new Build(keys, lo, hi, d - 1).compute();
+        if (mid == lo) {
+          node.right = child;
+        } else {
+          node.left = child;
+        }
+        node.leavesBelow = child.leavesBelow;
+        return node;
+      }
+
+      final Build left = new Build(keys, lo, mid, d - 1);
+      left.fork();
+      node.right = new Build(keys, mid, hi, d - 1).compute();
+      node.left = left.join();
+      node.leavesBelow = node.left.leavesBelow + node.right.leavesBelow;
+      return node;
+    }
+
+    private static BSTrieNode<BitsKey> subtree(final long[] keys, final int lo, final int hi,
+        final int d) {
+      if (hi - lo == 1) {
+        return new BSTrieNode<BitsKey>(new BitsKey(keys[lo]));
+      }
+
+      final int mid = firstOne(keys, lo, hi, d);
+      final BSTrieNode<BitsKey> node = new BSTrieNode<BitsKey>(null);
+      node.left = mid > lo ? subtree(keys, lo, mid, d - 1) : null;
+      node.right = mid < hi ? subtree(keys, mid, hi, d - 1) : null;
+      node.leavesBelow = (node.left == null ? 0 : node.left.leavesBelow)
+          + (node.right == null ? 0 : node.right.leavesBelow);
+      return node;
+    }
+
+    /**
+     * Returns the position of the first key of {@code keys[lo, hi)} whose bit {@code d} is set, or
+     * {@code hi} if there is none.
+     */
+    private static int firstOne(final long[] keys, final int lo, final int hi, final int d) {
+      int a = lo;
+      int b = hi;
+      while (a < b) {
+        final int m = (a + b) >>> 1;
+        if ((keys[m] >>> d & 1) == 0) {
+          a = m + 1;
+        } else {
+          b = m;
+        }
+      }
+      return a;
+    }
+  }
+
+  /* FINGER SEARCH */
+
+  /**
+   * A finger on a {@code BinarySearchTrie}: the path of the last key it was used with, and the
+   * rank on entering every node of the path. An operation given a finger starts at the node where
+   * its key parts from that path instead of at the root, so a key at distance {@code d} from the
+   * previous one is reached in O(log d) steps. The finger follows the updates made through it;
+   * any other update of the trie invalidates it, and it then starts again from the root.
+   */
+  public static final class Finger {
+
+    private final BinarySearchTrie trie;
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final BSTrieNode<BitsKey>[] path = new BSTrieNode[BitsKey.w + 1];
+    private final long[] before = new long[BitsKey.w + 1];
+    private int depth; // the depth where the last descent ended
+    private long key;
+    private long stamp; // the modCount of the trie when the finger was last valid
+
+    private Finger(final BinarySearchTrie trie) {
+      this.trie = trie;
+      stamp = trie.modCount - 1;
+    }
+  }
+
+  /**
+   * Returns a new finger on this trie, which starts at the root.
+   * @return the finger
+   */
+  public Finger finger() {
+    return new Finger(this);
+  }
+
+  /**
+   * Returns the number of keys smaller than {@code x}, starting from {@code finger}.
+   * @param x the query
+   * @param finger a finger on this trie, which is moved to {@code x}
+   * @return rank({@code x})
+   * @throws IllegalArgumentException if the finger is on another trie
+   */
+  public long rank(final long x, final Finger finger) {
+    final int depth = locate(x, finger);
+    final BSTrieNode<BitsKey> curr = finger.path[depth];
+    long res = finger.before[depth];
+    if (curr != null && Long.compareUnsigned(curr.key.val, x) < 0) {
+      res += curr.leavesBelow;
+    }
+    return res;
+  }
+
+  /**
+   * Returns the largest key smaller than {@code x}, starting from {@code finger}.
+   * @param x the query
+   * @param finger a finger on this trie, which is moved to {@code x}
+   * @return predecessor({@code x}), or {@code null} if there is none
+   * @throws IllegalArgumentException if the finger is on another trie
+   */
+  public Long predecessor(final long x, final Finger finger) {
+    final int depth = locate(x, finger);
+    final BSTrieNode<BitsKey>[] path = finger.path;
+    if (path[depth] != null && Long.compareUnsigned(path[depth].key.val, x) < 0) {
+      return path[depth].key.val;
+    }
+    // the closest node where x went right past a left subtree
+    for (int i = depth - 1; i >= 0; i--) {
+      if (Util.bit(BitsKey.w - 1 - i, x) == 1 && path[i].left != null) {
+        return extreme(path[i].left, true);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the smallest key larger than or equal to {@code x}, starting from {@code finger}.
+   * @param x the query
+   * @param finger a finger on this trie, which is moved to {@code x}
+   * @return successor({@code x}), or {@code null} if there is none
+   * @throws IllegalArgumentException if the finger is on another trie
+   */
+  public Long successor(final long x, final Finger finger) {
+    final int depth = locate(x, finger);
+    final BSTrieNode<BitsKey>[] path = finger.path;
+    if (path[depth] != null && Long.compareUnsigned(path[depth].key.val, x) >= 0) {
+      return path[depth].key.val;
+    }
+    // the closest node where x went left past a right subtree
+    for (int i = depth - 1; i >= 0; i--) {
+      if (Util.bit(BitsKey.w - 1 - i, x) == 0 && path[i].right != null) {
+        return extreme(path[i].right, false);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Inserts {@code x}, starting from {@code finger}. Only the counts of the nodes above the new
+   * leaf are updated on the way back to the root, without searching.
+   * @param x the key
+   * @param finger a finger on this trie, which is moved to {@code x} and stays valid
+   * @throws IllegalArgumentException if the finger is on another trie
+   */
+  public void insert(final long x, final Finger finger) {
+    final int depth = locate(x, finger);
+    final BSTrieNode<BitsKey>[] path = finger.path;
+    final BSTrieNode<BitsKey> curr = path[depth];
+    if (curr == null) {
+      path[depth] = new BSTrieNode<BitsKey>(new BitsKey(x));
+    } else if (curr.key.val == x) {
+      if (!multiset) {
+        return;
+      }
+      curr.leavesBelow++;
+    } else {
+      path[depth] = split(new BSTrieNode<BitsKey>(new BitsKey(x)), curr, BitsKey.w - 1 - depth);
+    }
+    finger.depth = relink(path, x, depth);
+    finger.stamp = ++modCount;
+  }
+
+  /**
+   * Removes {@code x}, or one copy of it in a multiset, starting from {@code finger}.
+   * @param x the key
+   * @param finger a finger on this trie, which is moved to {@code x} and stays valid
+   * @throws IllegalArgumentException if the finger is on another trie
+   */
+  public void delete(final long x, final Finger finger) {
+    final int depth = locate(x, finger);
+    final BSTrieNode<BitsKey>[] path = finger.path;
+    final BSTrieNode<BitsKey> curr = path[depth];
+    if (curr == null || curr.key.val != x) {
+      return;
+    }
+    if (--curr.leavesBelow == 0) {
+      path[depth] = null;
+    }
+    finger.depth = relink(path, x, depth);
+    finger.stamp = ++modCount;
+  }
+
+  /**
+   * Moves {@code finger} to the path of {@code x} and returns the depth where that path ends, at
+   * a leaf or at a missing child. The nodes above the depth where {@code x} parts from the last key
+   * of the finger are shared by both paths, so the descent starts there, or at the root if the
+   * trie has changed since the finger was last used.
+   */
+  private int locate(final long x, final Finger finger) {
+    if (finger.trie != this) {
+      throw new IllegalArgumentException("The finger is on another trie.");
+    }
+    final BSTrieNode<BitsKey>[] path = finger.path;
+    final long[] before = finger.before;
+    int depth = 0;
+    if (finger.stamp != modCount) {
+      path[0] = root;
+      before[0] = 0;
+      finger.stamp = modCount;
+    } else {
+      depth = Math.min(finger.depth, Long.numberOfLeadingZeros(finger.key ^ x));
+    }
+
+    BSTrieNode<BitsKey> curr = path[depth];
+    long res = before[depth];
+    while (curr != null && curr.children() != 0) {
+      if (Util.bit(BitsKey.w - 1 - depth, x) == 0) {
+        curr = curr.left;
+      } else {
+        if (curr.left != null) {
+          res += curr.left.leavesBelow;
+        }
+        curr = curr.right;
+      }
+      path[++depth] = curr;
+      before[depth] = res;
+    }
+    finger.depth = depth;
+    finger.key = x;
+    return depth;
+  }
+
+  /**
+   * Links the node {@code path[depth]} on the path of {@code x}, which replaced the former one, to
+   * its parent and restores the counts and the shape of the nodes above it, as the recursive
+   * updates do on their way up. The ranks on entering the nodes do not change, since the updated
+   * key is below all of them.
+   * @return the depth of the deepest node of the path still in the trie
+   */
+  private int relink(final BSTrieNode<BitsKey>[] path, final long x, final int depth) {
+    int res = depth;
+    for (int i = depth - 1; i >= 0; i--) {
+      final BSTrieNode<BitsKey> parent = path[i];
+      if (Util.bit(BitsKey.w - 1 - i, x) == 0) {
+        parent.left = path[i + 1];
+      } else {
+        parent.right = path[i + 1];
+      }
+      path[i] = collapse(parent);
+      if (path[i] != parent) {
+        res = i;
+      }
+    }
+    root = path[0];
+    return res;
+  }
+
+  /**
+   * Returns the smallest key below {@code curr}, or the largest if {@code largest}.
+   */
+  private static long extreme(final BSTrieNode<BitsKey> curr, final boolean largest) {
+    return extremeLeaf(curr, largest).key.val;
+  }
+
+  /**
+   * Returns the leaf of the smallest key below {@code curr}, or of the largest if {@code largest}.
+   */
+  private static BSTrieNode<BitsKey> extremeLeaf(BSTrieNode<BitsKey> curr,
+      final boolean largest) {
+    while (curr.children() != 0) {
+      if (largest) {
+        curr = curr.right != null ? curr.right : curr.left;
+      } else {
+        curr = curr.left != null ? curr.left : curr.right;
+      }
+    }
+    return curr;
+  }
+
+  /* BATCH QUERIES */
+
+  @Override
+  public void rankBatch(final long[] queries, final long[] out) {
+    BatchQueries.inOrder(queries, out, this::rankSorted);
+  }
+
+  /**
+   * Computes the ranks of the ascending {@code queries}. The nodes of the last descent and the
+   * ranks on entering them are kept, and each query starts at the deepest of them on its own path:
+   * the node where it parts from the previous query, or the leaf ending the previous descent.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void rankSorted(final long[] queries, final long[] out) {
+    final BSTrieNode<BitsKey>[] path = new BSTrieNode[BitsKey.w + 1];
+    final long[] before = new long[BitsKey.w + 1];
+    path[0] = root;
+    int last = 0; // the depth where the last descent ended
+    long prev = 0;
+
+    for (int i = 0; i < queries.length; i++) {
+      final long x = queries[i];
+      int depth = i == 0 ? 0 : Math.min(last, Long.numberOfLeadingZeros(prev ^ x));
+      BSTrieNode<BitsKey> curr = path[depth];
+      long res = before[depth];
+      while (curr != null && curr.children() != 0) {
+        if (Util.bit(BitsKey.w - 1 - depth, x) == 0) {
+          curr = curr.left;
+        } else {
+          if (curr.left != null) {
+            res += curr.left.leavesBelow;
+          }
+          curr = curr.right;
+        }
+        path[++depth] = curr;
+        before[depth] = res;
+      }
+      if (curr != null && Long.compareUnsigned(curr.key.val, x) < 0) {
+        res += curr.leavesBelow;
+      }
+      out[i] = res;
+      last = depth;
+      prev = x;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>Every query in flight is a small state machine: it descends along its bits, remembering
+   * the last left subtree it passed, and then, unless its leaf is smaller than it, descends to the
+   * largest leaf of that subtree to find the predecessor.
+   */
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public void rankAndPredecessorBatch(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    BatchQueries.checkGroup(queries, group, ranks, predecessors);
+    final int g = Math.min(group, queries.length);
+    final int[] query = new int[g]; // the query of every slot, -1 once there are no more
+    final BSTrieNode<BitsKey>[] node = new BSTrieNode[g];
+    final BSTrieNode<BitsKey>[] lower = new BSTrieNode[g]; // the last left subtree passed
+    final int[] depth = new int[g]; // -1 while looking for the largest leaf of lower
+    final long[] res = new long[g];
+
+    int next = 0;
+    int active = g;
+    for (int s = 0; s < g; s++) {
+      query[s] = next++;
+      node[s] = root;
+    }
+
+    while (active > 0) {
+      for (int s = 0; s < g; s++) {
+        if (query[s] < 0) {
+          continue;
+        }
+
+        final long x = queries[query[s]];
+        final BSTrieNode<BitsKey> curr = node[s];
+        BSTrieNode<BitsKey> pred = null;
+        boolean done = false;
+        if (curr == null) {
+          done = true;
+        } else if (depth[s] < 0) {
+          // the rank is known, walking down the right spine of lower
+          if (curr.children() == 0) {
+            pred = curr;
+            done = true;
+          } else {
+            node[s] = curr.right != null ? curr.right : curr.left;
+          }
+        } else if (curr.children() == 0) {
+          if (Long.compareUnsigned(curr.key.val, x) < 0) {
+            res[s] += curr.leavesBelow;
+            pred = curr;
+            done = true;
+          } else {
+            node[s] = lower[s];
+            depth[s] = -1;
+            done = lower[s] == null;
+          }
+        } else {
+          BSTrieNode<BitsKey> child;
+          if (Util.bit(BitsKey.w - 1 - depth[s], x) == 0) {
+            child = curr.left;
+          } else {
+            if (curr.left != null) {
+              res[s] += curr.left.leavesBelow;
+              lower[s] = curr.left;
+            }
+            child = curr.right;
+          }
+          if (child == null) {
+            child = lower[s];
+            depth[s] = -1;
+            done = child == null;
+          } else {
+            depth[s]++;
+          }
+          node[s] = child;
+        }
+
+        if (done) {
+          ranks[query[s]] = res[s];
+          predecessors[query[s]] = pred == null ? 0 : pred.key.val;
+          if (next < queries.length) {
+            query[s] = next++;
+            node[s] = root;
+            lower[s] = null;
+            depth[s] = 0;
+            res[s] = 0;
+          } else {
+            query[s] = -1;
+            active--;
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void selectBatch(final long[] ranks, final long[] out) {
+    if (multiset) {
+      RankSelectPredecessorMultiset.super.selectBatch(ranks, out);
+      return;
+    }
+    BatchQueries.checkLength(ranks, out);
+    BatchQueries.checkRanks(this, ranks);
+    BatchQueries.inOrder(ranks, out, (sorted, res) -> BatchQueries.selectSorted(this, sorted, res));
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor keeps the path from the root to its leaf in an explicit stack, so a full scan
+   * visits every node a constant number of times. It visits every key once whatever its count.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new TrieCursor();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>Constructed as a multiset, the spliterator reads every copy of the keys with select, and
+   * it is not {@code DISTINCT}.
+   */
+  @Override
+  public Spliterator.OfLong longSpliterator() {
+    return new RankSpliterator(this, !multiset);
+  }
+
+  private final class TrieCursor implements LongCursor {
+
+    // path[0] is the root and path[depth] the leaf at the cursor, if the cursor is on a key
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final BSTrieNode<BitsKey>[] path = new BSTrieNode[BitsKey.w + 1];
+    private int depth = -1;
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      depth = -1;
+      if (root == null) {
+        after = true;
+        return false;
+      }
+
+      BSTrieNode<BitsKey> curr = root;
+      for (int d = BitsKey.w - 1; curr.children() != 0; d--) {
+        path[++depth] = curr;
+        if (Util.bit(d, x) == 0) {
+          if (curr.left == null) {
+            // every key below is larger than x
+            descend(curr.right, false);
+            return true;
+          }
+          curr = curr.left;
+        } else {
+          if (curr.right == null) {
+            // every key below is smaller than x
+            descend(curr.left, true);
+            return next();
+          }
+          curr = curr.right;
+        }
+      }
+      path[++depth] = curr;
+      return Long.compareUnsigned(curr.key.val, x) >= 0 || next();
+    }
+
+    @Override
+    public boolean next() {
+      if (depth < 0) {
+        if (after || root == null) {
+          after = true;
+          return false;
+        }
+        descend(root, false);
+        return true;
+      }
+
+      while (depth > 0) {
+        final BSTrieNode<BitsKey> child = path[depth--];
+        if (path[depth].left == child && path[depth].right != null) {
+          descend(path[depth].right, false);
+          return true;
+        }
+      }
+      depth = -1;
+      after = true;
+      return false;
+    }
+
+    @Override
+    public boolean prev() {
+      if (depth < 0) {
+        if (!after || root == null) {
+          after = false;
+          return false;
+        }
+        descend(root, true);
+        return true;
+      }
+
+      while (depth > 0) {
+        final BSTrieNode<BitsKey> child = path[depth--];
+        if (path[depth].right == child && path[depth].left != null) {
+          descend(path[depth].left, true);
+          return true;
+        }
+      }
+      depth = -1;
+      after = false;
+      return false;
+    }
+
+    @Override
+    public long current() {
+      if (depth < 0) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return path[depth].key.val;
+    }
+
+    /**
+     * Pushes the path from {@code curr} to its smallest leaf, or its largest if {@code largest}.
+     */
+    private void descend(BSTrieNode<BitsKey> curr, final boolean largest) {
+      path[++depth] = curr;
+      while (curr.children() != 0) {
+        if (largest) {
+          curr = curr.right != null ? curr.right : curr.left;
+        } else {
+          curr = curr.left != null ? curr.left : curr.right;
+        }
+        path[++depth] = curr;
+      }
+    }
+  }
+
   /* Useful functions */
 
   public int count() {
@@ -0,0 +1,88 @@
+package integersets;
+
+import java.util.Arrays;
+
+/**
+ * A blocked Bloom filter over 64-bit keys. Every key sets {@code k} bits within a single block of
+ * 512 bits, one cache line, chosen by the high bits of its hash, so a query reads one cache line
+ * whatever {@code k}. The bits within the block are chosen by double hashing on the low 18 bits.
+ * Keys cannot be removed; the filter is cleared and refilled instead.
+ */
+final class BlockedBloomFilter {
+
+  private static final int BLOCK_WORDS = 8;
+  private static final int BLOCK_BITS = BLOCK_WORDS * Long.SIZE;
+
+  private final long[] bits;
+  private final int blocks;
+  private final int k;
+
+  /**
+   * Constructs an empty filter sized for {@code capacity} keys.
+   * @param capacity the number of keys expected
+   * @param bitsPerKey the number of bits per expected key
+   */
+  BlockedBloomFilter(final long capacity, final int bitsPerKey) {
+    final long size = Math.max(1, (capacity * bitsPerKey + BLOCK_BITS - 1) / BLOCK_BITS);
+    if (size > Integer.MAX_VALUE / BLOCK_WORDS) {
+      throw new IllegalArgumentException("The filter is too large.");
+    }
+    blocks = (int) size;
+    bits = new long[blocks * BLOCK_WORDS];
+    // the number of bits set per key that minimises the false positives of a plain Bloom filter
+    k = Math.max(1, Math.min(16, (int) Math.round(bitsPerKey * Math.log(2))));
+  }
+
+  void add(final long x) {
+    final long h = hash(x);
+    final int base = block(h);
+    final int a = (int) h & (BLOCK_BITS - 1);
+    final int b = (int) (h >>> 9) & (BLOCK_BITS - 1) | 1;
+    for (int i = 0; i < k; i++) {
+      final int bit = (a + i * b) & (BLOCK_BITS - 1);
+      bits[base + (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  /**
+   * Returns {@code false} if {@code x} was never added, and {@code true} if it may have been.
+   */
+  boolean mightContain(final long x) {
+    final long h = hash(x);
+    final int base = block(h);
+    final int a = (int) h & (BLOCK_BITS - 1);
+    final int b = (int) (h >>> 9) & (BLOCK_BITS - 1) | 1;
+    for (int i = 0; i < k; i++) {
+      final int bit = (a + i * b) & (BLOCK_BITS - 1);
+      if ((bits[base + (bit >>> 6)] & 1L << bit) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void clear() {
+    Arrays.fill(bits, 0);
+  }
+
+  /**
+   * Returns the position of the first word of the block of the hash {@code h}, mapping its high
+   * 32 bits to {@code [0, blocks)} by a multiplication instead of a division.
+   */
+  private int block(final long h) {
+    return (int) (((h >>> 32) * blocks) >>> 32) * BLOCK_WORDS;
+  }
+
+  /**
+   * The finalizer of MurmurHash3, which spreads every bit of the key to all bits of the hash.
+   */
+  private static long hash(final long x) {
+    long h = x;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,255 @@
+package integersets;
+
+import java.util.Spliterator;
+
+/**
+ * A {@code RankSelectPredecessorUpdate} set behind a bounded cache of the results of
+ * {@code predecessor}, {@code successor} and {@code rank}, for skewed workloads where a few query
+ * keys make up most of the queries. Every other operation is passed on to the set, and all the
+ * updates of the set must go through the {@code CachedSet}.
+ *
+ * <p>The cache is an open addressing table held in parallel arrays, keyed by the query and the
+ * operation. A key is only looked for in the {@code WINDOW} slots following its hash, so a lookup
+ * reads a few adjacent slots and a hit allocates nothing. Every entry is stamped with the
+ * modification count of the set when it was computed, and every update that changes the set
+ * increments the count, which invalidates the whole cache in O(1) time. A miss is stored in the
+ * first stale slot of its window or, if there is none, in the slot chosen by the CLOCK policy: the
+ * window is swept clearing the reference bits set by hits, until an entry that was not hit since
+ * the last sweep is found.
+ */
+public class CachedSet implements RankSelectPredecessorUpdate {
+
+  private static final int WINDOW = 8;
+
+  private static final byte RANK = 0;
+  private static final byte PREDECESSOR = 1;
+  private static final byte SUCCESSOR = 2;
+
+  private final RankSelectPredecessorUpdate set;
+  private final int mask;
+  private final long[] query;
+  private final byte[] op;
+  private final long[] stamp; // the modCount of the entry, 0 if the slot was never used
+  private final long[] rank;
+  private final Long[] key; // the result of predecessor and successor entries
+  private final boolean[] referenced;
+  private long modCount = 1;
+
+  private long hits;
+  private long misses;
+
+  /**
+   * Constructs a {@code CachedSet} in front of {@code set}, with room for 4096 results.
+   * @param set the set, which may already hold keys
+   */
+  public CachedSet(final RankSelectPredecessorUpdate set) {
+    this(set, 4096);
+  }
+
+  /**
+   * Constructs a {@code CachedSet} in front of {@code set}.
+   * @param set the set, which may already hold keys
+   * @param capacity the number of results kept, rounded up to a power of two
+   */
+  public CachedSet(final RankSelectPredecessorUpdate set, final int capacity) {
+    if (capacity < WINDOW || capacity > 1 << 30) {
+      throw new IllegalArgumentException("The capacity must be between 8 and 2^30.");
+    }
+    this.set = set;
+    final int size = Integer.highestOneBit(capacity - 1) << 1;
+    mask = size - 1;
+    query = new long[size];
+    op = new byte[size];
+    stamp = new long[size];
+    rank = new long[size];
+    key = new Long[size];
+    referenced = new boolean[size];
+  }
+
+  /**
+   * Returns the number of queries answered from the cache.
+   * @return the number of hits
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of queries passed on to the set.
+   * @return the number of misses
+   */
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * Returns the fraction of the queries answered from the cache.
+   * @return the hit ratio, or {@code 0} if there was no query
+   */
+  public double hitRatio() {
+    final long queries = hits + misses;
+    return queries == 0 ? 0 : (double) hits / queries;
+  }
+
+  @Override
+  public long rank(final long x) {
+    final int slot = find(x, RANK);
+    if (slot >= 0) {
+      return rank[slot];
+    }
+    final long res = set.rank(x);
+    rank[store(x, RANK)] = res;
+    return res;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final int slot = find(x, PREDECESSOR);
+    if (slot >= 0) {
+      return key[slot];
+    }
+    final Long res = set.predecessor(x);
+    key[store(x, PREDECESSOR)] = res;
+    return res;
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final int slot = find(x, SUCCESSOR);
+    if (slot >= 0) {
+      return key[slot];
+    }
+    final Long res = set.successor(x);
+    key[store(x, SUCCESSOR)] = res;
+    return res;
+  }
+
+  /**
+   * Returns the slot holding a valid result of {@code operation} for {@code x}, or {@code -1}.
+   */
+  private int find(final long x, final byte operation) {
+    final int start = home(x, operation);
+    for (int i = 0; i < WINDOW; i++) {
+      final int slot = (start + i) & mask;
+      if (stamp[slot] == modCount && query[slot] == x && op[slot] == operation) {
+        referenced[slot] = true;
+        hits++;
+        return slot;
+      }
+    }
+    misses++;
+    return -1;
+  }
+
+  /**
+   * Claims a slot in the window of {@code x} for the result of {@code operation}, which the
+   * caller stores at once. It is only called once the result is known, so that a query that throws
+   * never leaves a slot stamped valid with the result of the entry it replaced.
+   */
+  private int store(final long x, final byte operation) {
+    final int start = home(x, operation);
+    int slot = -1;
+    for (int i = 0; i < WINDOW && slot < 0; i++) {
+      if (stamp[(start + i) & mask] != modCount) {
+        slot = (start + i) & mask;
+      }
+    }
+    for (int i = 0; slot < 0; i++) {
+      final int s = (start + (i & (WINDOW - 1))) & mask;
+      if (referenced[s]) {
+        referenced[s] = false;
+      } else {
+        slot = s;
+      }
+    }
+
+    query[slot] = x;
+    op[slot] = operation;
+    stamp[slot] = modCount;
+    referenced[slot] = false;
+    return slot;
+  }
+
+  private int home(final long x, final byte operation) {
+    final long h = x * 0x9E3779B97F4A7C15L + operation * 0xC2B2AE3D27D4EB4FL;
+    return (int) (h ^ h >>> 32) & mask;
+  }
+
+  /* UPDATES */
+
+  @Override
+  public void insert(final long x) {
+    final long size = set.size();
+    set.insert(x);
+    if (set.size() != size) {
+      modCount++;
+    }
+  }
+
+  @Override
+  public void delete(final long x) {
+    final long size = set.size();
+    set.delete(x);
+    if (set.size() != size) {
+      modCount++;
+    }
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    final Long res = set.deleteByRank(rank);
+    if (res != null) {
+      modCount++;
+    }
+    return res;
+  }
+
+  @Override
+  public void reset() {
+    set.reset();
+    modCount++;
+  }
+
+  /* PASSED ON */
+
+  @Override
+  public boolean member(final long x) {
+    return set.member(x);
+  }
+
+  @Override
+  public Long select(final long rank) {
+    return set.select(rank);
+  }
+
+  @Override
+  public long size() {
+    return set.size();
+  }
+
+  @Override
+  public void rankBatch(final long[] queries, final long[] out) {
+    set.rankBatch(queries, out);
+  }
+
+  @Override
+  public void rankAndPredecessorBatch(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    set.rankAndPredecessorBatch(queries, group, ranks, predecessors);
+  }
+
+  @Override
+  public void selectBatch(final long[] ranks, final long[] out) {
+    set.selectBatch(ranks, out);
+  }
+
+  @Override
+  public LongCursor cursor() {
+    return set.cursor();
+  }
+
+  @Override
+  public Spliterator.OfLong longSpliterator() {
+    return set.longSpliterator();
+  }
+}
@@ -0,0 +1,666 @@
+package integersets;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Implementation of an indexable skip list (Pugh) over primitive {@code long} keys, safe for use
+ * by concurrent threads. Every link stores its span, the number of keys it skips plus one, so
+ * rank and select add up spans along a single O(lg n) expected time search path.
+ *
+ * <p>Updates never lock. As in the lock-free skip list of Herlihy and Shavit, a node is linked one
+ * level at a time, bottom up, with a compare-and-set on the link of its predecessor, and deleted
+ * by marking its links top down, the bottom one last: a marked link is replaced by a marker node
+ * holding its successor, so that nothing can be linked after a deleted node. Every search unlinks
+ * the marked nodes it meets. Member, predecessor, successor and the cursor read the links without
+ * ever waiting.
+ *
+ * <p>The spans cannot change atomically with the links, so they are repaired after every change:
+ * the thread that linked, marked or unlinked a node recomputes, level by level upwards, the spans
+ * of the links around its key from the spans of the level below. Every span has a stamp, bumped
+ * before each repair, and a repair that overlapped another one is redone, so that the spans are
+ * exact whenever no update is in progress. Rank and select wait for such a moment: they count the
+ * updates started before and after their search, and retry when an update ran in between.
+ */
+public class ConcurrentSkipList implements RankSelectPredecessorUpdate {
+
+  private static final int maxLevel = 32;
+
+  static final class Node {
+
+    final long key;
+    final AtomicReferenceArray<Node> next;
+
+    /**
+     * The span of each link above the bottom one: the number of keys after this node up to the
+     * target, included. The span of the bottom link is always {@code 1}, and the span of a
+     * {@code null} link is not used.
+     */
+    final AtomicLongArray span;
+
+    /**
+     * The stamp of each span, bumped before every repair of the span.
+     */
+    final AtomicLongArray stamp;
+
+    /**
+     * Whether the node is the marker of a deleted link, whose only link is the successor.
+     */
+    final boolean marker;
+
+    Node(final long key, final int level) {
+      this.key = key;
+      next = new AtomicReferenceArray<>(level);
+      span = new AtomicLongArray(level);
+      stamp = new AtomicLongArray(level);
+      marker = false;
+      span.set(0, 1);
+    }
+
+    /**
+     * Constructs the marker of a link to {@code successor}.
+     */
+    Node(final Node successor) {
+      key = 0;
+      next = new AtomicReferenceArray<>(1);
+      next.set(0, successor);
+      span = null;
+      stamp = null;
+      marker = true;
+    }
+  }
+
+  /**
+   * The scratch arrays of the updates of a thread.
+   */
+  private static final class Scratch {
+
+    final Node[] preds = new Node[maxLevel];
+    final Node[] succs = new Node[maxLevel];
+    final Node[] path = new Node[maxLevel];
+  }
+
+  private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  private final Node head = new Node(0, maxLevel);
+  private final AtomicInteger level = new AtomicInteger(1);
+  private final LongAdder n = new LongAdder();
+  private final LongAdder started = new LongAdder();
+  private final LongAdder finished = new LongAdder();
+
+  /**
+   * Constructs an empty {@code ConcurrentSkipList}.
+   */
+  public ConcurrentSkipList() {
+    reset();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>It must not run concurrently with other updates.
+   */
+  @Override
+  public void reset() {
+    started.increment();
+    try {
+      for (int i = 0; i < maxLevel; i++) {
+        head.next.set(i, null);
+      }
+      level.set(1);
+      n.reset();
+    } finally {
+      finished.increment();
+    }
+  }
+
+  @Override
+  public long size() {
+    return n.sum();
+  }
+
+  /* LINKS */
+
+  /**
+   * Returns the successor of {@code node} at level {@code i}, through the marker if the link is
+   * marked.
+   */
+  private static Node follow(final Node node, final int i) {
+    final Node next = node.next.get(i);
+    return next != null && next.marker ? next.next.get(0) : next;
+  }
+
+  /**
+   * Returns {@code true} if the link of {@code node} at level {@code i} is marked.
+   */
+  private static boolean isMarked(final Node node, final int i) {
+    final Node next = node.next.get(i);
+    return next != null && next.marker;
+  }
+
+  /**
+   * Returns the last node whose key is strictly smaller than {@code x} at level {@code i}, or
+   * {@code head}. It may be deleted.
+   */
+  private Node lower(final long x, final int i) {
+    Node h = head;
+    for (int j = level.get() - 1; j >= i; j--) {
+      Node next;
+      while ((next = follow(h, j)) != null && Long.compareUnsigned(next.key, x) < 0) {
+        h = next;
+      }
+    }
+    return h;
+  }
+
+  /**
+   * Returns the first node from {@code node} on that is not deleted, or {@code null}.
+   */
+  private static Node firstLive(Node node) {
+    while (node != null && isMarked(node, 0)) {
+      node = follow(node, 0);
+    }
+    return node;
+  }
+
+  /**
+   * Returns the last node that is not deleted and whose key is strictly smaller than {@code x}, or
+   * {@code null}.
+   */
+  private Node lastLiveBefore(final long x) {
+    Node h = lower(x, 0);
+    while (h != head && isMarked(h, 0)) {
+      h = lower(h.key, 0);
+    }
+    return h == head ? null : h;
+  }
+
+  /**
+   * Returns the node of the largest key, or {@code null}.
+   */
+  private Node lastLive() {
+    Node h = head;
+    for (int i = level.get() - 1; i >= 0; i--) {
+      Node next;
+      while ((next = follow(h, i)) != null) {
+        h = next;
+      }
+    }
+    if (h == head) {
+      return null;
+    }
+    return isMarked(h, 0) ? lastLiveBefore(h.key) : h;
+  }
+
+  /**
+   * Fills {@code preds} and {@code succs} with the last node whose key is strictly smaller than
+   * {@code x} and its successor at each level, unlinking the marked nodes met on the way.
+   * @return {@code true} if the bottom successor holds {@code x}
+   */
+  private boolean find(final long x, final Node[] preds, final Node[] succs) {
+    retry:
+    while (true) {
+      Node pred = head;
+      for (int i = level.get() - 1; i >= 0; i--) {
+        Node curr = pred.next.get(i);
+        if (curr != null && curr.marker) {
+          continue retry; // pred was deleted at this level
+        }
+        while (curr != null) {
+          final Node succ = curr.next.get(i);
+          if (succ != null && succ.marker) {
+            final Node after = succ.next.get(0);
+            if (!pred.next.compareAndSet(i, curr, after)) {
+              continue retry;
+            }
+            repair(curr.key, Math.max(1, i));
+            curr = after;
+          } else if (Long.compareUnsigned(curr.key, x) < 0) {
+            pred = curr;
+            curr = succ;
+          } else {
+            break;
+          }
+        }
+        preds[i] = pred;
+        succs[i] = curr;
+      }
+      return succs[0] != null && succs[0].key == x;
+    }
+  }
+
+  /* SPANS */
+
+  /**
+   * Repairs the spans of the links around the position of {@code x}, from level {@code from} up,
+   * after a link of level {@code from - 1} changed there. At level {@code from}, the spans of the
+   * last node before {@code x} and of the node of {@code x} are recomputed; at each level above,
+   * the spans of the nodes whose links cover the ones just repaired. Those are located only after
+   * the repair below, as a node linked or unlinked meanwhile is repaired by its own update.
+   */
+  private void repair(final long x, final int from) {
+    final Node[] path = scratch.get().path;
+    final int top = level.get();
+    if (from >= top) {
+      return;
+    }
+    Node h = head;
+    for (int i = top - 1; i >= from; i--) {
+      Node next;
+      while ((next = follow(h, i)) != null && Long.compareUnsigned(next.key, x) < 0) {
+        h = next;
+      }
+      path[i] = h;
+    }
+
+    Node a = path[from];
+    if (a != head && isMarked(a, from)) {
+      // a may already be unlinked, so its successors may be stale
+      a = lower(x, from);
+    }
+    Node next;
+    while ((next = follow(a, from)) != null && Long.compareUnsigned(next.key, x) < 0) {
+      a = next;
+    }
+    Node b = next != null && next.key == x ? next : null;
+    // a level raised meanwhile is repaired too, as its spans may have been computed before ours
+    for (int i = from; ; ) {
+      repairSpan(a, i);
+      if (b != null) {
+        repairSpan(b, i);
+      }
+      if (++i >= level.get()) {
+        return;
+      }
+      final Node hint = i < top ? path[i] : head;
+      a = owner(hint, a, i);
+      b = b == null ? null : owner(hint, b, i);
+      if (b == a) {
+        b = null;
+      }
+    }
+  }
+
+  /**
+   * Returns the node whose link at level {@code i} covers the position of {@code node}: the node
+   * itself if it is linked at that level, and otherwise the last node before it. The search starts
+   * from {@code hint} if it is linked and not after {@code node}.
+   */
+  private Node owner(final Node hint, final Node node, final int i) {
+    if (node == head || hint == node) {
+      return node;
+    }
+    Node u = hint;
+    if (u != head && (isMarked(u, i) || Long.compareUnsigned(u.key, node.key) >= 0)) {
+      u = lower(node.key, i);
+    }
+    Node next;
+    while ((next = follow(u, i)) != null && next != node
+        && Long.compareUnsigned(next.key, node.key) <= 0) {
+      u = next;
+    }
+    return next == node ? node : u;
+  }
+
+  /**
+   * Recomputes the span of the link of {@code u} at level {@code i}, from the liveness of the
+   * bottom nodes if {@code i} is {@code 1} and from the spans of level {@code i - 1} otherwise.
+   * The stamp is bumped first and the span recomputed until the stamp did not change meanwhile, so
+   * that the last repair to finish read the spans left by every earlier one.
+   */
+  private static void repairSpan(final Node u, final int i) {
+    u.stamp.incrementAndGet(i);
+    long s;
+    do {
+      s = u.stamp.get(i);
+      final Node t = follow(u, i);
+      long sum = 0;
+      if (t != null) {
+        if (i == 1) {
+          Node v = follow(u, 0);
+          while (v != null && v != t && Long.compareUnsigned(v.key, t.key) < 0) {
+            sum += isMarked(v, 0) ? 0 : 1;
+            v = follow(v, 0);
+          }
+          sum += isMarked(t, 0) ? 0 : 1;
+        } else {
+          Node v = u;
+          do {
+            sum += v.span.get(i - 1);
+            v = follow(v, i - 1);
+          } while (v != null && v != t && Long.compareUnsigned(v.key, t.key) < 0);
+        }
+      }
+      u.span.set(i, sum);
+    } while (u.stamp.get(i) != s);
+  }
+
+  /* QUERIES */
+
+  @Override
+  public boolean member(final long x) {
+    for (Node v = follow(lower(x, 0), 0); v != null && v.key == x; v = follow(v, 0)) {
+      if (!isMarked(v, 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final Node h = lastLiveBefore(x);
+    return h == null ? null : h.key;
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final Node next = firstLive(follow(lower(x, 0), 0));
+    return next == null ? null : next.key;
+  }
+
+  @Override
+  public Long peekFirst() {
+    final Node next = firstLive(follow(head, 0));
+    return next == null ? null : next.key;
+  }
+
+  @Override
+  public Long peekLast() {
+    final Node last = lastLive();
+    return last == null ? null : last.key;
+  }
+
+  /**
+   * Returns the number of updates finished once no update is in progress.
+   */
+  private long quiescent() {
+    while (true) {
+      final long f = finished.sum();
+      if (started.sum() == f) {
+        return f;
+      }
+      Thread.yield();
+    }
+  }
+
+  @Override
+  public long rank(final long x) {
+    while (true) {
+      final long s = quiescent();
+      long res = 0;
+      Node h = head;
+      for (int i = level.get() - 1; i >= 0; i--) {
+        Node next;
+        while ((next = follow(h, i)) != null && Long.compareUnsigned(next.key, x) < 0) {
+          res += h.span.get(i);
+          h = next;
+        }
+      }
+      if (started.sum() == s) {
+        return res;
+      }
+    }
+  }
+
+  @Override
+  public Long select(final long rank) {
+    while (true) {
+      final long s = quiescent();
+      if (rank < 0 || rank >= n.sum()) {
+        if (started.sum() == s) {
+          return null;
+        }
+        continue;
+      }
+
+      // the key of rank r is at position r + 1
+      long remaining = rank + 1;
+      Node h = head;
+      for (int i = level.get() - 1; i >= 0; i--) {
+        Node next;
+        while ((next = follow(h, i)) != null && h.span.get(i) <= remaining) {
+          remaining -= h.span.get(i);
+          h = next;
+        }
+      }
+      final Long res = h == head ? null : h.key;
+      if (started.sum() == s && remaining == 0) {
+        return res;
+      }
+    }
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor follows the links of the bottom level, so {@code next} takes O(1) time, while
+   * {@code prev} and {@code seek} search from the head in O(lg n) expected time. It skips the
+   * deleted nodes and never waits, but under concurrent updates it may miss the keys inserted or
+   * deleted while it moves.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new ListCursor();
+  }
+
+  private final class ListCursor implements LongCursor {
+
+    private Node node; // the node at the cursor, or null if the cursor is off the keys
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      return moveTo(firstLive(follow(lower(x, 0), 0)), true);
+    }
+
+    @Override
+    public boolean next() {
+      if (node == null) {
+        return !after && moveTo(firstLive(follow(head, 0)), true);
+      }
+      return moveTo(firstLive(follow(node, 0)), true);
+    }
+
+    @Override
+    public boolean prev() {
+      if (node == null) {
+        return after && moveTo(lastLive(), false);
+      }
+      return moveTo(lastLiveBefore(node.key), false);
+    }
+
+    @Override
+    public long current() {
+      if (node == null) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return node.key;
+    }
+
+    /**
+     * Moves to {@code target}, or off the keys on the side given by {@code forward} if it is
+     * {@code null}.
+     */
+    private boolean moveTo(final Node target, final boolean forward) {
+      node = target;
+      if (target == null) {
+        after = forward;
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /* UPDATES */
+
+  /**
+   * Returns a random level between 1 and {@code maxLevel}, each level being reached with
+   * probability 1/4.
+   */
+  private static int randomLevel() {
+    final int r = ThreadLocalRandom.current().nextInt();
+    return Math.min(maxLevel, 1 + Integer.numberOfTrailingZeros(r | (1 << 30)) / 2);
+  }
+
+  @Override
+  public void insert(final long x) {
+    started.increment();
+    try {
+      final Scratch s = scratch.get();
+      final int lvl = randomLevel();
+      // searches start from the raised level before the node is linked there
+      for (int top = level.get(); top < lvl && !level.compareAndSet(top, lvl); ) {
+        top = level.get();
+      }
+
+      Node node;
+      do {
+        if (find(x, s.preds, s.succs)) {
+          return;
+        }
+        node = new Node(x, lvl);
+        for (int i = 0; i < lvl; i++) {
+          node.next.lazySet(i, s.succs[i]);
+        }
+      } while (!s.preds[0].next.compareAndSet(0, s.succs[0], node));
+      n.increment();
+
+      link:
+      for (int i = 1; i < lvl; i++) {
+        while (true) {
+          final Node succ = node.next.get(i);
+          if (succ != null && succ.marker) {
+            break link; // the node is being deleted
+          }
+          if ((succ == s.succs[i] || node.next.compareAndSet(i, succ, s.succs[i]))
+              && s.preds[i].next.compareAndSet(i, s.succs[i], node)) {
+            break;
+          }
+          find(x, s.preds, s.succs);
+          if (s.succs[0] != node) {
+            break link; // the node was deleted
+          }
+        }
+      }
+      if (isMarked(node, 0)) {
+        // a delete may have run before the upper links were in place
+        find(x, s.preds, s.succs);
+      }
+      repair(x, 1);
+    } finally {
+      finished.increment();
+    }
+  }
+
+  @Override
+  public void delete(final long x) {
+    started.increment();
+    try {
+      final Scratch s = scratch.get();
+      if (find(x, s.preds, s.succs)) {
+        remove(s.succs[0], s);
+      }
+    } finally {
+      finished.increment();
+    }
+  }
+
+  /**
+   * Removes the key with rank {@code rank} and returns it. The key is looked up by
+   * {@code select}, and looked up again if a concurrent update removed it first.
+   */
+  @Override
+  public Long deleteByRank(final long rank) {
+    while (true) {
+      final Long key = select(rank);
+      if (key == null) {
+        return null;
+      }
+      started.increment();
+      try {
+        final Scratch s = scratch.get();
+        if (find(key, s.preds, s.succs) && remove(s.succs[0], s)) {
+          return key;
+        }
+      } finally {
+        finished.increment();
+      }
+    }
+  }
+
+  /**
+   * Removes the smallest key and returns it. Concurrent calls never return the same key, as only
+   * one of them marks the bottom link of its node.
+   */
+  @Override
+  public Long pollFirst() {
+    started.increment();
+    try {
+      final Scratch s = scratch.get();
+      while (true) {
+        final Node first = firstLive(follow(head, 0));
+        if (first == null) {
+          return null;
+        }
+        if (remove(first, s)) {
+          return first.key;
+        }
+      }
+    } finally {
+      finished.increment();
+    }
+  }
+
+  @Override
+  public Long pollLast() {
+    started.increment();
+    try {
+      final Scratch s = scratch.get();
+      while (true) {
+        final Node last = lastLive();
+        if (last == null) {
+          return null;
+        }
+        if (remove(last, s)) {
+          return last.key;
+        }
+      }
+    } finally {
+      finished.increment();
+    }
+  }
+
+  /**
+   * Marks the links of {@code node} top down, then unlinks it and repairs the spans around it.
+   * @return {@code true} if this call marked the bottom link, and {@code false} if another
+   *     delete did
+   */
+  private boolean remove(final Node node, final Scratch s) {
+    for (int i = node.next.length() - 1; i > 0; i--) {
+      while (true) {
+        final Node succ = node.next.get(i);
+        if (succ != null && succ.marker || node.next.compareAndSet(i, succ, new Node(succ))) {
+          break;
+        }
+      }
+    }
+    while (true) {
+      final Node succ = node.next.get(0);
+      if (succ != null && succ.marker) {
+        return false;
+      }
+      if (node.next.compareAndSet(0, succ, new Node(succ))) {
+        break;
+      }
+    }
+    n.decrement();
+    find(node.key, s.preds, s.succs);
+    repair(node.key, 1);
+    return true;
+  }
+}
@@ -1,14 +1,25 @@
 package integersets;
 
+import java.util.Spliterator;
+
 /**
  * Implementation of the {@code DynamicFusionNodeBinaryRank} data structure, as described in Section
  * 3.3 of the report.
+ *
+ * <p>Constructed as a multiset, every slot of KEY carries a count, and the node keeps the
+ * cumulative counts of the keys in rank order, so that rank and select translate between the
+ * positions of the keys and the positions of their copies with one lookup and one binary search.
  */
-public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate {
+public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorMap,
+    RankSelectPredecessorMultiset {
 
   private static final int k = 16;
   private static final int ceilLgK = (int) Math.ceil(Math.log10(k) / Math.log10(2));
   private final long[] key = new long[k];
+  private final long[] value = new long[k]; // slot-parallel to key
+  private final long[] count = new long[k]; // slot-parallel to key
+  private final long[] cumulative = new long[k + 1]; // copies of the keys of rank < i
+  private final boolean multiset;
   private long index;
   private int bKey;
   private int n;
@@ -17,42 +28,80 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
    * Constructs an empty {@code DynamicFusionNodeBinaryRank} with capacity for 16 elements.
    */
   public DynamicFusionNodeBinaryRank() {
+    this(false);
+  }
+
+  /**
+   * Constructs an empty {@code DynamicFusionNodeBinaryRank} with capacity for 16 distinct elements.
+   * @param multiset whether {@code insert} adds copies of members
+   */
+  public DynamicFusionNodeBinaryRank(final boolean multiset) {
+    this.multiset = multiset;
     reset();
   }
 
   @Override
   public void insert(final long x) {
-    if (member(x)) {
+    final int i = binaryRank(x);
+    if (i < n && key[getIndex(i)] == x) {
+      if (multiset) {
+        count[getIndex(i)]++;
+        updateCumulative(i);
+      }
       return;
     }
 
-    if (size() == k) {
+    if (n == k) {
       throw new RuntimeException("Cannot insert. Node is full.");
     }
 
-    final int i = (int) rank(x);
     final int j = firstEmptySlot();
     key[j] = x;
+    value[j] = 0L;
+    count[j] = 1L;
     fillSlot(j);
     updateIndex(i, j);
     n++;
+    updateCumulative(i);
   }
 
   @Override
   public void delete(final long x) {
-    if (!member(x)) {
+    final int i = binaryRank(x);
+    if (i == n || key[getIndex(i)] != x) {
       return;
     }
 
-    final int i = (int) rank(x);
-    vacantSlot(getIndex(i));
-    updateIndex(i);
-    n--;
+    removeCopy(i);
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    final int i = keyRank(rank);
+    final long res = key[getIndex(i)];
+    removeCopy(i);
+    return res;
+  }
+
+  @Override
+  public boolean member(final long x) {
+    final int i = binaryRank(x);
+    return i < n && key[getIndex(i)] == x;
+  }
+
+  @Override
+  public long count(final long x) {
+    final int i = binaryRank(x);
+    return i < n && key[getIndex(i)] == x ? count[getIndex(i)] : 0;
   }
 
   @Override
   public long rank(final long x) {
-    return binaryRank(x);
+    return multiset ? cumulative[binaryRank(x)] : binaryRank(x);
   }
 
   @Override
@@ -61,12 +110,29 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
       return null;
     }
 
-    return key[getIndex(rank)];
+    return key[getIndex(keyRank(rank))];
+  }
+
+  @Override
+  public void put(final long x, final long value) {
+    if (!member(x)) {
+      insert(x);
+    }
+    this.value[getIndex(binaryRank(x))] = value;
+  }
+
+  @Override
+  public Long valueAt(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return value[getIndex(keyRank(rank))];
   }
 
   @Override
   public long size() {
-    return n;
+    return multiset ? cumulative[n] : n;
   }
 
   @Override
@@ -75,6 +141,176 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
     bKey = -1;
   }
 
+  /**
+   * {@inheritDoc}
+   * <br>The cursor walks {@code index} in rank order, so every move takes O(1) time, and it
+   * visits every key once whatever its count.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return binaryRank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return key[getIndex(rank)];
+      }
+    };
+  }
+
+  @Override
+  public void rankBatch(final long[] queries, final long[] out) {
+    BatchQueries.inOrder(queries, out, this::rankSorted);
+  }
+
+  /**
+   * Computes the ranks of the ascending {@code queries} in one pass over the keys in rank order,
+   * so the keys smaller than a query are skipped for all the following ones.
+   */
+  private void rankSorted(final long[] queries, final long[] out) {
+    int j = 0;
+    for (int i = 0; i < queries.length; i++) {
+      while (j < n && Long.compareUnsigned(key[getIndex(j)], queries[i]) < 0) {
+        j++;
+      }
+      out[i] = multiset ? cumulative[j] : j;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>Constructed as a multiset, the spliterator reads every copy of the keys with select, and
+   * it is not {@code DISTINCT}.
+   */
+  @Override
+  public Spliterator.OfLong longSpliterator() {
+    return new RankSpliterator(this, !multiset);
+  }
+
+  /* SPLIT AND JOIN */
+
+  /**
+   * Removes the keys larger than or equal to {@code x} from this node and returns them in a new
+   * node. The keys are moved slot by slot in rank order, without searching for them again.
+   * @param x the split key
+   * @return the node holding the keys larger than or equal to {@code x}
+   */
+  public DynamicFusionNodeBinaryRank splitAt(final long x) {
+    final DynamicFusionNodeBinaryRank res = new DynamicFusionNodeBinaryRank(multiset);
+    final int r = binaryRank(x);
+    for (int i = r; i < n; i++) {
+      final int slot = getIndex(i);
+      res.append(key[slot], value[slot], count[slot]);
+      vacantSlot(slot);
+    }
+    index &= r == 0 ? 0L : -1L >>> (Long.SIZE - r * ceilLgK);
+    n = r;
+    return res;
+  }
+
+  /**
+   * Appends the keys of {@code other}, which must all be larger than the keys of this node, and
+   * leaves {@code other} empty.
+   * @param other the node to be appended
+   * @throws IllegalArgumentException if a key of {@code other} is not larger than every key of
+   *      this node
+   */
+  public void join(final DynamicFusionNodeBinaryRank other) {
+    if (n + other.n > k) {
+      throw new RuntimeException("Cannot join. Node would overflow.");
+    }
+    if (n > 0 && other.n > 0
+        && Long.compareUnsigned(key[getIndex(n - 1)], other.key[other.getIndex(0)]) >= 0) {
+      throw new IllegalArgumentException("The keys of other must be larger than the keys of this.");
+    }
+
+    for (int i = 0; i < other.n; i++) {
+      final int slot = other.getIndex(i);
+      append(other.key[slot], other.value[slot], other.count[slot]);
+    }
+    other.reset();
+  }
+
+  /**
+   * Stores {@code x}, larger than every key in the node, with rank {@code n}.
+   * @param x the key
+   * @param value the value of the key
+   * @param count the count of the key
+   */
+  private void append(final long x, final long value, final long count) {
+    final int slot = firstEmptySlot();
+    key[slot] = x;
+    this.value[slot] = value;
+    this.count[slot] = count;
+    fillSlot(slot);
+    updateIndex(n, slot);
+    n++;
+    updateCumulative(n - 1);
+  }
+
+  /**
+   * Removes one copy of the key with rank {@code rank} among the distinct keys, and the key itself
+   * with its last copy.
+   *
+   * @param rank the rank of the key
+   */
+  private void removeCopy(final int rank) {
+    final int slot = getIndex(rank);
+    if (--count[slot] == 0) {
+      vacantSlot(slot);
+      updateIndex(rank);
+      n--;
+    }
+    updateCumulative(rank);
+  }
+
+  /**
+   * Recomputes the cumulative counts of the ranks after {@code rank}, once the count of the key
+   * with rank {@code rank} has changed or a key has been inserted or removed there.
+   *
+   * @param rank the first rank whose count may have changed
+   */
+  private void updateCumulative(final int rank) {
+    if (!multiset) {
+      return;
+    }
+    for (int i = rank; i < n; i++) {
+      cumulative[i + 1] = cumulative[i] + count[getIndex(i)];
+    }
+  }
+
+  /**
+   * Returns the rank among the distinct keys of the key holding copy {@code rank}, that is, the
+   * largest {@code i} with {@code cumulative[i] <= rank}.
+   *
+   * @param rank the rank of a copy, between 0 and {@code size() - 1}
+   * @return the rank of its key
+   */
+  private int keyRank(final long rank) {
+    if (!multiset) {
+      return (int) rank;
+    }
+    int lo = 0;
+    int hi = n - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (cumulative[mid] <= rank) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
   /** Returns the index of the first empty slot in KEY.
    * 
    * @return the index in KEY of the first empty slot.
@@ -132,7 +368,9 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
    */
   private void updateIndex(final int rank) {
     if (rank >= 0 && rank < k) {
-      final long hi = Util.getFields(rank + 1, ceilLgK, index) << (rank * ceilLgK);
+      // with k * ceilLgK = 64 there are no fields above the last one (shifts are mod 64)
+      final long hi = rank + 1 == k ? 0L
+          : Util.getFields(rank + 1, ceilLgK, index) << (rank * ceilLgK);
       if (rank > 0) {
         final long lo = Util.getFields(0, rank, ceilLgK, index);
         index = hi | lo;
@@ -155,7 +393,9 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
    */
   private void updateIndex(final int rank, final int slot) {
     if (rank >= 0 && rank < k && slot >= 0 && slot < k) {
-      final long hi = Util.getFields(rank, ceilLgK, index) << ((rank + 1) * ceilLgK);
+      // as above, the fields from rank k - 1 would be shifted by 64 bits, which wraps around
+      final long hi = rank + 1 == k ? 0L
+          : Util.getFields(rank, ceilLgK, index) << ((rank + 1) * ceilLgK);
       final long mid = Integer.toUnsignedLong(slot) << (rank * ceilLgK);
       if (rank > 0) {
         final long lo = Util.getFields(0, rank, ceilLgK, index);
@@ -176,7 +416,7 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
    * @return the rank of {@code x} in S
    */
   private int binaryRank(final long x) {
-    if (isEmpty()) {
+    if (n == 0) {
       return 0;
     }
 
@@ -186,7 +426,7 @@ public class DynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate
     while (lo <= hi) {
       final int mid = lo + ((hi - lo) / 2);
 
-      final int compare = Long.compareUnsigned(x, select(mid));
+      final int compare = Long.compareUnsigned(x, key[getIndex(mid)]);
 
       if (compare < 0) {
         hi = mid - 1;
@@ -1,15 +1,27 @@
 package integersets;
 
+import java.util.Spliterator;
+
 /**
  * Implementation of the {@code NaiveDynamicFusionNode} data structure, as described in Section 3.4
  * of the report.
+ *
+ * <p>Constructed as a multiset, every slot of KEY carries a count, and the node keeps the
+ * cumulative counts of the keys in rank order. The compressing key, {@code branch} and
+ * {@code free} only describe the distinct keys, so a copy of a member changes nothing but its
+ * count.
  */
-public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpdate {
+public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorMap,
+    RankSelectPredecessorMultiset {
   
   private static final int k = 8;
   private static final int ceilLgK = (int) Math.ceil(Math.log10(k) / Math.log10(2));
   private static final long M = Util.M(k, k * k); // multiplying constant
   private final long[] key = new long[k];
+  private final long[] value = new long[k]; // slot-parallel to key
+  private final long[] count = new long[k]; // slot-parallel to key
+  private final long[] cumulative = new long[k + 1]; // copies of the keys of rank < i
+  private final boolean multiset;
   private long index;
   private int bKey;
   private int n;
@@ -25,28 +37,44 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
    * Constructs an empty {@code DynamicFusionNodeDontCaresRank} with capacity for 8 elements.
    */
   public DynamicFusionNodeDontCaresRank() {
+    this(false);
+  }
+
+  /**
+   * Constructs an empty {@code DynamicFusionNodeDontCaresRank} with capacity for 8 distinct
+   * elements.
+   * @param multiset whether {@code insert} adds copies of members
+   */
+  public DynamicFusionNodeDontCaresRank(final boolean multiset) {
+    this.multiset = multiset;
     reset();
   }
 
   @Override
   public void insert(final long x) {
-    if (member(x)) {
+    final int i = dontCaresRank(x);
+    if (i < n && key[getIndex(i)] == x) {
+      if (multiset) {
+        count[getIndex(i)]++;
+        updateCumulative(i);
+      }
       return;
     }
 
-    if (size() == k) {
+    if (n == k) {
       throw new RuntimeException("Cannot insert. Node is full.");
     }
 
-    final int i = (int) rank(x);
-    
     final int j = firstEmptySlot();
     key[j] = x;
+    value[j] = 0L;
+    count[j] = 1L;
     fillSlot(j);
     updateIndex(i, j);
     n++;
+    updateCumulative(i);
 
-    if (size() > 1) {
+    if (n > 1) {
       // Update:
       // Compressing key
       updateCompressingKey();
@@ -62,34 +90,41 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
 
   @Override
   public void delete(final long x) {
-    if (!member(x)) {
+    final int i = dontCaresRank(x);
+    if (i == n || key[getIndex(i)] != x) {
       return;
     }
-    
-    if (size() == 1) {
-      reset();
-      return;
+
+    removeCopy(i);
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
     }
 
-    final int i = (int) rank(x);
-    vacantSlot(getIndex(i));
-    updateIndex(i);
-    n--;
-    
-    // Update:
-    // Compressing key
-    updateCompressingKey();
-    // compressed Keys
-    long compressedKeys = compressedKeys();
-    // free
-    updateFree(compressedKeys);
-    // branch
-    updateBranch(compressedKeys);
+    final int i = keyRank(rank);
+    final long res = key[getIndex(i)];
+    removeCopy(i);
+    return res;
+  }
+
+  @Override
+  public boolean member(final long x) {
+    final int i = dontCaresRank(x);
+    return i < n && key[getIndex(i)] == x;
+  }
+
+  @Override
+  public long count(final long x) {
+    final int i = dontCaresRank(x);
+    return i < n && key[getIndex(i)] == x ? count[getIndex(i)] : 0;
   }
 
   @Override
   public long rank(final long x) {
-    return dontCaresRank(x);
+    return multiset ? cumulative[dontCaresRank(x)] : dontCaresRank(x);
   }
 
   @Override
@@ -98,12 +133,29 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
       return null;
     }
 
-    return key[getIndex(rank)];
+    return key[getIndex(keyRank(rank))];
+  }
+
+  @Override
+  public void put(final long x, final long value) {
+    if (!member(x)) {
+      insert(x);
+    }
+    this.value[getIndex(dontCaresRank(x))] = value;
+  }
+
+  @Override
+  public Long valueAt(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return value[getIndex(keyRank(rank))];
   }
 
   @Override
   public long size() {
-    return n;
+    return multiset ? cumulative[n] : n;
   }
 
   @Override
@@ -118,6 +170,214 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
     free = -1L;
   }
 
+  /**
+   * {@inheritDoc}
+   * <br>The cursor walks {@code index} in rank order, so every move takes O(1) time, and it
+   * visits every key once whatever its count.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return dontCaresRank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return key[getIndex(rank)];
+      }
+    };
+  }
+
+  @Override
+  public void rankBatch(final long[] queries, final long[] out) {
+    BatchQueries.inOrder(queries, out, this::rankSorted);
+  }
+
+  /**
+   * Computes the ranks of the ascending {@code queries} in one pass over the keys in rank order,
+   * so the keys smaller than a query are skipped for all the following ones.
+   */
+  private void rankSorted(final long[] queries, final long[] out) {
+    int j = 0;
+    for (int i = 0; i < queries.length; i++) {
+      while (j < n && Long.compareUnsigned(key[getIndex(j)], queries[i]) < 0) {
+        j++;
+      }
+      out[i] = multiset ? cumulative[j] : j;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>Constructed as a multiset, the spliterator reads every copy of the keys with select, and
+   * it is not {@code DISTINCT}.
+   */
+  @Override
+  public Spliterator.OfLong longSpliterator() {
+    return new RankSpliterator(this, !multiset);
+  }
+
+  /* SPLIT AND JOIN */
+
+  /**
+   * Removes the keys larger than or equal to {@code x} from this node and returns them in a new
+   * node. The keys are moved slot by slot in rank order, without searching for them again.
+   * @param x the split key
+   * @return the node holding the keys larger than or equal to {@code x}
+   */
+  public DynamicFusionNodeDontCaresRank splitAt(final long x) {
+    final DynamicFusionNodeDontCaresRank res = new DynamicFusionNodeDontCaresRank(multiset);
+    final int r = dontCaresRank(x);
+    for (int i = r; i < n; i++) {
+      final int slot = getIndex(i);
+      res.append(key[slot], value[slot], count[slot]);
+      vacantSlot(slot);
+    }
+    index &= r == 0 ? 0L : -1L >>> (Long.SIZE - r * ceilLgK);
+    n = r;
+    rebuild();
+    res.rebuild();
+    return res;
+  }
+
+  /**
+   * Appends the keys of {@code other}, which must all be larger than the keys of this node, and
+   * leaves {@code other} empty.
+   * @param other the node to be appended
+   * @throws IllegalArgumentException if a key of {@code other} is not larger than every key of
+   *      this node
+   */
+  public void join(final DynamicFusionNodeDontCaresRank other) {
+    if (n + other.n > k) {
+      throw new RuntimeException("Cannot join. Node would overflow.");
+    }
+    if (n > 0 && other.n > 0
+        && Long.compareUnsigned(key[getIndex(n - 1)], other.key[other.getIndex(0)]) >= 0) {
+      throw new IllegalArgumentException("The keys of other must be larger than the keys of this.");
+    }
+
+    for (int i = 0; i < other.n; i++) {
+      final int slot = other.getIndex(i);
+      append(other.key[slot], other.value[slot], other.count[slot]);
+    }
+    other.reset();
+    rebuild();
+  }
+
+  /**
+   * Stores {@code x}, larger than every key in the node, with rank {@code n}.
+   * @param x the key
+   * @param value the value of the key
+   * @param count the count of the key
+   */
+  private void append(final long x, final long value, final long count) {
+    final int slot = firstEmptySlot();
+    key[slot] = x;
+    this.value[slot] = value;
+    this.count[slot] = count;
+    fillSlot(slot);
+    updateIndex(n, slot);
+    n++;
+    updateCumulative(n - 1);
+  }
+  /**
+   * Removes one copy of the key with rank {@code rank} among the distinct keys, and the key itself
+   * with its last copy.
+   *
+   * @param rank the rank of the key
+   */
+  private void removeCopy(final int rank) {
+    final int slot = getIndex(rank);
+    if (--count[slot] > 0) {
+      updateCumulative(rank);
+      return;
+    }
+    if (n == 1) {
+      reset();
+      return;
+    }
+
+    vacantSlot(slot);
+    updateIndex(rank);
+    n--;
+    updateCumulative(rank);
+
+    // Update:
+    // Compressing key
+    updateCompressingKey();
+    // compressed Keys
+    final long compressedKeys = compressedKeys();
+    // free
+    updateFree(compressedKeys);
+    // branch
+    updateBranch(compressedKeys);
+  }
+
+  /**
+   * Recomputes the cumulative counts of the ranks after {@code rank}, once the count of the key
+   * with rank {@code rank} has changed or a key has been inserted or removed there.
+   *
+   * @param rank the first rank whose count may have changed
+   */
+  private void updateCumulative(final int rank) {
+    if (!multiset) {
+      return;
+    }
+    for (int i = rank; i < n; i++) {
+      cumulative[i + 1] = cumulative[i] + count[getIndex(i)];
+    }
+  }
+
+  /**
+   * Returns the rank among the distinct keys of the key holding copy {@code rank}, that is, the
+   * largest {@code i} with {@code cumulative[i] <= rank}.
+   *
+   * @param rank the rank of a copy, between 0 and {@code size() - 1}
+   * @return the rank of its key
+   */
+  private int keyRank(final long rank) {
+    if (!multiset) {
+      return (int) rank;
+    }
+    int lo = 0;
+    int hi = n - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (cumulative[mid] <= rank) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+
+  /**
+   * Recomputes the compressing key, {@code branch} and {@code free} from the keys in the node.
+   */
+  private void rebuild() {
+    if (n == 0) {
+      reset();
+    } else if (n == 1) {
+      compressingKey = 0L;
+      branch = 0L;
+      free = -1L;
+    } else {
+      updateCompressingKey();
+      final long compressedKeys = compressedKeys();
+      updateFree(compressedKeys);
+      updateBranch(compressedKeys);
+    }
+  }
+
   /* HELPER METHODS INTRODUCED IN THIS IMPLEMENTATION */
 
   /**
@@ -126,7 +386,7 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
    * @return the rank of the key it {@code x} has matched
    */
   private int match(final long x) {
-    final long xCompressed = compress(x);
+    final long xCompressed = Util.compress(x, compressingKey);
     return Util.rankLemma1(xCompressed,
         branch | ((xCompressed * Util.getFields(0, n, k, M)) & free), n, k);
   }
@@ -137,12 +397,12 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
    * @return the rank of {@code x} in the set
    */
   private int dontCaresRank(final long x) {
-    if (isEmpty()) {
+    if (n == 0) {
       return 0;
     }
 
     final int i = match(x);
-    final long y = select(i);
+    final long y = key[getIndex(i)];
     final int comp = Long.compareUnsigned(x, y);
 
     if (comp == 0) {
@@ -166,7 +426,7 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
       long res = 0L;
       for (int i = 0; i < n - 1; i++) {
         for (int j = i + 1; j < n; j++) {
-          res = Util.setBit(Util.msb(select(i) ^ select(j)), res);
+          res = Util.setBit(Util.msb(key[getIndex(i)] ^ key[getIndex(j)]), res);
         }
       }
       compressingKey = res;
@@ -175,25 +435,6 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
     }
   }
 
-  /**
-   * Compresses {@code x}, keeping only the bits at the positions specified in the
-   * {@code compressingKey}.
-   * 
-   * @param x the key to be compressed
-   * @return {@code x} after the compression
-   */
-  private long compress(final long x) {
-    long res = 0L;
-    long compressingKeyCopy = compressingKey;
-    while (compressingKeyCopy != 0) {
-      res <<= 1;
-      final int bit = Util.msb(compressingKeyCopy);
-      res |= Util.bit(bit, x);
-      compressingKeyCopy = Util.deleteBit(bit, compressingKeyCopy);
-    }
-    return res;
-  }
-
   /**
    * Computes all the compressed keys in the set.
    * @return A word containing all the compressed keys in the set.
@@ -201,7 +442,8 @@ public class DynamicFusionNodeDontCaresRank implements RankSelectPredecessorUpda
   private long compressedKeys() {
     long compressedKeys = 0L;
     for (int i = 0; i < n; i++) {
-      compressedKeys = Util.setField(i, compress(select(i)), k, compressedKeys);
+      compressedKeys =
+          Util.setField(i, Util.compress(key[getIndex(i)], compressingKey), k, compressedKeys);
     }
     return compressedKeys;
   }
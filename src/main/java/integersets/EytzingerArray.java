@@ -0,0 +1,155 @@
+package integersets;
+
+/**
+ * Implementation of a static sorted array, as in Section 2.2.1 of the report, stored in the
+ * Eytzinger (breadth-first) layout of an implicit complete binary search tree. The children of
+ * position {@code i} are at positions {@code 2i} and {@code 2i + 1}, so the first levels of the
+ * tree share a few cache lines and a search reads memory in a predictable pattern. Updates are not
+ * supported.
+ *
+ * <p>The search is branchless: every step moves to {@code 2i} or {@code 2i + 1} depending on a
+ * single comparison, and the answer is recovered from the final position by removing the trailing
+ * right turns. An auxiliary array maps every position of the layout to its rank in sorted order,
+ * and select is answered from a plain sorted copy of the keys.
+ */
+public class EytzingerArray implements RankSelectPredecessorUpdate {
+
+  private final int n;
+
+  /**
+   * The keys in Eytzinger order, starting at position {@code 1}, with their sign bits flipped so
+   * that the unsigned order of the keys is the signed order of the array.
+   */
+  private final long[] tree;
+
+  /**
+   * The rank of the key at each position of {@code tree}. Position {@code 0} holds {@code n}, the
+   * answer when no key is larger than or equal to the query.
+   */
+  private final int[] order;
+
+  /**
+   * The keys in sorted order.
+   */
+  private final long[] sorted;
+
+  /**
+   * Constructs an {@code EytzingerArray} holding the provided keys.
+   * @param keys the keys of the set, distinct and in unsigned sorted order
+   */
+  public EytzingerArray(final long[] keys) {
+    for (int i = 1; i < keys.length; i++) {
+      if (Long.compareUnsigned(keys[i - 1], keys[i]) >= 0) {
+        throw new IllegalArgumentException("Keys must be distinct and sorted.");
+      }
+    }
+
+    n = keys.length;
+    sorted = keys.clone();
+    tree = new long[n + 1];
+    order = new int[n + 1];
+    order[0] = n;
+    fill(0, 1);
+  }
+
+  /**
+   * Stores the keys from rank {@code i} onwards in the subtree rooted at position {@code p}, in
+   * order.
+   * @return the rank of the first key not stored
+   */
+  private int fill(int i, final int p) {
+    if (p <= n) {
+      i = fill(i, 2 * p);
+      tree[p] = sorted[i] ^ Long.MIN_VALUE;
+      order[p] = i++;
+      i = fill(i, 2 * p + 1);
+    }
+    return i;
+  }
+
+  /**
+   * Returns the position in {@code tree} of the smallest key larger than or equal to {@code x}, or
+   * {@code 0} if there is none.
+   */
+  private int lowerBound(final long x) {
+    final long y = x ^ Long.MIN_VALUE;
+    int p = 1;
+    while (p <= n) {
+      p = 2 * p + (tree[p] < y ? 1 : 0);
+    }
+    // the answer is where the search last went left
+    return p >>> (Integer.numberOfTrailingZeros(~p) + 1);
+  }
+
+  @Override
+  public void insert(final long x) {
+    throw new UnsupportedOperationException("EytzingerArray is read-only.");
+  }
+
+  @Override
+  public void delete(final long x) {
+    throw new UnsupportedOperationException("EytzingerArray is read-only.");
+  }
+
+  @Override
+  public boolean member(final long x) {
+    final int p = lowerBound(x);
+    return p != 0 && tree[p] == (x ^ Long.MIN_VALUE);
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final int r = order[lowerBound(x)];
+    return r == 0 ? null : sorted[r - 1];
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final int p = lowerBound(x);
+    return p == 0 ? null : tree[p] ^ Long.MIN_VALUE;
+  }
+
+  @Override
+  public long rank(final long x) {
+    return order[lowerBound(x)];
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return sorted[(int) rank];
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return rank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return sorted[(int) rank];
+      }
+    };
+  }
+
+  @Override
+  public void reset() {
+    throw new UnsupportedOperationException("EytzingerArray is read-only.");
+  }
+}
@@ -0,0 +1,211 @@
+package integersets;
+
+import java.util.Spliterator;
+
+/**
+ * A {@code RankSelectPredecessorUpdate} set behind a {@code BlockedBloomFilter}, which answers
+ * most {@code member} queries for absent keys without touching the set. Every other operation is
+ * passed on to the set.
+ *
+ * <p>The filter is sized for a capacity of twice the keys of the set when it is built, with
+ * {@code bitsPerKey} bits per unit of capacity, so it spends between {@code bitsPerKey} and twice
+ * as many bits per key it holds. Its false-positive rate grows with its load, the keys it holds
+ * over its capacity, and reaches the rate of a filter with {@code bitsPerKey} bits per key at full
+ * load. The filter only grows, so it is rebuilt from the keys of the set when the keys added since
+ * the last rebuild exceed its capacity, or when the keys deleted since then exceed half of the
+ * set. Both take O(n) time after &Omega;(n) updates, so the rebuilds cost O(1)
+ * amortized time per update. The rejected queries and the false positives, the queries let
+ * through for absent keys, are counted to measure the false-positive rate of the filter.
+ */
+public class FilteredSet implements RankSelectPredecessorUpdate {
+
+  private static final int MIN_CAPACITY = 64;
+
+  private final RankSelectPredecessorUpdate set;
+  private final int bitsPerKey;
+  private BlockedBloomFilter filter;
+  private long capacity;
+  private long added; // the keys added to the filter since it was built
+  private long stale; // the keys deleted from the set since the filter was built
+
+  private long rejected;
+  private long falsePositives;
+
+  /**
+   * Constructs a {@code FilteredSet} in front of {@code set}, with 10 bits per unit of capacity.
+   * @param set the set, which may already hold keys
+   */
+  public FilteredSet(final RankSelectPredecessorUpdate set) {
+    this(set, 10);
+  }
+
+  /**
+   * Constructs a {@code FilteredSet} in front of {@code set}.
+   * @param set the set, which may already hold keys
+   * @param bitsPerKey the bits of filter per unit of capacity, which trade space for fewer false
+   *     positives
+   */
+  public FilteredSet(final RankSelectPredecessorUpdate set, final int bitsPerKey) {
+    if (bitsPerKey < 1) {
+      throw new IllegalArgumentException("The filter needs at least one bit per key.");
+    }
+    this.set = set;
+    this.bitsPerKey = bitsPerKey;
+    rebuild();
+  }
+
+  /**
+   * Returns the number of {@code member} queries rejected by the filter.
+   * @return the number of rejected queries
+   */
+  public long rejected() {
+    return rejected;
+  }
+
+  /**
+   * Returns the number of {@code member} queries for absent keys that the filter let through.
+   * @return the number of false positives
+   */
+  public long falsePositives() {
+    return falsePositives;
+  }
+
+  /**
+   * Returns the load of the filter, the keys added to it since it was built, including those
+   * deleted from the set since, over its capacity. It is {@code 0.5} after a rebuild, unless the
+   * set is small, and never more than {@code 1}.
+   * @return the load of the filter
+   */
+  public double load() {
+    return (double) added / capacity;
+  }
+
+  /**
+   * Returns the measured false-positive rate of the filter, the fraction of the {@code member}
+   * queries for absent keys that it let through.
+   * @return the false-positive rate, or {@code 0} if no absent key was queried
+   */
+  public double falsePositiveRate() {
+    final long misses = rejected + falsePositives;
+    return misses == 0 ? 0 : (double) falsePositives / misses;
+  }
+
+  /**
+   * Rebuilds the filter from the keys of the set, with a capacity of twice as many keys.
+   */
+  public void rebuild() {
+    capacity = Math.max(MIN_CAPACITY, 2 * set.size());
+    filter = new BlockedBloomFilter(capacity, bitsPerKey);
+    set.stream().forEach(filter::add);
+    added = set.size();
+    stale = 0;
+  }
+
+  @Override
+  public boolean member(final long x) {
+    if (!filter.mightContain(x)) {
+      rejected++;
+      return false;
+    }
+    final boolean res = set.member(x);
+    if (!res) {
+      falsePositives++;
+    }
+    return res;
+  }
+
+  @Override
+  public void insert(final long x) {
+    final long size = set.size();
+    set.insert(x);
+    if (set.size() != size) {
+      filter.add(x);
+      if (++added > capacity) {
+        rebuild();
+      }
+    }
+  }
+
+  @Override
+  public void delete(final long x) {
+    final long size = set.size();
+    set.delete(x);
+    if (set.size() != size) {
+      deleted();
+    }
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    final Long res = set.deleteByRank(rank);
+    if (res != null) {
+      deleted();
+    }
+    return res;
+  }
+
+  private void deleted() {
+    if (++stale > Math.max(MIN_CAPACITY, set.size() / 2)) {
+      rebuild();
+    }
+  }
+
+  @Override
+  public void reset() {
+    set.reset();
+    filter.clear();
+    added = 0;
+    stale = 0;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    return set.predecessor(x);
+  }
+
+  @Override
+  public Long successor(final long x) {
+    return set.successor(x);
+  }
+
+  @Override
+  public long rank(final long x) {
+    return set.rank(x);
+  }
+
+  @Override
+  public Long select(final long rank) {
+    return set.select(rank);
+  }
+
+  @Override
+  public long size() {
+    return set.size();
+  }
+
+  @Override
+  public void rankBatch(final long[] queries, final long[] out) {
+    set.rankBatch(queries, out);
+  }
+
+  @Override
+  public void rankAndPredecessorBatch(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    set.rankAndPredecessorBatch(queries, group, ranks, predecessors);
+  }
+
+  @Override
+  public void selectBatch(final long[] ranks, final long[] out) {
+    set.selectBatch(ranks, out);
+  }
+
+  @Override
+  public LongCursor cursor() {
+    return set.cursor();
+  }
+
+  @Override
+  public Spliterator.OfLong longSpliterator() {
+    return set.longSpliterator();
+  }
+}
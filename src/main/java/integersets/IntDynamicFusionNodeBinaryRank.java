@@ -0,0 +1,327 @@
+package integersets;
+
+/**
+ * Implementation of the {@code DynamicFusionNodeBinaryRank} data structure, as described in Section
+ * 3.3 of the report, specialised for unsigned 32-bit keys. Two keys are packed in every word of
+ * {@code key}, so the keys of a node take 64 bytes instead of 128.
+ *
+ * <p>Besides the {@code long} methods of {@code RankSelectPredecessorUpdate}, which only accept
+ * keys smaller than 2^32, the node has {@code insertInt}, {@code deleteInt}, {@code memberInt},
+ * {@code rankInt} and {@code selectInt}, which read their {@code int} arguments as unsigned. They
+ * are not overloads of the {@code long} methods, which a negative {@code int} would reach
+ * sign-extended to a key out of range.
+ */
+public class IntDynamicFusionNodeBinaryRank implements RankSelectPredecessorUpdate {
+
+  private static final int k = 16;
+  private static final int ceilLgK = (int) Math.ceil(Math.log10(k) / Math.log10(2));
+  private final long[] key = new long[k / 2];
+  private long index;
+  private int bKey;
+  private int n;
+
+  /**
+   * Constructs an empty {@code IntDynamicFusionNodeBinaryRank} with capacity for 16 elements.
+   */
+  public IntDynamicFusionNodeBinaryRank() {
+    reset();
+  }
+
+  /**
+   * Inserts the unsigned key {@code x} in the set if it is not a member (and there is room for it).
+   * @param x the query
+   */
+  public void insertInt(final int x) {
+    if (memberInt(x)) {
+      return;
+    }
+
+    if (size() == k) {
+      throw new RuntimeException("Cannot insert. Node is full.");
+    }
+
+    final int i = rankInt(x);
+    final int j = firstEmptySlot();
+    setKey(j, x);
+    fillSlot(j);
+    updateIndex(i, j);
+    n++;
+  }
+
+  /**
+   * Removes the unsigned key {@code x} from the set if it is a member.
+   * @param x the query
+   */
+  public void deleteInt(final int x) {
+    if (!memberInt(x)) {
+      return;
+    }
+
+    deleteByRank(rankInt(x));
+  }
+
+  /**
+   * Returns {@code true} iff the unsigned key {@code x} is in the set.
+   * @param x the query
+   * @return {@code true} if the key is in the set, and {@code false} otherwise
+   */
+  public boolean memberInt(final int x) {
+    final int i = rankInt(x);
+    return i < n && selectInt(i) == x;
+  }
+
+  /**
+   * Returns the number of keys in the set that are strictly smaller than the unsigned key
+   * {@code x}.
+   * @param x the query
+   * @return the rank of the key
+   */
+  public int rankInt(final int x) {
+    return binaryRank(x);
+  }
+
+  /**
+   * Returns the key with rank {@code rank}, as an unsigned {@code int}.
+   * @param rank the query
+   * @return the key whose rank is {@code rank}
+   * @throws IndexOutOfBoundsException if {@code rank} is negative or not smaller than the size
+   */
+  public int selectInt(final int rank) {
+    if (rank < 0 || rank >= n) {
+      throw new IndexOutOfBoundsException("Rank out of bounds.");
+    }
+
+    return getKey(getIndex(rank));
+  }
+
+  /**
+   * {@inheritDoc}
+   * @throws IllegalArgumentException if {@code x} does not fit in 32 bits
+   */
+  @Override
+  public void insert(final long x) {
+    if (x >>> 32 != 0) {
+      throw new IllegalArgumentException("Keys must fit in 32 bits.");
+    }
+    insertInt((int) x);
+  }
+
+  @Override
+  public void delete(final long x) {
+    if (x >>> 32 == 0) {
+      deleteInt((int) x);
+    }
+  }
+
+  @Override
+  public boolean member(final long x) {
+    return x >>> 32 == 0 && memberInt((int) x);
+  }
+
+  @Override
+  public long rank(final long x) {
+    return x >>> 32 == 0 ? rankInt((int) x) : n;
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return Integer.toUnsignedLong(selectInt((int) rank));
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    final int i = (int) rank;
+    final int res = getKey(getIndex(i));
+    vacantSlot(getIndex(i));
+    updateIndex(i);
+    n--;
+    return Integer.toUnsignedLong(res);
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  @Override
+  public void reset() {
+    n = 0;
+    bKey = -1;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor walks {@code index} in rank order, so every move takes O(1) time.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return rank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return Integer.toUnsignedLong(getKey(getIndex((int) rank)));
+      }
+    };
+  }
+
+  /**
+   * Returns the key stored in slot {@code slot} of KEY.
+   * @param slot the slot
+   * @return the key in the slot
+   */
+  private int getKey(final int slot) {
+    return (int) Util.getField(slot & 1, Integer.SIZE, key[slot >>> 1]);
+  }
+
+  /**
+   * Stores {@code x} in slot {@code slot} of KEY.
+   * @param slot the slot
+   * @param x the key
+   */
+  private void setKey(final int slot, final int x) {
+    key[slot >>> 1] = Util.setField(slot & 1, Integer.toUnsignedLong(x), Integer.SIZE,
+        key[slot >>> 1]);
+  }
+
+  /** Returns the index of the first empty slot in KEY.
+   *
+   * @return the index in KEY of the first empty slot.
+   */
+  private int firstEmptySlot() {
+    final int res = Util.lsb(bKey);
+    if (res < k) {
+      return res;
+    }
+    return -1;
+  }
+
+  /**
+   * Sets position {@code j} in KEY to not empty.
+   *
+   * @param j the position to be made unavailable
+   */
+  private void fillSlot(final int j) {
+    if (j >= 0 && j < k) {
+      bKey = Util.deleteBit(j, bKey);
+    } else {
+      throw new IndexOutOfBoundsException("j must be between 0 and k (" + k + ")!");
+    }
+  }
+
+  /**
+   * Sets position {@code j} in {@code key} to empty by marking it as empty in {@code bKey}.
+   *
+   * @param j the position to be made available
+   */
+  private void vacantSlot(int j) {
+    if (j >= 0 && j < k) {
+      bKey = Util.setBit(j, bKey);
+    } else {
+      throw new IndexOutOfBoundsException("j must be between 0 and k (" + k + ")!");
+    }
+  }
+
+  /**
+   * Helper method to retrieve the position in KEY of a key, given its rank {@code rank}.
+   *
+   * @param rank The rank of the key in the S
+   * @return the index in KEY of the key with rank {@code i}
+   */
+  private int getIndex(final int rank) {
+    return (int) Util.getField(rank, ceilLgK, index);
+  }
+
+  /**
+   * Helper method to maintain the correspondence between the rank of the keys and
+   * their real position in KEY. The methods receives the rank {@code rank} of a
+   * key and removes such position in Index, keeping all other indices ordered.
+   *
+   * @param rank the rank of the key that has been put in KEY
+   */
+  private void updateIndex(final int rank) {
+    if (rank >= 0 && rank < k) {
+      // with k * ceilLgK = 64 there are no fields above the last one (shifts are mod 64)
+      final long hi = rank + 1 == k ? 0L
+          : Util.getFields(rank + 1, ceilLgK, index) << (rank * ceilLgK);
+      if (rank > 0) {
+        final long lo = Util.getFields(0, rank, ceilLgK, index);
+        index = hi | lo;
+      } else {
+        index = hi;
+      }
+    } else {
+      throw new IndexOutOfBoundsException("Invalid rank");
+    }
+  }
+
+  /**
+   * Helper method to maintain the correspondence between the rank of the keys and
+   * their real position in KEY. The methods receives the rank {@code rank} of a
+   * key and the position where such key is stored in KEY {@code slot} and saves that
+   * information in Index.
+   *
+   * @param rank the rank of the key that has been put in KEY
+   * @param slot the real position of the key in KEY
+   */
+  private void updateIndex(final int rank, final int slot) {
+    if (rank >= 0 && rank < k && slot >= 0 && slot < k) {
+      final long hi = rank + 1 == k ? 0L
+          : Util.getFields(rank, ceilLgK, index) << ((rank + 1) * ceilLgK);
+      final long mid = Integer.toUnsignedLong(slot) << (rank * ceilLgK);
+      if (rank > 0) {
+        final long lo = Util.getFields(0, rank, ceilLgK, index);
+        index = hi | mid | lo;
+      } else {
+        index = mid | hi;
+      }
+    } else {
+      throw new IndexOutOfBoundsException("Invalid rank or slot");
+    }
+  }
+
+  /**
+   * Helper method than provides the rank of a key {@code x} resorting to binary
+   * search. For this reason, it takes O(lg N) time.
+   *
+   * @param x the key to be used to compute the rank
+   * @return the rank of {@code x} in S
+   */
+  private int binaryRank(final int x) {
+    int lo = 0; // indices of the KEY array.
+    int hi = n - 1;
+
+    while (lo <= hi) {
+      final int mid = lo + ((hi - lo) / 2);
+
+      final int compare = Integer.compareUnsigned(x, getKey(getIndex(mid)));
+
+      if (compare < 0) {
+        hi = mid - 1;
+
+      } else if (compare == 0) {
+        return mid;
+
+      } else {
+        lo = mid + 1;
+      }
+    }
+    return lo;
+  }
+}
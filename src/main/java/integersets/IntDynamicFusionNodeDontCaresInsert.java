@@ -0,0 +1,565 @@
+package integersets;
+
+/**
+ * Implementation of the {@code DynamicFusionNodeDontCaresInsert} data structure, as described in
+ * Section 3.6 of the report, specialised for unsigned 32-bit keys. Two keys are packed in every
+ * word of {@code key}, and the significant positions of the keys are found with the {@code int}
+ * bit routines of {@code Util}.
+ *
+ * <p>Besides the {@code long} methods of {@code RankSelectPredecessorUpdate}, which only accept
+ * keys smaller than 2^32, the node has {@code insertInt}, {@code deleteInt}, {@code memberInt},
+ * {@code rankInt} and {@code selectInt}, which read their {@code int} arguments as unsigned. They
+ * are not overloads of the {@code long} methods, which a negative {@code int} would reach
+ * sign-extended to a key out of range.
+ */
+public class IntDynamicFusionNodeDontCaresInsert implements RankSelectPredecessorUpdate {
+
+  private static final int k = 8;
+  private static final int ceilLgK = (int) Math.ceil(Math.log10(k) / Math.log10(2));
+  private static final long M = Util.M(k, k * k); // multiplying constant
+  private final long[] key = new long[k / 2];
+  private long index;
+  private int bKey;
+  private int n;
+
+  /**
+   * Variables for maintaining the rank with don't cares algorithm.
+   */
+  private int compressingKey;
+  private long branch;
+  private long free;
+
+  /**
+   * Constructs an empty {@code IntDynamicFusionNodeDontCaresInsert} with capacity for 8 elements.
+   */
+  public IntDynamicFusionNodeDontCaresInsert() {
+    reset();
+  }
+
+  /**
+   * Inserts the unsigned key {@code x} in the set if it is not a member (and there is room for it).
+   * @param x the query
+   */
+  public void insertInt(final int x) {
+    int rank = 0;
+    if (!isEmpty()) {
+      // Run rank(x). If x is already a member, do nothing. Otherwise, continue.
+      int i = match(x);
+      final int y = selectInt(i);
+      final int comp = Integer.compareUnsigned(x, y);
+      if (comp == 0) { // already in the set
+        return;
+      }
+      if (size() == k) {
+        throw new RuntimeException("Cannot insert. Node is full.");
+      }
+      final int j = Util.msb(x ^ y);
+      // rank of j among the significant positions
+      final int h = Integer.bitCount(compressingKey & ((1 << j) - 1));
+      final int i_0 = match(x & ~((1 << j) - 1));
+      final int i_1 = match(x | ((1 << j) - 1));
+      rank = (comp < 0 ? i_0 : i_1 + 1); // rank of x
+      final long matrixM_h = matrixM(h); // matrix where only column h is set
+
+      if (Util.bit(j, compressingKey) != 1) {
+        // If j is not yet a significant position, mark it as a significant position.
+        compressingKey = Util.setBit(j, compressingKey);
+        // Since the compressing key has been updated, we need to add a new column of 0s in branch
+        // and a column of 1s in free.
+        insertAndInitializeColumn(h);
+      }
+
+      // column h for the rows i_0... i_1 now is a "we care", so we update them
+      final long matrixMi0_Mi1_h = matrixMRowRange(i_0, i_1) & matrixM_h;
+      free &= ~matrixMi0_Mi1_h;
+      branch |= (matrixMi0_Mi1_h * Util.bit(j, y));
+
+      // Making room for hat(x^?) with rank r in branch and free = adding a row
+      insertRow(rank);
+
+      if (comp < 0) { // then x < y. So y is the succ of x. we increment i
+        i++;
+      }
+
+      // Fixing row rank (the new key):
+      branch = Util.setField(rank, ~((1L << h) - 1), k, branch);
+      free = Util.setField(rank, (1L << h) - 1, k, free);
+
+      // set the bit h by reading bit j in x:
+      branch = Util.setField2d(rank, h, (long) Util.bit(j, x), 1, k, branch);
+      free = Util.setField2d(rank, h, 0L, 1, k, free);
+
+      // copy the high (k - h - 1) bits of row i to row rank, in branch and free
+      long rowR = Util.getField(rank, k, branch) & ((1L << (h + 1)) - 1);
+      long rowI = Util.getField(i, k, branch) & ~((1L << (h + 1)) - 1);
+      branch = Util.setField(rank, rowI | rowR, k, branch);
+
+      rowR = Util.getField(rank, k, free) & ((1L << (h + 1)) - 1);
+      rowI = Util.getField(i, k, free) & ~((1L << (h + 1)) - 1);
+      free = Util.setField(rank, rowI | rowR, k, free);
+    }
+
+    final int indexInKey = firstEmptySlot();
+    setKey(indexInKey, x);
+    fillSlot(indexInKey);
+    updateIndex(rank, indexInKey);
+    n++;
+  }
+
+  /**
+   * Removes the unsigned key {@code x} from the set if it is a member.
+   * @param x the query
+   */
+  public void deleteInt(final int x) {
+    if (!memberInt(x)) {
+      return;
+    }
+
+    deleteByRank(rankInt(x));
+  }
+
+  /**
+   * Returns {@code true} iff the unsigned key {@code x} is in the set.
+   * @param x the query
+   * @return {@code true} if the key is in the set, and {@code false} otherwise
+   */
+  public boolean memberInt(final int x) {
+    return !isEmpty() && selectInt(match(x)) == x;
+  }
+
+  /**
+   * Returns the number of keys in the set that are strictly smaller than the unsigned key
+   * {@code x}.
+   * @param x the query
+   * @return the rank of the key
+   */
+  public int rankInt(final int x) {
+    return dontCaresRank(x);
+  }
+
+  /**
+   * Returns the key with rank {@code rank}, as an unsigned {@code int}.
+   * @param rank the query
+   * @return the key whose rank is {@code rank}
+   * @throws IndexOutOfBoundsException if {@code rank} is negative or not smaller than the size
+   */
+  public int selectInt(final int rank) {
+    if (rank < 0 || rank >= n) {
+      throw new IndexOutOfBoundsException("Rank out of bounds.");
+    }
+
+    return getKey(getIndex(rank));
+  }
+
+  /**
+   * {@inheritDoc}
+   * @throws IllegalArgumentException if {@code x} does not fit in 32 bits
+   */
+  @Override
+  public void insert(final long x) {
+    if (x >>> 32 != 0) {
+      throw new IllegalArgumentException("Keys must fit in 32 bits.");
+    }
+    insertInt((int) x);
+  }
+
+  @Override
+  public void delete(final long x) {
+    if (x >>> 32 == 0) {
+      deleteInt((int) x);
+    }
+  }
+
+  @Override
+  public boolean member(final long x) {
+    return x >>> 32 == 0 && memberInt((int) x);
+  }
+
+  @Override
+  public long rank(final long x) {
+    return x >>> 32 == 0 ? rankInt((int) x) : n;
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return Integer.toUnsignedLong(selectInt((int) rank));
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    final int i = (int) rank;
+    final long res = Integer.toUnsignedLong(getKey(getIndex(i)));
+    if (size() == 1) {
+      reset();
+      return res;
+    }
+
+    vacantSlot(getIndex(i));
+    updateIndex(i);
+    n--;
+
+    updateCompressingKey();
+    final long compressedKeys = compressedKeys();
+    updateFree(compressedKeys);
+    updateBranch(compressedKeys);
+    return res;
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  @Override
+  public void reset() {
+    index = 0L;
+    n = 0;
+    bKey = -1;
+
+    compressingKey = 0;
+
+    branch = 0L;
+    free = -1L;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor walks {@code index} in rank order, so every move takes O(1) time.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return rank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return Integer.toUnsignedLong(getKey(getIndex((int) rank)));
+      }
+    };
+  }
+
+  /**
+   * Returns the key stored in slot {@code slot} of KEY.
+   * @param slot the slot
+   * @return the key in the slot
+   */
+  private int getKey(final int slot) {
+    return (int) Util.getField(slot & 1, Integer.SIZE, key[slot >>> 1]);
+  }
+
+  /**
+   * Stores {@code x} in slot {@code slot} of KEY.
+   * @param slot the slot
+   * @param x the key
+   */
+  private void setKey(final int slot, final int x) {
+    key[slot >>> 1] = Util.setField(slot & 1, Integer.toUnsignedLong(x), Integer.SIZE,
+        key[slot >>> 1]);
+  }
+
+  /* HELPER METHODS KEPT FROM THE {@code DynamicFusionNodeDontCaresInsert} IMPLEMENTATION */
+
+  /**
+   * Returns a word which when interpreted as a {@code k * k} matrix has only column {@code h} set.
+   * @param h the index of the column with the bits set
+   * @return the resulting word
+   */
+  private long matrixM(final int h) {
+    return M << h;
+  }
+
+  /**
+   * Returns a word which when interpreted as a {@code k * k} matrix will have the bits in the
+   * range of columns between {@code lo} (inclusive) and {@code hi} (inclusive) set.
+   * @param lo the low boundary (inclusive)
+   * @param hi the high boundary (inclusive)
+   * @return the resulting word
+   */
+  private long matrixMColumnRange(final int lo, final int hi) {
+    if (lo == 0 && hi == k - 1) {
+      return -1;
+    } else {
+      return matrixM(hi + 1) - matrixM(lo);
+    }
+  }
+
+  /**
+   * Updates {@code branch} and {@code free} to include a new column {@code h},
+   * setting the default values in both words.
+   *
+   * @param h the index of the column to be added
+   */
+  private void insertAndInitializeColumn(final int h) {
+    final long Mlo = matrixMColumnRange(0, h - 1);
+    final long Mhi = matrixMColumnRange(h, k - 1);
+    final long matrixM_h = matrixM(h);
+
+    // shift all columns >= h one to the left
+    branch = (branch & Mlo) | (((branch & Mhi) << 1) & ~Mlo);
+    free = (free & Mlo) | (((free & Mhi) << 1) & ~Mlo);
+
+    // the new column is 0 in branch and 1 (we don't care) in free
+    branch &= ~matrixM_h;
+    free |= matrixM_h;
+  }
+
+  /**
+   * Returns a word which when interpreted as a {@code k * k} matrix will have the bits in the
+   * range of rows between {@code lo} (inclusive) and {@code hi} (inclusive) set.
+   * @param lo the low boundary (inclusive)
+   * @param hi the high boundary (inclusive)
+   * @return the resulting word
+   */
+  private long matrixMRowRange(final int lo, final int hi) {
+    if (hi < lo) {
+      return 0;
+    }
+    return ((-1L) << (lo * k)) & (-1L >>> ((k - hi - 1) * k));
+  }
+
+  /**
+   * Updates {@code branch} and {@code free} to include a new row with rank
+   * {@code rank}, setting the default values in both words.
+   *
+   * @param rank the index of the column to be added
+   */
+  private void insertRow(final int rank) {
+    final long Mlo = matrixMRowRange(0, rank - 1);
+    final long Mhi = matrixMRowRange(rank, k - 1);
+
+    branch = (branch & Mlo) | ((branch & Mhi) << k);
+    free = (free & Mlo) | ((free & Mhi) << k);
+  }
+
+  /**
+   * Match subroutine.
+   * @param x the key to be match
+   * @return the rank of the key it {@code x} has matched
+   */
+  private int match(final int x) {
+    final long xCompressed = Util.compress(x & 0xFFFFFFFFL, compressingKey & 0xFFFFFFFFL);
+    return Util.rankLemma1(xCompressed,
+       branch | ((xCompressed * Util.getFields(0, n, k, M)) & free), n, k);
+  }
+
+  /**
+   * Rank via matching with "don't cares".
+   * @param x the query key
+   * @return the rank of {@code x} in the set
+   */
+  private int dontCaresRank(final int x) {
+    if (isEmpty()) {
+      return 0;
+    }
+
+    final int i = match(x);
+    final int y = selectInt(i);
+    final int comp = Integer.compareUnsigned(x, y);
+
+    if (comp == 0) {
+      return i;
+    }
+
+    final int j = Util.msb(x ^ y);
+
+    if (comp < 0) { // i_0
+      return match(x & ~((1 << j) - 1));
+    }
+
+    return 1 + match(x | ((1 << j) - 1)); // i_1 + 1
+  }
+
+  /**
+   * Updates the compressing key after updating the set.
+   */
+  private void updateCompressingKey() {
+    int res = 0;
+    for (int i = 0; i < n - 1; i++) {
+      for (int j = i + 1; j < n; j++) {
+        res = Util.setBit(Util.msb(selectInt(i) ^ selectInt(j)), res);
+      }
+    }
+    compressingKey = res;
+  }
+
+  /**
+   * Computes all the compressed keys in the set.
+   * @return A word containing all the compressed keys in the set.
+   */
+  private long compressedKeys() {
+    final long significant = compressingKey & 0xFFFFFFFFL;
+    long compressedKeys = 0L;
+    for (int i = 0; i < n; i++) {
+      final long compressed = Util.compress(selectInt(i) & 0xFFFFFFFFL, significant);
+      compressedKeys = Util.setField(i, compressed, k, compressedKeys);
+    }
+    return compressedKeys;
+  }
+
+  /**
+   * Updates branch, using a word, {@code compressedKeys} as parameter.
+   * @param compressedKeys A word containing all the compressed keys in the set.
+   */
+  private void updateBranch(final long compressedKeys) {
+    branch = compressedKeys & ~free;
+  }
+
+  /**
+   * Updates the field {@code free} according to the {@code compressedKeys} word
+   * provided.
+   *
+   * @param compressedKeys A word containing all the compressed keys in the set.
+   */
+  private void updateFree(final long compressedKeys) {
+    free = dontCares(compressedKeys, 0, k - 1, 0, n);
+    if (n < k) { // making the unused rows all 1
+      free = free | ~((1L << (k * n)) - 1);
+    }
+  }
+
+  /**
+   * Recursive method to naively compute the "don't cares" position of the
+   * compressed keys in the set. The result is stored in {@code free}.
+   *
+   * @param free The word where the results are to be stored
+   * @param bit  The column in {@code compressedKeys} to look at
+   * @param lo   The lower bound (row in {@code compressedKeys}) considered in the
+   *             range
+   * @param hi   The upper bound (row in {@code compressedKeys}) considered in the
+   *             range
+   * @return {@code free} after the given iteration
+   */
+  private long dontCares(final long compressedKeys, long free, final int bit, final int lo,
+        final int hi) {
+    if (bit == -1) {
+      return free;
+    }
+
+    int mid = lo; // we start by assuming that everything is 1 at position lo
+    while (mid < hi && Util.bit(bit, Util.getField(mid, k, compressedKeys)) == 0) {
+      mid++;
+    }
+
+    // If all bits are the same in all keys, then that position is a don't care for
+    // all keys
+    if (mid == lo || mid == hi) {
+      for (int i = lo; i < hi; i++) {
+        free = Util.setField(i, Util.setBit(bit, Util.getField(i, k, free)), k, free);
+      }
+      return dontCares(compressedKeys, free, bit - 1, lo, hi);
+    } else {
+      return dontCares(compressedKeys, free, bit - 1, lo, mid)
+        | dontCares(compressedKeys, free, bit - 1, mid, hi);
+    }
+  }
+
+  /** Returns the index of the first empty slot in KEY.
+   *
+   * @return the index in KEY of the first empty slot.
+   */
+  private int firstEmptySlot() {
+    final int res = Util.lsb(bKey);
+    if (res < k) {
+      return res;
+    }
+    return -1;
+  }
+
+  /**
+   * Sets position {@code j} in KEY to not empty.
+   *
+   * @param j the position to be made unavailable
+   */
+  private void fillSlot(final int j) {
+    if (j >= 0 && j < k) {
+      bKey = Util.deleteBit(j, bKey);
+    } else {
+      throw new IndexOutOfBoundsException("j must be between 0 and k (" + k + ")!");
+    }
+  }
+
+  /**
+   * Sets position {@code j}th taken position in KEY to empty.
+   *
+   * @param j the position to be made available
+   */
+  private void vacantSlot(final int j) {
+    if (j >= 0 && j < k) {
+      bKey = Util.setBit(j, bKey);
+    } else {
+      throw new IndexOutOfBoundsException("j must be between 0 and k (" + k + ")!");
+    }
+  }
+
+  /**
+   * Helper method to retrieve the position in KEY of a key, given its rank
+   * {@code rank}.
+   *
+   * @param rank The rank of the key in the S
+   * @return the index in KEY of the key with rank {@code i}
+   */
+  private int getIndex(final int rank) {
+    return (int) Util.getField(rank, ceilLgK, index);
+  }
+
+  /**
+   * Helper method to maintain the correspondence between the rank of the keys and
+   * their real position in KEY. The methods receives the rank {@code rank} of a
+   * key and removes such position in Index, keeping all other indices ordered.
+   *
+   * @param rank the rank of the key that has been put in KEY
+   */
+  private void updateIndex(final int rank) {
+    if (rank >= 0 && rank < k) {
+      final long hi = Util.getFields(rank + 1, ceilLgK, index) << (rank * ceilLgK);
+      if (rank > 0) {
+        final long lo = Util.getFields(0, rank, ceilLgK, index);
+        index = hi | lo;
+      } else {
+        index = hi;
+      }
+    } else {
+      throw new IndexOutOfBoundsException("Invalid rank");
+    }
+  }
+
+  /**
+   * Helper method to maintain the correspondence between the rank of the keys and
+   * their real position in KEY. The methods receives the rank {@code rank} of a
+   * key and the position where such key is stored in KEY {@code slot} and saves
+   * that information in Index.
+   *
+   * @param rank the rank of the key that has been put in KEY
+   * @param slot the real position of the key in KEY
+   */
+  private void updateIndex(final int rank, final int slot) {
+    if (rank >= 0 && rank < k && slot >= 0 && slot < k) {
+      final long hi = Util.getFields(rank, ceilLgK, index) << ((rank + 1) * ceilLgK);
+      final long mid = Integer.toUnsignedLong(slot) << (rank * ceilLgK);
+      if (rank > 0) {
+        final long lo = Util.getFields(0, rank, ceilLgK, index);
+        index = hi | mid | lo;
+      } else {
+        index = mid | hi;
+      }
+    } else {
+      throw new IndexOutOfBoundsException("Invalid rank or slot: " + rank + ", " + slot);
+    }
+  }
+}
@@ -0,0 +1,461 @@
+package integersets;
+
+import integersets.RoaringRankSelect.ArrayContainer;
+import integersets.RoaringRankSelect.Container;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of a two-level set of unsigned 32-bit keys. The top level is indexed directly by
+ * the 16 high bits of the keys, and the 16 low bits of the keys of each bucket are stored in a
+ * {@code RoaringRankSelect} container: a sorted array of {@code char}s while the bucket is sparse,
+ * and a bitmap once it is dense or a list of runs of consecutive values when that is smaller. Every
+ * query visits one bucket, so the depth is two and a key takes at most two bytes in its container.
+ *
+ * <p>The sizes of the buckets are kept in a Fenwick tree of {@code int}s, so rank and select find
+ * their bucket in O(lg 2^16) time, and the non-empty buckets are marked in a two-level bitmap, so
+ * predecessor and successor find the neighbouring bucket by inspecting a few words. The top level,
+ * about half a megabyte, is only allocated by the first insert, so an empty set takes no space.
+ *
+ * <p>Besides the {@code long} methods of {@code RankSelectPredecessorUpdate}, which only accept
+ * keys smaller than 2^32, the set has {@code insertInt}, {@code deleteInt}, {@code memberInt},
+ * {@code rankInt}, {@code selectInt}, {@code predecessorInt} and {@code successorInt}, which read
+ * their {@code int} arguments as unsigned.
+ */
+public class IntRankSelect implements RankSelectPredecessorUpdate {
+
+  private static final int buckets = 1 << 16;
+  private static final long universe = 1L << 32;
+
+  private Container[] bucket; // null until the first insert
+
+  /**
+   * Fenwick tree of the sizes of the buckets: position {@code i}, from {@code 1} to
+   * {@code buckets - 1}, holds the total size of the buckets {@code i - (i & -i)} to {@code i - 1}.
+   * That is at most 2^31, so it is read as an unsigned {@code int}. The total of all the buckets,
+   * which may be 2^32, is {@code n}.
+   */
+  private int[] tree;
+
+  /**
+   * The non-empty buckets, and the non-zero words of {@code used}.
+   */
+  private long[] used;
+  private long[] summary;
+  private long n;
+
+  /**
+   * Constructs an empty {@code IntRankSelect}.
+   */
+  public IntRankSelect() {
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    bucket = null;
+    tree = null;
+    used = null;
+    summary = null;
+    n = 0;
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  /* INT OPERATIONS */
+
+  /**
+   * Inserts the unsigned key {@code x} in the set if it is not a member.
+   * @param x the query
+   */
+  public void insertInt(final int x) {
+    if (bucket == null) {
+      bucket = new Container[buckets];
+      tree = new int[buckets];
+      used = new long[buckets / Long.SIZE];
+      summary = new long[buckets / Long.SIZE / Long.SIZE];
+    }
+    final int h = x >>> 16;
+    if (bucket[h] == null) {
+      bucket[h] = new ArrayContainer();
+      markUsed(h);
+    }
+    final int before = bucket[h].card;
+    bucket[h] = bucket[h].add(x & 0xFFFF);
+    if (bucket[h].card != before) {
+      addCount(h, 1);
+      n++;
+    }
+  }
+
+  /**
+   * Removes the unsigned key {@code x} from the set if it is a member.
+   * @param x the query
+   */
+  public void deleteInt(final int x) {
+    final int h = x >>> 16;
+    if (bucket == null || bucket[h] == null) {
+      return;
+    }
+    final int before = bucket[h].card;
+    bucket[h] = bucket[h].remove(x & 0xFFFF);
+    if (bucket[h].card != before) {
+      addCount(h, -1);
+      n--;
+      if (bucket[h].card == 0) {
+        bucket[h] = null;
+        clearUsed(h);
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} iff the unsigned key {@code x} is in the set.
+   * @param x the query
+   * @return {@code true} if the key is in the set, and {@code false} otherwise
+   */
+  public boolean memberInt(final int x) {
+    if (bucket == null) {
+      return false;
+    }
+    final Container c = bucket[x >>> 16];
+    return c != null && c.contains(x & 0xFFFF);
+  }
+
+  /**
+   * Returns the number of keys in the set that are strictly smaller than the unsigned key
+   * {@code x}.
+   * @param x the query
+   * @return the rank of the key
+   */
+  public long rankInt(final int x) {
+    if (bucket == null) {
+      return 0;
+    }
+    final int h = x >>> 16;
+    final Container c = bucket[h];
+    return countBelow(h) + (c == null ? 0 : c.rank(x & 0xFFFF));
+  }
+
+  /**
+   * Returns the key with rank {@code rank}, as an unsigned {@code int}.
+   * @param rank the query
+   * @return the key whose rank is {@code rank}
+   * @throws IndexOutOfBoundsException if {@code rank} is negative or not smaller than the size
+   */
+  public int selectInt(long rank) {
+    if (rank < 0 || rank >= n) {
+      throw new IndexOutOfBoundsException("Rank out of bounds.");
+    }
+
+    // Fenwick tree descent to the last bucket with at most rank keys before it
+    int h = 0;
+    for (int step = buckets / 2; step > 0; step >>>= 1) {
+      if (h + step < buckets && (tree[h + step] & 0xFFFFFFFFL) <= rank) {
+        h += step;
+        rank -= tree[h] & 0xFFFFFFFFL;
+      }
+    }
+    return h << 16 | bucket[h].select((int) rank);
+  }
+
+  /**
+   * Returns the largest key strictly smaller than the unsigned key {@code x}.
+   * @param x the query
+   * @return the key as an unsigned value, or {@code -1} if there is none
+   */
+  public long predecessorInt(final int x) {
+    return lower(x & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Returns the smallest key larger than or equal to the unsigned key {@code x}.
+   * @param x the query
+   * @return the key as an unsigned value, or {@code -1} if there is none
+   */
+  public long successorInt(final int x) {
+    return ceiling(x & 0xFFFFFFFFL);
+  }
+
+  /* LONG OPERATIONS */
+
+  /**
+   * {@inheritDoc}
+   * @throws IllegalArgumentException if {@code x} does not fit in 32 bits
+   */
+  @Override
+  public void insert(final long x) {
+    if (x >>> 32 != 0) {
+      throw new IllegalArgumentException("Keys must fit in 32 bits.");
+    }
+    insertInt((int) x);
+  }
+
+  @Override
+  public void delete(final long x) {
+    if (x >>> 32 == 0) {
+      deleteInt((int) x);
+    }
+  }
+
+  @Override
+  public boolean member(final long x) {
+    return x >>> 32 == 0 && memberInt((int) x);
+  }
+
+  @Override
+  public long rank(final long x) {
+    return x >>> 32 == 0 ? rankInt((int) x) : n;
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+    return selectInt(rank) & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final long res = lower(x >>> 32 == 0 ? x : universe);
+    return res < 0 ? null : res;
+  }
+
+  @Override
+  public Long successor(final long x) {
+    if (x >>> 32 != 0) {
+      return null;
+    }
+    final long res = ceiling(x);
+    return res < 0 ? null : res;
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor keeps its bucket and its low bits, moves with the {@code successor} and
+   * {@code predecessor} of the container and finds the neighbouring bucket in the bitmap of the
+   * non-empty buckets, so it never touches the Fenwick tree.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new BucketCursor();
+  }
+
+  private final class BucketCursor implements LongCursor {
+
+    private int h = -1; // the bucket at the cursor, -1 before the first key and 2^16 past the last
+    private int low; // the low bits of the key at the cursor
+
+    @Override
+    public boolean seek(final long x) {
+      if (bucket == null || x >>> 32 != 0) {
+        h = buckets;
+        return false;
+      }
+      h = (int) (x >>> 16);
+      if (bucket[h] != null) {
+        final int s = bucket[h].successor((int) x & 0xFFFF);
+        if (s >= 0) {
+          low = s;
+          return true;
+        }
+      }
+      h = nextUsed(h + 1);
+      return first();
+    }
+
+    @Override
+    public boolean next() {
+      if (bucket == null || h >= buckets) {
+        h = buckets;
+        return false;
+      }
+      if (h >= 0) {
+        final int s = low < 0xFFFF ? bucket[h].successor(low + 1) : -1;
+        if (s >= 0) {
+          low = s;
+          return true;
+        }
+      }
+      h = nextUsed(h + 1);
+      return first();
+    }
+
+    @Override
+    public boolean prev() {
+      if (bucket == null || h < 0) {
+        h = -1;
+        return false;
+      }
+      if (h < buckets) {
+        final int p = bucket[h].predecessor(low);
+        if (p >= 0) {
+          low = p;
+          return true;
+        }
+      }
+      h = prevUsed(h);
+      if (h < 0) {
+        return false;
+      }
+      low = bucket[h].select(bucket[h].card - 1);
+      return true;
+    }
+
+    @Override
+    public long current() {
+      if (h < 0 || h >= buckets) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return (long) h << 16 | low;
+    }
+
+    /**
+     * Moves to the smallest key of bucket {@code h}, or past the last key if {@code h} is
+     * {@code -1}.
+     */
+    private boolean first() {
+      if (h < 0) {
+        h = buckets;
+        return false;
+      }
+      low = bucket[h].select(0);
+      return true;
+    }
+  }
+
+  /* HELPER METHODS */
+
+  /**
+   * Returns the largest key strictly smaller than {@code x}, which is at most 2^32, or {@code -1}.
+   */
+  private long lower(final long x) {
+    if (bucket == null) {
+      return -1;
+    }
+    final int h = (int) (x >>> 16);
+    if (h < buckets && bucket[h] != null) {
+      final int low = bucket[h].predecessor((int) x & 0xFFFF);
+      if (low >= 0) {
+        return (long) h << 16 | low;
+      }
+    }
+    final int prev = prevUsed(h);
+    if (prev < 0) {
+      return -1;
+    }
+    final Container c = bucket[prev];
+    return (long) prev << 16 | c.select(c.card - 1);
+  }
+
+  /**
+   * Returns the smallest key larger than or equal to {@code x}, which is smaller than 2^32, or
+   * {@code -1}.
+   */
+  private long ceiling(final long x) {
+    if (bucket == null) {
+      return -1;
+    }
+    final int h = (int) (x >>> 16);
+    if (bucket[h] != null) {
+      final int low = bucket[h].successor((int) x & 0xFFFF);
+      if (low >= 0) {
+        return (long) h << 16 | low;
+      }
+    }
+    final int next = nextUsed(h + 1);
+    return next < 0 ? -1 : (long) next << 16 | bucket[next].select(0);
+  }
+
+  /**
+   * Adds {@code delta} to the size of bucket {@code h} in the Fenwick tree.
+   */
+  private void addCount(final int h, final int delta) {
+    for (int i = h + 1; i < buckets; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  /**
+   * Returns the number of keys in the buckets before bucket {@code h}.
+   */
+  private long countBelow(final int h) {
+    long res = 0;
+    for (int i = h; i > 0; i -= i & -i) {
+      res += tree[i] & 0xFFFFFFFFL;
+    }
+    return res;
+  }
+
+  private void markUsed(final int h) {
+    used[h >>> 6] = Util.setBit(h & 63, used[h >>> 6]);
+    summary[h >>> 12] = Util.setBit((h >>> 6) & 63, summary[h >>> 12]);
+  }
+
+  private void clearUsed(final int h) {
+    used[h >>> 6] = Util.deleteBit(h & 63, used[h >>> 6]);
+    if (used[h >>> 6] == 0) {
+      summary[h >>> 12] = Util.deleteBit((h >>> 6) & 63, summary[h >>> 12]);
+    }
+  }
+
+  /**
+   * Returns the smallest non-empty bucket from {@code h} on, or {@code -1}.
+   */
+  private int nextUsed(final int h) {
+    if (h >= buckets) {
+      return -1;
+    }
+    int w = h >>> 6;
+    final long word = used[w] & (-1L << (h & 63));
+    if (word != 0) {
+      return w << 6 | Util.lsb(word);
+    }
+    if (++w == used.length) {
+      return -1;
+    }
+    int s = w >>> 6;
+    long sword = summary[s] & (-1L << (w & 63));
+    while (sword == 0 && ++s < summary.length) {
+      sword = summary[s];
+    }
+    if (sword == 0) {
+      return -1;
+    }
+    w = s << 6 | Util.lsb(sword);
+    return w << 6 | Util.lsb(used[w]);
+  }
+
+  /**
+   * Returns the largest non-empty bucket before {@code h}, which is at most 2^16, or {@code -1}.
+   */
+  private int prevUsed(final int h) {
+    if (h == 0) {
+      return -1;
+    }
+    int w = (h - 1) >>> 6;
+    final long word = used[w] & (-1L >>> (63 - ((h - 1) & 63)));
+    if (word != 0) {
+      return w << 6 | Util.msb(word);
+    }
+    if (w == 0) {
+      return -1;
+    }
+    w--;
+    int s = w >>> 6;
+    long sword = summary[s] & (-1L >>> (63 - (w & 63)));
+    while (sword == 0 && s > 0) {
+      sword = summary[--s];
+    }
+    if (sword == 0) {
+      return -1;
+    }
+    w = s << 6 | Util.msb(sword);
+    return w << 6 | Util.msb(used[w]);
+  }
+}
@@ -0,0 +1,38 @@
+package integersets;
+
+/**
+ * A position in the keys of a {@code RankSelectPredecessorUpdate}, moving in key order without
+ * boxing. A new cursor is before the first key, so that a loop of {@code next} visits all the keys
+ * in ascending order; moving past either end leaves the cursor off the keys on that side, from
+ * where {@code next} or {@code prev} come back to the first or the last key.
+ *
+ * <p>A cursor is not valid after an update of its set, except for the cursors of the fusion nodes,
+ * which go on from the same rank.
+ */
+public interface LongCursor {
+
+  /** Moves to the smallest key larger than or equal to {@code x}.
+   * @param x The query.
+   * @return {@code true} if there is such a key, and {@code false} if the cursor is past the last
+   *      key.
+   */
+  boolean seek(long x);
+
+  /** Moves to the next key.
+   * @return {@code true} if there is a next key, and {@code false} if the cursor is past the last
+   *      key.
+   */
+  boolean next();
+
+  /** Moves to the previous key.
+   * @return {@code true} if there is a previous key, and {@code false} if the cursor is before the
+   *      first key.
+   */
+  boolean prev();
+
+  /** Returns the key at the cursor.
+   * @return The key at the cursor.
+   * @throws java.util.NoSuchElementException if the cursor is not on a key
+   */
+  long current();
+}
@@ -0,0 +1,225 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk construction of sets from unsorted keys, using the common {@code ForkJoinPool}.
+ *
+ * <p>The keys are first sorted in unsigned order and their duplicates removed by a parallel radix
+ * sort: the input is cut into chunks, which count the top byte of their keys and then scatter
+ * them to the buckets of their top byte independently, and every bucket is sorted on the remaining
+ * bytes and deduplicated on its own. The sorted keys are then split into independent parts, the
+ * subtrees of the top bits in a {@code BinarySearchTrie} and the buckets of a {@code YFastTrie},
+ * which are built in parallel before they are stitched together with their counts.
+ */
+public abstract class ParallelBuild {
+
+  private static final int DIGIT = 8;
+  private static final int RADIX = 1 << DIGIT;
+  private static final int TOP = Long.SIZE - DIGIT;
+
+  /**
+   * The smallest number of keys sorted in parallel.
+   */
+  private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+  /**
+   * The smallest number of keys per chunk of the top byte pass.
+   */
+  private static final int MIN_CHUNK = 1 << 12;
+
+  /**
+   * The largest bucket sorted by comparisons rather than by radix.
+   */
+  private static final int SMALL_BUCKET = 1 << 10;
+
+  /**
+   * This abstract class cannot be instantiated.
+   */
+  public ParallelBuild(){}
+
+  /* BUILDERS */
+
+  /**
+   * Returns a new {@code BinarySearchTrie} holding the distinct keys of {@code keys}.
+   * @param keys the keys, in any order and possibly repeated
+   * @return the trie
+   */
+  public static BinarySearchTrie binarySearchTrie(final long[] keys) {
+    final BinarySearchTrie res = new BinarySearchTrie();
+    res.build(sortedDistinct(keys));
+    return res;
+  }
+
+  /**
+   * Returns a new {@code YFastTrie} with the default buckets holding the distinct keys of
+   * {@code keys}.
+   * @param keys the keys, in any order and possibly repeated
+   * @return the trie
+   */
+  public static YFastTrie yFastTrie(final long[] keys) {
+    final YFastTrie res = new YFastTrie();
+    res.build(sortedDistinct(keys));
+    return res;
+  }
+
+  /**
+   * Returns a new {@code YFastTrie} whose buckets are produced by {@code bucketSupplier} holding
+   * the distinct keys of {@code keys}. The supplier is called from several threads.
+   * @param keys the keys, in any order and possibly repeated
+   * @param bucketSupplier produces empty buckets, for instance fusion nodes
+   * @param capacity the capacity of the buckets produced, at least 4
+   * @return the trie
+   */
+  public static YFastTrie yFastTrie(final long[] keys,
+      final Supplier<RankSelectPredecessorUpdate> bucketSupplier, final int capacity) {
+    final YFastTrie res = new YFastTrie(bucketSupplier, capacity);
+    res.build(sortedDistinct(keys));
+    return res;
+  }
+
+  /**
+   * Returns a new set produced by {@code supplier} holding the distinct keys of {@code keys}. Only
+   * the sorting is done in parallel; the keys are then inserted in ascending order.
+   * @param keys the keys, in any order and possibly repeated
+   * @param supplier the constructor of the result, which must be able to hold all the keys
+   * @return the set
+   */
+  public static <T extends RankSelectPredecessorUpdate> T build(final long[] keys,
+      final Supplier<T> supplier) {
+    final T res = supplier.get();
+    for (final long x : sortedDistinct(keys)) {
+      res.insert(x);
+    }
+    return res;
+  }
+
+  /* SORTING */
+
+  /**
+   * Returns the distinct keys of {@code keys} in ascending unsigned order. The input is not
+   * modified.
+   * @param keys the keys, in any order and possibly repeated
+   * @return a new array holding the sorted distinct keys
+   */
+  public static long[] sortedDistinct(final long[] keys) {
+    final int n = keys.length;
+    final boolean parallel = n >= PARALLEL_THRESHOLD;
+    final int chunks = parallel
+        ? Math.min(4 * ForkJoinPool.getCommonPoolParallelism(), n / MIN_CHUNK) : 1;
+
+    // count the top bytes of every chunk, then turn the counts into the positions where each chunk
+    // writes the keys of each bucket
+    final int[][] next = new int[chunks][RADIX];
+    range(chunks, parallel).forEach(c -> {
+      final int[] count = next[c];
+      for (int i = start(n, chunks, c); i < start(n, chunks, c + 1); i++) {
+        count[(int) (keys[i] >>> TOP)]++;
+      }
+    });
+    final int[] bucketStart = new int[RADIX + 1];
+    int sum = 0;
+    for (int b = 0; b < RADIX; b++) {
+      bucketStart[b] = sum;
+      for (int c = 0; c < chunks; c++) {
+        final int count = next[c][b];
+        next[c][b] = sum;
+        sum += count;
+      }
+    }
+    bucketStart[RADIX] = n;
+
+    final long[] a = new long[n];
+    range(chunks, parallel).forEach(c -> {
+      final int[] pos = next[c];
+      for (int i = start(n, chunks, c); i < start(n, chunks, c + 1); i++) {
+        a[pos[(int) (keys[i] >>> TOP)]++] = keys[i];
+      }
+    });
+
+    final long[] tmp = new long[n];
+    final int[] distinct = new int[RADIX];
+    range(RADIX, parallel).forEach(b -> {
+      sortBucket(a, tmp, bucketStart[b], bucketStart[b + 1]);
+      distinct[b] = dedup(a, bucketStart[b], bucketStart[b + 1]);
+    });
+
+    final int[] resStart = new int[RADIX];
+    sum = 0;
+    for (int b = 0; b < RADIX; b++) {
+      resStart[b] = sum;
+      sum += distinct[b];
+    }
+    final long[] res = new long[sum];
+    range(RADIX, parallel).forEach(b ->
+        System.arraycopy(a, bucketStart[b], res, resStart[b], distinct[b]));
+    return res;
+  }
+
+  /**
+   * Sorts {@code a[lo, hi)}, whose keys share their top byte, with a least significant digit radix
+   * sort on the remaining bytes using {@code tmp[lo, hi)} as scratch space. The passes over digits
+   * that are equal in all the keys are skipped. Small buckets are sorted by comparisons, which
+   * agree with the unsigned order since all their keys have the same sign.
+   */
+  private static void sortBucket(final long[] a, final long[] tmp, final int lo, final int hi) {
+    if (hi - lo <= SMALL_BUCKET) {
+      Arrays.sort(a, lo, hi);
+      return;
+    }
+
+    final int[] count = new int[RADIX + 1];
+    long[] from = a;
+    long[] to = tmp;
+    for (int shift = 0; shift < TOP; shift += DIGIT) {
+      Arrays.fill(count, 0);
+      for (int i = lo; i < hi; i++) {
+        count[((int) (from[i] >>> shift) & (RADIX - 1)) + 1]++;
+      }
+      if (count[((int) (from[lo] >>> shift) & (RADIX - 1)) + 1] == hi - lo) {
+        continue;
+      }
+      for (int d = 0; d < RADIX; d++) {
+        count[d + 1] += count[d];
+      }
+      for (int i = lo; i < hi; i++) {
+        to[lo + count[(int) (from[i] >>> shift) & (RADIX - 1)]++] = from[i];
+      }
+      final long[] swap = from;
+      from = to;
+      to = swap;
+    }
+    if (from != a) {
+      System.arraycopy(from, lo, a, lo, hi - lo);
+    }
+  }
+
+  /**
+   * Moves the distinct keys of the sorted {@code a[lo, hi)} to its beginning and returns their
+   * number.
+   */
+  private static int dedup(final long[] a, final int lo, final int hi) {
+    if (lo == hi) {
+      return 0;
+    }
+    int last = lo;
+    for (int i = lo + 1; i < hi; i++) {
+      if (a[i] != a[last]) {
+        a[++last] = a[i];
+      }
+    }
+    return last - lo + 1;
+  }
+
+  private static int start(final int n, final int chunks, final int c) {
+    return (int) ((long) c * n / chunks);
+  }
+
+  private static IntStream range(final int n, final boolean parallel) {
+    final IntStream res = IntStream.range(0, n);
+    return parallel ? res.parallel() : res;
+  }
+}
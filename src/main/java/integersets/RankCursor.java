@@ -0,0 +1,55 @@
+package integersets;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A {@code LongCursor} keeping the rank of its key, from {@code -1} before the first key to the
+ * size of the set past the last one. It is the cursor of the sets without a better one, through
+ * {@code select}, and of the fusion nodes, which read their keys in rank order through
+ * {@code index} in O(1) time.
+ */
+abstract class RankCursor implements LongCursor {
+
+  private long rank = -1;
+
+  /**
+   * Returns the number of keys in the set.
+   */
+  abstract long size();
+
+  /**
+   * Returns the number of keys in the set that are strictly smaller than {@code x}.
+   */
+  abstract long rankOf(long x);
+
+  /**
+   * Returns the key with rank {@code rank}, which is in bounds.
+   */
+  abstract long keyAt(long rank);
+
+  @Override
+  public boolean seek(final long x) {
+    rank = rankOf(x);
+    return rank < size();
+  }
+
+  @Override
+  public boolean next() {
+    rank = Math.min(rank + 1, size());
+    return rank < size();
+  }
+
+  @Override
+  public boolean prev() {
+    rank = Math.max(Math.min(rank, size()) - 1, -1);
+    return rank >= 0;
+  }
+
+  @Override
+  public long current() {
+    if (rank < 0 || rank >= size()) {
+      throw new NoSuchElementException("The cursor is not on a key.");
+    }
+    return keyAt(rank);
+  }
+}
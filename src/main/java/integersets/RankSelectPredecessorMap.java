@@ -0,0 +1,74 @@
+package integersets;
+
+/**
+ * Extension of the {@code RankSelectPredecessorUpdate} interface where every key carries a
+ * {@code long} value. The set operations work on the keys; a key added by {@code insert} has the
+ * value {@code 0}, and {@code insert} leaves the value of a member unchanged.
+ */
+public interface RankSelectPredecessorMap extends RankSelectPredecessorUpdate {
+
+  /** Associates {@code value} with {@code x}, inserting {@code x} if it is not a member (and there
+   * is room for it).
+   * @param x The key.
+   * @param value The value.
+   */
+  void put(long x, long value);
+
+  /** Returns the value of the key with rank {@code rank}.
+   * @param rank The query.
+   * @return The value of the key whose rank is {@code rank}, or {@code null} if there is none.
+   */
+  Long valueAt(long rank);
+
+  /** Returns the value of {@code x}.
+   * @param x The query.
+   * @return The value of {@code x}, or {@code null} if it is not a member.
+   */
+  default Long get(final long x) {
+    final long rank = rank(x);
+    final Long y = select(rank);
+    return y != null && y == x ? valueAt(rank) : null;
+  }
+
+  /** Removes {@code x} and returns its value.
+   * @param x The query.
+   * @return The value of {@code x}, or {@code null} if it was not a member.
+   */
+  default Long remove(final long x) {
+    final Long res = get(x);
+    if (res != null) {
+      delete(x);
+    }
+    return res;
+  }
+
+  /** Returns the value of the predecessor of {@code x}.
+   * <br>It follows the rule predecessorValue({@code x}) = valueAt(rank({@code x})-1)
+   * <br>To read the predecessor itself as well, {@code predecessorEntry} finds both at once.
+   * @param x The query.
+   * @return The value of the largest key smaller than {@code x}, or {@code null} if there is none.
+   */
+  default Long predecessorValue(final long x) {
+    return valueAt(rank(x) - 1);
+  }
+
+  /** Finds the predecessor of {@code x} together with its value, and writes them in
+   * {@code entry}, without boxing.
+   * <br>The default implementation calls rank, select and valueAt; the tries override it with
+   * one search.
+   * @param x The query.
+   * @param entry The output, which receives the predecessor in {@code entry[0]} and its value in
+   *      {@code entry[1]} if there is one, and is left unchanged otherwise.
+   * @return {@code true} if {@code x} has a predecessor, and {@code false} otherwise.
+   */
+  default boolean predecessorEntry(final long x, final long[] entry) {
+    final long rank = rank(x) - 1;
+    final Long key = select(rank);
+    if (key == null) {
+      return false;
+    }
+    entry[0] = key;
+    entry[1] = valueAt(rank);
+    return true;
+  }
+}
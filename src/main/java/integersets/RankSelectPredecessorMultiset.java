@@ -0,0 +1,19 @@
+package integersets;
+
+/**
+ * Extension of the {@code RankSelectPredecessorUpdate} interface where every key has a
+ * multiplicity. {@code insert} adds one copy of the key and {@code delete} removes one; the key
+ * leaves the set with its last copy. {@code rank} counts the copies of the smaller keys,
+ * {@code select} walks the keys by cumulative counts, and {@code size} is the total number of
+ * copies.
+ *
+ * <p>Implementations constructed as sets keep every multiplicity at most {@code 1}.
+ */
+public interface RankSelectPredecessorMultiset extends RankSelectPredecessorUpdate {
+
+  /** Returns the multiplicity of {@code x}.
+   * @param x The query.
+   * @return The number of copies of {@code x} in the set, {@code 0} if it is not a member.
+   */
+  long count(long x);
+}
@@ -1,5 +1,10 @@
 package integersets;
 
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
 /**
  * Implementation of the {@code RankSelectPredecessorUpdate} interface, as described in Section
  * 3.1 of the report.
@@ -74,6 +79,47 @@ public interface RankSelectPredecessorUpdate {
    */
   long size();
 
+  /** Returns the smallest key in the set.
+   * @return The smallest key, or {@code null} if the set is empty.
+   */
+  default Long peekFirst() {
+    return select(0);
+  }
+
+  /** Returns the largest key in the set.
+   * @return The largest key, or {@code null} if the set is empty.
+   */
+  default Long peekLast() {
+    return select(size() - 1);
+  }
+
+  /** Removes the key with rank {@code rank} and returns it.
+   * <br>It follows the rule deleteByRank({@code r}) = delete(select({@code r}))
+   * @param rank The query.
+   * @return The removed key, or {@code null} if there is no key with rank {@code rank}.
+   */
+  default Long deleteByRank(final long rank) {
+    final Long res = select(rank);
+    if (res != null) {
+      delete(res);
+    }
+    return res;
+  }
+
+  /** Removes the smallest key in the set and returns it.
+   * @return The removed key, or {@code null} if the set is empty.
+   */
+  default Long pollFirst() {
+    return deleteByRank(0);
+  }
+
+  /** Removes the largest key in the set and returns it.
+   * @return The removed key, or {@code null} if the set is empty.
+   */
+  default Long pollLast() {
+    return deleteByRank(size() - 1);
+  }
+
   /** Returns {@code true} if the set is empty.
    * 
    * @return {@code true} if the set is empty, and {@code false} otherwise.
@@ -85,4 +131,161 @@ public interface RankSelectPredecessorUpdate {
   /** Resets the data structure, removing all elements.
    */
   void reset();
+
+  /** Computes the rank of every query, as {@code rank} would.
+   * <br>The tries and the fusion nodes answer the queries in ascending order, each one going on
+   * from the previous one, and radix sort a copy of unsorted queries first.
+   * @param queries The queries.
+   * @param out The array receiving rank({@code queries[i]}) at position {@code i}.
+   * @throws IllegalArgumentException if {@code out} is shorter than {@code queries}
+   */
+  default void rankBatch(final long[] queries, final long[] out) {
+    BatchQueries.checkLength(queries, out);
+    for (int i = 0; i < queries.length; i++) {
+      out[i] = rank(queries[i]);
+    }
+  }
+
+  /** Computes the rank and the predecessor of every query.
+   * <br>The tries and trees advance {@code group} queries in lockstep, one node each in turn, so
+   * that the cache misses of independent queries overlap instead of following each other.
+   * @param queries The queries.
+   * @param group The number of queries in flight.
+   * @param ranks The array receiving rank({@code queries[i]}) at position {@code i}.
+   * @param predecessors The array receiving predecessor({@code queries[i]}) at position {@code i},
+   *     or {@code 0} if there is none, that is if the rank is {@code 0}.
+   * @throws IllegalArgumentException if {@code group} is not positive or an output array is
+   *     shorter than {@code queries}
+   */
+  default void rankAndPredecessorBatch(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    BatchQueries.checkGroup(queries, group, ranks, predecessors);
+    for (int i = 0; i < queries.length; i++) {
+      ranks[i] = rank(queries[i]);
+      final Long y = predecessor(queries[i]);
+      predecessors[i] = y == null ? 0 : y;
+    }
+  }
+
+  /** Computes the key of every rank, as {@code select} would.
+   * <br>The tries and trees answer the ranks in ascending order with a cursor, and radix sort a
+   * copy of unsorted ranks first.
+   * @param ranks The queries.
+   * @param out The array receiving select({@code ranks[i]}) at position {@code i}.
+   * @throws IllegalArgumentException if {@code out} is shorter than {@code ranks}
+   * @throws IndexOutOfBoundsException if a rank is negative or not smaller than the size
+   */
+  default void selectBatch(final long[] ranks, final long[] out) {
+    BatchQueries.checkLength(ranks, out);
+    BatchQueries.checkRanks(this, ranks);
+    for (int i = 0; i < ranks.length; i++) {
+      out[i] = select(ranks[i]);
+    }
+  }
+
+  /** Returns the {@code q}-quantile of the keys by the nearest-rank method: the smallest key
+   * such that a fraction of at least {@code q} of the keys are smaller than or equal to it.
+   * <br>quantile({@code q}) = select(ceil({@code q} &middot; size()) - 1), and quantile(0) is the
+   * smallest key.
+   * @param q The fraction, between {@code 0} and {@code 1}.
+   * @return The quantile.
+   * @throws IllegalArgumentException if {@code q} is not between {@code 0} and {@code 1}
+   * @throws java.util.NoSuchElementException if the set is empty
+   */
+  default long quantile(final double q) {
+    return select(BatchQueries.quantileRank(q, size()));
+  }
+
+  /** Computes the quantile of every fraction, as {@code quantile} would, with a single call to
+   * {@code selectBatch}, so that the tries and trees walk their keys once in rank order.
+   * @param qs The fractions, between {@code 0} and {@code 1}.
+   * @return The array holding quantile({@code qs[i]}) at position {@code i}.
+   * @throws IllegalArgumentException if a fraction is not between {@code 0} and {@code 1}
+   * @throws java.util.NoSuchElementException if the set is empty and {@code qs} is not
+   */
+  default long[] quantiles(final double[] qs) {
+    final long size = size();
+    final long[] ranks = new long[qs.length];
+    for (int i = 0; i < qs.length; i++) {
+      ranks[i] = BatchQueries.quantileRank(qs[i], size);
+    }
+    final long[] res = new long[qs.length];
+    selectBatch(ranks, res);
+    return res;
+  }
+
+  /** Returns the fraction of the keys that are smaller than or equal to {@code x}, the inverse
+   * of {@code quantile}: quantile(percentileRank({@code x})) = {@code x} for every key {@code x}.
+   * @param x The query.
+   * @return The fraction, between {@code 0} and {@code 1}, or {@code 0} if the set is empty.
+   */
+  default double percentileRank(final long x) {
+    final long size = size();
+    if (size == 0) {
+      return 0;
+    }
+    return (double) (x == -1L ? size : rank(x + 1)) / size;
+  }
+
+  /** Returns a cursor before the first key of the set.
+   * <br>The default cursor calls {@code select} on every move, so a full scan takes O(n) calls
+   * to select. Every set of this package overrides it with a cursor walking its own nodes,
+   * buckets or containers, except the Patricia tries, which have no rank and select, and
+   * {@code NaiveDynamicFusionNode}, whose select already reads a sorted array.
+   * @return The cursor.
+   */
+  default LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return RankSelectPredecessorUpdate.this.size();
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return rank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return select(rank);
+      }
+    };
+  }
+
+  /** Returns a spliterator over the keys of the set, in unsigned order. It splits in halves by
+   * rank without walking the set, and it is {@code SIZED} and {@code SUBSIZED}; every part reads
+   * its keys with a cursor placed by one call to select. (It is not named {@code spliterator}, which
+   * an {@code Iterable} set already has.)
+   * @return The spliterator.
+   */
+  default Spliterator.OfLong longSpliterator() {
+    return new RankSpliterator(this, true);
+  }
+
+  /** Returns a sequential stream over the keys of the set, in unsigned order. Calling
+   * {@code parallel} on it splits the keys by rank.
+   * @return The stream.
+   */
+  default LongStream stream() {
+    return StreamSupport.longStream(longSpliterator(), false);
+  }
+
+  /** Returns a read-only copy of the set stored in an {@code EytzingerArray}. Later updates of
+   * this set are not reflected in the copy. The keys are read with one pass of {@code cursor}, and
+   * a multiset is frozen as the set of its distinct keys.
+   * @return The snapshot of the set.
+   */
+  default RankSelectPredecessorUpdate freezeEytzinger() {
+    final long[] keys = new long[(int) size()];
+    final LongCursor cursor = cursor();
+    int n = 0;
+    while (cursor.next()) {
+      final long key = cursor.current();
+      if (n == 0 || key != keys[n - 1]) {
+        keys[n++] = key;
+      }
+    }
+    return new EytzingerArray(n == keys.length ? keys : Arrays.copyOf(keys, n));
+  }
 }
@@ -0,0 +1,101 @@
+package integersets;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A {@code Spliterator.OfLong} over the keys of a set whose ranks are in {@code [lo, hi)}. It
+ * splits in halves by rank in O(1) time, without touching the set, and its exact size is always
+ * known. The keys are read with a {@code LongCursor} placed by one {@code select} when the
+ * traversal starts, or with {@code select} alone when the set is a multiset, whose ranks count the
+ * copies of the keys.
+ */
+class RankSpliterator implements Spliterator.OfLong {
+
+  private static final Comparator<Long> UNSIGNED = Long::compareUnsigned;
+
+  private final RankSelectPredecessorUpdate set;
+  private final boolean distinct;
+  private long lo;
+  private final long hi;
+  private LongCursor cursor; // on the key with rank lo - 1 once the traversal starts
+
+  /**
+   * Constructs a {@code RankSpliterator} over all the keys of {@code set}.
+   * @param set the set
+   * @param distinct whether every key of the set has rank one, that is the set is not a multiset
+   */
+  RankSpliterator(final RankSelectPredecessorUpdate set, final boolean distinct) {
+    this(set, distinct, 0, set.size());
+  }
+
+  private RankSpliterator(final RankSelectPredecessorUpdate set, final boolean distinct,
+      final long lo, final long hi) {
+    this.set = set;
+    this.distinct = distinct;
+    this.lo = lo;
+    this.hi = hi;
+  }
+
+  @Override
+  public boolean tryAdvance(final LongConsumer action) {
+    if (lo >= hi) {
+      return false;
+    }
+    action.accept(nextKey());
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(final LongConsumer action) {
+    while (lo < hi) {
+      action.accept(nextKey());
+    }
+  }
+
+  private long nextKey() {
+    final long rank = lo++;
+    if (!distinct) {
+      return set.select(rank);
+    }
+    if (cursor == null) {
+      cursor = set.cursor();
+      if (rank == 0) {
+        cursor.next();
+      } else {
+        cursor.seek(set.select(rank));
+      }
+    } else {
+      cursor.next();
+    }
+    return cursor.current();
+  }
+
+  @Override
+  public Spliterator.OfLong trySplit() {
+    if (hi - lo < 2) {
+      return null;
+    }
+    final long mid = (lo + hi) >>> 1;
+    final RankSpliterator prefix = new RankSpliterator(set, distinct, lo, mid);
+    lo = mid;
+    cursor = null;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return hi - lo;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL | (distinct ? DISTINCT : 0);
+  }
+
+  @Override
+  public Comparator<? super Long> getComparator() {
+    return UNSIGNED;
+  }
+}
@@ -0,0 +1,662 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of the {@code RedBlackBST} data structure, as described in Section 2.2.2 of the
+ * report, in its left-leaning variant (Sedgewick). Every node is augmented with the size of its
+ * subtree, so rank and select take O(lg n) time like the other operations.
+ *
+ * <p>The nodes live in a pool of parallel primitive arrays and are referred to by their index, so
+ * keys are never boxed. Index {@code 0} is the black sentinel {@code nil} with size {@code 0}, and
+ * released nodes are chained through {@code left} for reuse.
+ */
+public class RedBlackBST implements RankSelectPredecessorUpdate {
+
+  private static final int nil = 0;
+
+  private long[] key;
+  private int[] left;
+  private int[] right;
+  private int[] size;
+  private boolean[] red;
+  private int root;
+  private int free;
+  private int used;
+  private long removed; // the key of the node released by the last deleteMin or deleteMax
+
+  /**
+   * Constructs an empty {@code RedBlackBST}.
+   */
+  public RedBlackBST() {
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    key = new long[16];
+    left = new int[16];
+    right = new int[16];
+    size = new int[16];
+    red = new boolean[16];
+    root = nil;
+    free = nil;
+    used = 1;
+  }
+
+  @Override
+  public long size() {
+    return size[root];
+  }
+
+  /* NODE POOL */
+
+  private int newNode(final long x) {
+    final int h;
+    if (free != nil) {
+      h = free;
+      free = left[h];
+    } else {
+      if (used == key.length) {
+        final int capacity = 2 * used;
+        key = Arrays.copyOf(key, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        size = Arrays.copyOf(size, capacity);
+        red = Arrays.copyOf(red, capacity);
+      }
+      h = used++;
+    }
+    key[h] = x;
+    left[h] = nil;
+    right[h] = nil;
+    size[h] = 1;
+    red[h] = true;
+    return h;
+  }
+
+  private void release(final int h) {
+    left[h] = free;
+    free = h;
+  }
+
+  /* QUERIES */
+
+  @Override
+  public boolean member(final long x) {
+    int h = root;
+    while (h != nil) {
+      final int cmp = Long.compareUnsigned(x, key[h]);
+      if (cmp == 0) {
+        return true;
+      }
+      h = cmp < 0 ? left[h] : right[h];
+    }
+    return false;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    int h = root;
+    int res = nil;
+    while (h != nil) {
+      if (Long.compareUnsigned(key[h], x) < 0) {
+        res = h;
+        h = right[h];
+      } else {
+        h = left[h];
+      }
+    }
+    return res == nil ? null : key[res];
+  }
+
+  @Override
+  public Long successor(final long x) {
+    int h = root;
+    int res = nil;
+    while (h != nil) {
+      if (Long.compareUnsigned(key[h], x) >= 0) {
+        res = h;
+        h = left[h];
+      } else {
+        h = right[h];
+      }
+    }
+    return res == nil ? null : key[res];
+  }
+
+  @Override
+  public long rank(final long x) {
+    int h = root;
+    long res = 0;
+    while (h != nil) {
+      final int cmp = Long.compareUnsigned(x, key[h]);
+      if (cmp == 0) {
+        return res + size[left[h]];
+      }
+      if (cmp < 0) {
+        h = left[h];
+      } else {
+        res += size[left[h]] + 1;
+        h = right[h];
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public Long select(long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    int h = root;
+    while (true) {
+      final int l = size[left[h]];
+      if (rank < l) {
+        h = left[h];
+      } else if (rank == l) {
+        return key[h];
+      } else {
+        rank -= l + 1;
+        h = right[h];
+      }
+    }
+  }
+
+  /**
+   * Returns the number of nodes on the longest path from the root to a leaf.
+   * @return the height of the tree
+   */
+  public int height() {
+    return height(root);
+  }
+
+  private int height(final int h) {
+    return h == nil ? 0 : 1 + Math.max(height(left[h]), height(right[h]));
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor keeps the path from the root to its node in an explicit stack of indices, so a
+   * full scan visits every node a constant number of times.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new TreeCursor();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>Every query in flight only keeps its node, its rank so far and the last node smaller than
+   * it, so a step is one comparison.
+   */
+  @Override
+  public void rankAndPredecessorBatch(final long[] queries, final int group, final long[] ranks,
+      final long[] predecessors) {
+    BatchQueries.checkGroup(queries, group, ranks, predecessors);
+    final int g = Math.min(group, queries.length);
+    final int[] query = new int[g]; // the query of every slot, -1 once there are no more
+    final int[] node = new int[g];
+    final int[] lower = new int[g]; // the last node smaller than the query
+    final long[] res = new long[g];
+
+    int next = 0;
+    int active = g;
+    for (int s = 0; s < g; s++) {
+      query[s] = next++;
+      node[s] = root;
+    }
+
+    while (active > 0) {
+      for (int s = 0; s < g; s++) {
+        if (query[s] < 0) {
+          continue;
+        }
+
+        final int h = node[s];
+        if (h != nil) {
+          if (Long.compareUnsigned(key[h], queries[query[s]]) < 0) {
+            res[s] += size[left[h]] + 1;
+            lower[s] = h;
+            node[s] = right[h];
+          } else {
+            node[s] = left[h];
+          }
+          continue;
+        }
+
+        ranks[query[s]] = res[s];
+        predecessors[query[s]] = lower[s] == nil ? 0 : key[lower[s]];
+        if (next < queries.length) {
+          query[s] = next++;
+          node[s] = root;
+          lower[s] = nil;
+          res[s] = 0;
+        } else {
+          query[s] = -1;
+          active--;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void selectBatch(final long[] ranks, final long[] out) {
+    BatchQueries.checkLength(ranks, out);
+    BatchQueries.checkRanks(this, ranks);
+    BatchQueries.inOrder(ranks, out, (sorted, res) -> BatchQueries.selectSorted(this, sorted, res));
+  }
+
+  private final class TreeCursor implements LongCursor {
+
+    // path[0] is the root and path[depth] the node at the cursor, if the cursor is on a key
+    private int[] path = new int[64];
+    private int depth = -1;
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      // the stack is cut back to the last node not smaller than x once the search ends
+      depth = -1;
+      int found = -1;
+      for (int h = root; h != nil; ) {
+        push(h);
+        if (Long.compareUnsigned(key[h], x) >= 0) {
+          found = depth;
+          h = left[h];
+        } else {
+          h = right[h];
+        }
+      }
+      depth = found;
+      after = true;
+      return depth >= 0;
+    }
+
+    @Override
+    public boolean next() {
+      if (depth < 0) {
+        if (after) {
+          return false;
+        }
+        descend(root, false);
+        return moved(true);
+      }
+
+      if (right[path[depth]] != nil) {
+        descend(right[path[depth]], false);
+        return true;
+      }
+      while (depth > 0) {
+        final int child = path[depth--];
+        if (left[path[depth]] == child) {
+          return true;
+        }
+      }
+      depth = -1;
+      return moved(true);
+    }
+
+    @Override
+    public boolean prev() {
+      if (depth < 0) {
+        if (!after) {
+          return false;
+        }
+        descend(root, true);
+        return moved(false);
+      }
+
+      if (left[path[depth]] != nil) {
+        descend(left[path[depth]], true);
+        return true;
+      }
+      while (depth > 0) {
+        final int child = path[depth--];
+        if (right[path[depth]] == child) {
+          return true;
+        }
+      }
+      depth = -1;
+      return moved(false);
+    }
+
+    @Override
+    public long current() {
+      if (depth < 0) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return key[path[depth]];
+    }
+
+    /**
+     * Records on which side the cursor left the keys, if it did, after a move forward or back.
+     */
+    private boolean moved(final boolean forward) {
+      if (depth < 0) {
+        after = forward;
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * Pushes the path from {@code h} to its smallest node, or its largest if {@code largest}.
+     */
+    private void descend(int h, final boolean largest) {
+      while (h != nil) {
+        push(h);
+        h = largest ? right[h] : left[h];
+      }
+    }
+
+    private void push(final int h) {
+      if (++depth == path.length) {
+        path = Arrays.copyOf(path, 2 * depth);
+      }
+      path[depth] = h;
+    }
+  }
+
+  /* UPDATES */
+
+  @Override
+  public void insert(final long x) {
+    root = insert(root, x);
+    red[root] = false;
+  }
+
+  private int insert(int h, final long x) {
+    if (h == nil) {
+      return newNode(x);
+    }
+
+    // the pool may grow during the recursive call, so the arrays are indexed after it
+    final int cmp = Long.compareUnsigned(x, key[h]);
+    if (cmp < 0) {
+      final int l = insert(left[h], x);
+      left[h] = l;
+    } else if (cmp > 0) {
+      final int r = insert(right[h], x);
+      right[h] = r;
+    } else {
+      return h;
+    }
+
+    if (red[right[h]] && !red[left[h]]) {
+      h = rotateLeft(h);
+    }
+    if (red[left[h]] && red[left[left[h]]]) {
+      h = rotateRight(h);
+    }
+    if (red[left[h]] && red[right[h]]) {
+      flipColors(h);
+    }
+    size[h] = size[left[h]] + size[right[h]] + 1;
+    return h;
+  }
+
+  @Override
+  public void delete(final long x) {
+    if (!member(x)) {
+      return;
+    }
+
+    if (!red[left[root]] && !red[right[root]]) {
+      red[root] = true;
+    }
+    root = delete(root, x);
+    if (root != nil) {
+      red[root] = false;
+    }
+  }
+
+  private int delete(int h, final long x) {
+    if (Long.compareUnsigned(x, key[h]) < 0) {
+      if (!red[left[h]] && !red[left[left[h]]]) {
+        h = moveRedLeft(h);
+      }
+      left[h] = delete(left[h], x);
+    } else {
+      if (red[left[h]]) {
+        h = rotateRight(h);
+      }
+      if (x == key[h] && right[h] == nil) {
+        release(h);
+        return nil;
+      }
+      if (!red[right[h]] && !red[left[right[h]]]) {
+        h = moveRedRight(h);
+      }
+      if (x == key[h]) {
+        // replace the key by its successor, which is removed from the right subtree
+        int m = right[h];
+        while (left[m] != nil) {
+          m = left[m];
+        }
+        key[h] = key[m];
+        right[h] = deleteMin(right[h]);
+      } else {
+        right[h] = delete(right[h], x);
+      }
+    }
+    return balance(h);
+  }
+
+  @Override
+  public Long peekFirst() {
+    if (root == nil) {
+      return null;
+    }
+    int h = root;
+    while (left[h] != nil) {
+      h = left[h];
+    }
+    return key[h];
+  }
+
+  @Override
+  public Long peekLast() {
+    if (root == nil) {
+      return null;
+    }
+    int h = root;
+    while (right[h] != nil) {
+      h = right[h];
+    }
+    return key[h];
+  }
+
+  @Override
+  public Long pollFirst() {
+    if (root == nil) {
+      return null;
+    }
+
+    if (!red[left[root]] && !red[right[root]]) {
+      red[root] = true;
+    }
+    root = deleteMin(root);
+    if (root != nil) {
+      red[root] = false;
+    }
+    return removed;
+  }
+
+  @Override
+  public Long pollLast() {
+    if (root == nil) {
+      return null;
+    }
+
+    if (!red[left[root]] && !red[right[root]]) {
+      red[root] = true;
+    }
+    root = deleteMax(root);
+    if (root != nil) {
+      red[root] = false;
+    }
+    return removed;
+  }
+
+  @Override
+  public Long deleteByRank(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    if (!red[left[root]] && !red[right[root]]) {
+      red[root] = true;
+    }
+    root = deleteByRank(root, rank);
+    if (root != nil) {
+      red[root] = false;
+    }
+    return removed;
+  }
+
+  /**
+   * Same descent as {@code delete}, comparing {@code rank} with the size of the left subtree
+   * instead of comparing keys. The transformations on the way down keep the nodes of each subtree,
+   * so the rank within the subtree of {@code h} is unchanged by them.
+   */
+  private int deleteByRank(int h, final long rank) {
+    if (rank < size[left[h]]) {
+      if (!red[left[h]] && !red[left[left[h]]]) {
+        h = moveRedLeft(h);
+      }
+      left[h] = deleteByRank(left[h], rank);
+    } else {
+      if (red[left[h]]) {
+        h = rotateRight(h);
+      }
+      if (rank == size[left[h]] && right[h] == nil) {
+        removed = key[h];
+        release(h);
+        return nil;
+      }
+      if (!red[right[h]] && !red[left[right[h]]]) {
+        h = moveRedRight(h);
+      }
+      if (rank == size[left[h]]) {
+        // replace the key by its successor, which is removed from the right subtree
+        final long res = key[h];
+        int m = right[h];
+        while (left[m] != nil) {
+          m = left[m];
+        }
+        key[h] = key[m];
+        right[h] = deleteMin(right[h]);
+        removed = res;
+      } else {
+        right[h] = deleteByRank(right[h], rank - size[left[h]] - 1);
+      }
+    }
+    return balance(h);
+  }
+
+  private int deleteMin(int h) {
+    if (left[h] == nil) {
+      removed = key[h];
+      release(h);
+      return nil;
+    }
+    if (!red[left[h]] && !red[left[left[h]]]) {
+      h = moveRedLeft(h);
+    }
+    left[h] = deleteMin(left[h]);
+    return balance(h);
+  }
+
+  private int deleteMax(int h) {
+    if (red[left[h]]) {
+      h = rotateRight(h);
+    }
+    if (right[h] == nil) {
+      removed = key[h];
+      release(h);
+      return nil;
+    }
+    if (!red[right[h]] && !red[left[right[h]]]) {
+      h = moveRedRight(h);
+    }
+    right[h] = deleteMax(right[h]);
+    return balance(h);
+  }
+
+  /* HELPER METHODS */
+
+  private int rotateLeft(final int h) {
+    final int x = right[h];
+    right[h] = left[x];
+    left[x] = h;
+    red[x] = red[h];
+    red[h] = true;
+    size[x] = size[h];
+    size[h] = size[left[h]] + size[right[h]] + 1;
+    return x;
+  }
+
+  private int rotateRight(final int h) {
+    final int x = left[h];
+    left[h] = right[x];
+    right[x] = h;
+    red[x] = red[h];
+    red[h] = true;
+    size[x] = size[h];
+    size[h] = size[left[h]] + size[right[h]] + 1;
+    return x;
+  }
+
+  private void flipColors(final int h) {
+    red[h] = !red[h];
+    red[left[h]] = !red[left[h]];
+    red[right[h]] = !red[right[h]];
+  }
+
+  /**
+   * Assuming {@code h} is red and both its children are black, makes the left child of {@code h}
+   * or one of its children red.
+   */
+  private int moveRedLeft(int h) {
+    flipColors(h);
+    if (red[left[right[h]]]) {
+      right[h] = rotateRight(right[h]);
+      h = rotateLeft(h);
+      flipColors(h);
+    }
+    return h;
+  }
+
+  /**
+   * Assuming {@code h} is red and both its right child and the left child of its right child are
+   * black, makes the right child of {@code h} or one of its children red.
+   */
+  private int moveRedRight(int h) {
+    flipColors(h);
+    if (red[left[left[h]]]) {
+      h = rotateRight(h);
+      flipColors(h);
+    }
+    return h;
+  }
+
+  /**
+   * Restores the invariants of the tree on the way up.
+   */
+  private int balance(int h) {
+    if (red[right[h]] && !red[left[h]]) {
+      h = rotateLeft(h);
+    }
+    if (red[left[h]] && red[left[left[h]]]) {
+      h = rotateRight(h);
+    }
+    if (red[left[h]] && red[right[h]]) {
+      flipColors(h);
+    }
+    size[h] = size[left[h]] + size[right[h]] + 1;
+    return h;
+  }
+}
@@ -0,0 +1,748 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of a Roaring bitmap (Chambi, Lemire, Kaser and Godin) over 64-bit keys, with
+ * rank and select. The keys are partitioned by their 48 high bits, and the 16 low bits of the keys
+ * of each partition are stored in a container of one of three kinds, whichever is smallest:
+ * <ul>
+ * <li>an array container, a sorted array of up to 4096 values;</li>
+ * <li>a bitmap container, 65536 bits in 1024 words;</li>
+ * <li>a run container, a sorted array of runs of consecutive values.</li>
+ * </ul>
+ *
+ * <p>An array container that fills up becomes a bitmap, or a run container when its values form
+ * few runs, a bitmap container that shrinks to 4096 values becomes an array and a run container
+ * that is no longer smallest becomes one of the others. {@link #runOptimize()} converts every
+ * container to its smallest kind.
+ *
+ * <p>The containers are kept sorted by their high bits, together with the prefix sums of their
+ * cardinalities. An update only invalidates the prefix sums after its container, and they are
+ * recomputed by the next query that needs them. Within a container, bitmaps are ranked with
+ * {@link Long#bitCount(long)}.
+ */
+public class RoaringRankSelect implements RankSelectPredecessorUpdate {
+
+  private static final int arrayMaxSize = 4096;
+  private static final int bitmapWords = 1024;
+
+  /**
+   * A set of values in [0, 65536). The updates return the container to be used afterwards, which
+   * may be of a different kind.
+   */
+  abstract static class Container {
+
+    int card;
+
+    abstract boolean contains(int low);
+
+    abstract Container add(int low);
+
+    abstract Container remove(int low);
+
+    /** Returns the number of values strictly smaller than {@code low}. */
+    abstract int rank(int low);
+
+    /** Returns the value of rank {@code rank}, which must exist. */
+    abstract int select(int rank);
+
+    /** Returns the largest value strictly smaller than {@code low}, or {@code -1}. */
+    abstract int predecessor(int low);
+
+    /** Returns the smallest value larger than or equal to {@code low}, or {@code -1}. */
+    abstract int successor(int low);
+
+    /** Returns the values in sorted order, in an array of length at least {@code card}. */
+    abstract char[] values();
+
+    /** Returns the number of runs of consecutive values. */
+    abstract int runs();
+
+    /**
+     * Returns this container converted to the kind that takes the least space.
+     */
+    Container optimize() {
+      final int runs = runs();
+      final int runBytes = 4 * runs;
+      final int arrayBytes = card <= arrayMaxSize ? 2 * card : Integer.MAX_VALUE;
+      final int bitmapBytes = 8 * bitmapWords;
+      if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+        return this instanceof RunContainer ? this : new RunContainer(values(), card, runs);
+      }
+      if (arrayBytes <= bitmapBytes) {
+        return this instanceof ArrayContainer ? this : new ArrayContainer(values(), card);
+      }
+      return this instanceof BitmapContainer ? this : new BitmapContainer(values(), card);
+    }
+  }
+
+  static class ArrayContainer extends Container {
+
+    char[] content;
+
+    ArrayContainer() {
+      content = new char[4];
+    }
+
+    ArrayContainer(final char[] values, final int card) {
+      content = Arrays.copyOf(values, Math.max(4, card));
+      this.card = card;
+    }
+
+    private int indexOf(final int low) {
+      return Arrays.binarySearch(content, 0, card, (char) low);
+    }
+
+    @Override
+    boolean contains(final int low) {
+      return indexOf(low) >= 0;
+    }
+
+    @Override
+    Container add(final int low) {
+      int i = indexOf(low);
+      if (i >= 0) {
+        return this;
+      }
+      if (card == arrayMaxSize) {
+        // one more value does not fit in an array
+        final int runs = runs();
+        final Container res = 4 * runs < 8 * bitmapWords
+            ? new RunContainer(content, card, runs) : new BitmapContainer(content, card);
+        return res.add(low);
+      }
+      if (card == content.length) {
+        content = Arrays.copyOf(content, Math.min(arrayMaxSize, 2 * card));
+      }
+      i = -i - 1;
+      System.arraycopy(content, i, content, i + 1, card - i);
+      content[i] = (char) low;
+      card++;
+      return this;
+    }
+
+    @Override
+    Container remove(final int low) {
+      final int i = indexOf(low);
+      if (i >= 0) {
+        System.arraycopy(content, i + 1, content, i, card - i - 1);
+        card--;
+      }
+      return this;
+    }
+
+    @Override
+    int rank(final int low) {
+      final int i = indexOf(low);
+      return i >= 0 ? i : -i - 1;
+    }
+
+    @Override
+    int select(final int rank) {
+      return content[rank];
+    }
+
+    @Override
+    int predecessor(final int low) {
+      final int i = rank(low);
+      return i == 0 ? -1 : content[i - 1];
+    }
+
+    @Override
+    int successor(final int low) {
+      final int i = rank(low);
+      return i == card ? -1 : content[i];
+    }
+
+    @Override
+    char[] values() {
+      return content;
+    }
+
+    @Override
+    int runs() {
+      int res = card == 0 ? 0 : 1;
+      for (int i = 1; i < card; i++) {
+        if (content[i] != content[i - 1] + 1) {
+          res++;
+        }
+      }
+      return res;
+    }
+  }
+
+  static class BitmapContainer extends Container {
+
+    final long[] words = new long[bitmapWords];
+
+    BitmapContainer(final char[] values, final int card) {
+      for (int i = 0; i < card; i++) {
+        words[values[i] >>> 6] = Util.setBit(values[i] & 63, words[values[i] >>> 6]);
+      }
+      this.card = card;
+    }
+
+    @Override
+    boolean contains(final int low) {
+      return Util.bit(low & 63, words[low >>> 6]) == 1;
+    }
+
+    @Override
+    Container add(final int low) {
+      if (!contains(low)) {
+        words[low >>> 6] = Util.setBit(low & 63, words[low >>> 6]);
+        card++;
+      }
+      return this;
+    }
+
+    @Override
+    Container remove(final int low) {
+      if (contains(low)) {
+        words[low >>> 6] = Util.deleteBit(low & 63, words[low >>> 6]);
+        card--;
+        if (card <= arrayMaxSize) {
+          return new ArrayContainer(values(), card);
+        }
+      }
+      return this;
+    }
+
+    @Override
+    int rank(final int low) {
+      final int w = low >>> 6;
+      int res = 0;
+      for (int i = 0; i < w; i++) {
+        res += Long.bitCount(words[i]);
+      }
+      return res + Long.bitCount(words[w] & ((1L << (low & 63)) - 1));
+    }
+
+    @Override
+    int select(int rank) {
+      int w = 0;
+      int c;
+      while (rank >= (c = Long.bitCount(words[w]))) {
+        rank -= c;
+        w++;
+      }
+      long word = words[w];
+      for (int i = 0; i < rank; i++) {
+        word &= word - 1;
+      }
+      return w * Long.SIZE + Util.lsb(word);
+    }
+
+    @Override
+    int predecessor(final int low) {
+      int w = low >>> 6;
+      long word = words[w] & ((1L << (low & 63)) - 1);
+      while (word == 0 && w > 0) {
+        word = words[--w];
+      }
+      return word == 0 ? -1 : w * Long.SIZE + Util.msb(word);
+    }
+
+    @Override
+    int successor(final int low) {
+      int w = low >>> 6;
+      long word = words[w] & (-1L << (low & 63));
+      while (word == 0 && ++w < bitmapWords) {
+        word = words[w];
+      }
+      return word == 0 ? -1 : w * Long.SIZE + Util.lsb(word);
+    }
+
+    @Override
+    char[] values() {
+      final char[] res = new char[card];
+      int j = 0;
+      for (int w = 0; w < bitmapWords; w++) {
+        for (long word = words[w]; word != 0; word &= word - 1) {
+          res[j++] = (char) (w * Long.SIZE + Util.lsb(word));
+        }
+      }
+      return res;
+    }
+
+    @Override
+    int runs() {
+      // a run starts at every set bit whose lower neighbour is not set
+      int res = 0;
+      long carry = 0;
+      for (int w = 0; w < bitmapWords; w++) {
+        res += Long.bitCount(words[w] & ~((words[w] << 1) | carry));
+        carry = words[w] >>> 63;
+      }
+      return res;
+    }
+  }
+
+  static class RunContainer extends Container {
+
+    /** The first and last value of each run. */
+    char[] start;
+    char[] end;
+    int runs;
+
+    RunContainer(final char[] values, final int card, final int runs) {
+      start = new char[Math.max(4, runs)];
+      end = new char[Math.max(4, runs)];
+      this.card = card;
+      for (int i = 0; i < card; i++) {
+        if (i == 0 || values[i] != values[i - 1] + 1) {
+          start[this.runs++] = values[i];
+        }
+        end[this.runs - 1] = values[i];
+      }
+    }
+
+    /**
+     * Returns the last run starting at or before {@code low}, or {@code -1}.
+     */
+    private int find(final int low) {
+      int lo = 0;
+      int hi = runs;
+      while (lo < hi) {
+        final int mid = (lo + hi) >>> 1;
+        if (start[mid] <= low) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      return lo - 1;
+    }
+
+    /**
+     * Returns {@code true} if no other kind of container would be smaller.
+     */
+    private boolean fits() {
+      return 4 * runs < Math.min(2 * card, 8 * bitmapWords);
+    }
+
+    private void insertRun(final int i, final int first, final int last) {
+      if (runs == start.length) {
+        start = Arrays.copyOf(start, 2 * runs);
+        end = Arrays.copyOf(end, 2 * runs);
+      }
+      System.arraycopy(start, i, start, i + 1, runs - i);
+      System.arraycopy(end, i, end, i + 1, runs - i);
+      start[i] = (char) first;
+      end[i] = (char) last;
+      runs++;
+    }
+
+    private void removeRun(final int i) {
+      System.arraycopy(start, i + 1, start, i, runs - i - 1);
+      System.arraycopy(end, i + 1, end, i, runs - i - 1);
+      runs--;
+    }
+
+    @Override
+    boolean contains(final int low) {
+      final int i = find(low);
+      return i >= 0 && low <= end[i];
+    }
+
+    @Override
+    Container add(final int low) {
+      final int i = find(low);
+      if (i >= 0 && low <= end[i]) {
+        return this;
+      }
+      final boolean joinsLeft = i >= 0 && end[i] + 1 == low;
+      final boolean joinsRight = i + 1 < runs && start[i + 1] - 1 == low;
+      if (joinsLeft && joinsRight) {
+        end[i] = end[i + 1];
+        removeRun(i + 1);
+      } else if (joinsLeft) {
+        end[i] = (char) low;
+      } else if (joinsRight) {
+        start[i + 1] = (char) low;
+      } else {
+        insertRun(i + 1, low, low);
+      }
+      card++;
+      return fits() ? this : optimize();
+    }
+
+    @Override
+    Container remove(final int low) {
+      final int i = find(low);
+      if (i < 0 || low > end[i]) {
+        return this;
+      }
+      if (start[i] == end[i]) {
+        removeRun(i);
+      } else if (start[i] == low) {
+        start[i]++;
+      } else if (end[i] == low) {
+        end[i]--;
+      } else {
+        insertRun(i + 1, low + 1, end[i]);
+        end[i] = (char) (low - 1);
+      }
+      card--;
+      return fits() ? this : optimize();
+    }
+
+    @Override
+    int rank(final int low) {
+      int res = 0;
+      for (int i = 0; i < runs && start[i] < low; i++) {
+        res += Math.min(end[i] + 1, low) - start[i];
+      }
+      return res;
+    }
+
+    @Override
+    int select(int rank) {
+      int i = 0;
+      while (rank > end[i] - start[i]) {
+        rank -= end[i] - start[i] + 1;
+        i++;
+      }
+      return start[i] + rank;
+    }
+
+    @Override
+    int predecessor(final int low) {
+      final int i = find(low - 1);
+      return i < 0 ? -1 : Math.min(end[i], low - 1);
+    }
+
+    @Override
+    int successor(final int low) {
+      final int i = find(low);
+      if (i >= 0 && low <= end[i]) {
+        return low;
+      }
+      return i + 1 < runs ? start[i + 1] : -1;
+    }
+
+    @Override
+    char[] values() {
+      final char[] res = new char[card];
+      int j = 0;
+      for (int i = 0; i < runs; i++) {
+        for (int v = start[i]; v <= end[i]; v++) {
+          res[j++] = (char) v;
+        }
+      }
+      return res;
+    }
+
+    @Override
+    int runs() {
+      return runs;
+    }
+  }
+
+  private long[] high;
+  private Container[] container;
+
+  /**
+   * The number of keys in the containers before each container. Only the first {@code valid + 1}
+   * entries are up to date.
+   */
+  private long[] cumulative;
+  private int valid;
+  private int count;
+  private long n;
+
+  /**
+   * Constructs an empty {@code RoaringRankSelect}.
+   */
+  public RoaringRankSelect() {
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    high = new long[4];
+    container = new Container[4];
+    cumulative = new long[5];
+    valid = 0;
+    count = 0;
+    n = 0;
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  /**
+   * Converts every container to the kind that takes the least space, as run containers are only
+   * created when an array container fills up.
+   */
+  public void runOptimize() {
+    for (int i = 0; i < count; i++) {
+      container[i] = container[i].optimize();
+    }
+  }
+
+  /**
+   * Returns the number of array, bitmap and run containers, in this order.
+   * @return the number of containers of each kind
+   */
+  public int[] containerCounts() {
+    final int[] res = new int[3];
+    for (int i = 0; i < count; i++) {
+      if (container[i] instanceof ArrayContainer) {
+        res[0]++;
+      } else if (container[i] instanceof BitmapContainer) {
+        res[1]++;
+      } else {
+        res[2]++;
+      }
+    }
+    return res;
+  }
+
+  /* HELPER METHODS */
+
+  /**
+   * Returns the index of the container of the high bits {@code h}, or {@code -(i + 1)} where
+   * {@code i} is the index where it would be inserted.
+   */
+  private int find(final long h) {
+    return Arrays.binarySearch(high, 0, count, h);
+  }
+
+  /**
+   * Makes the prefix sums up to index {@code i} valid.
+   */
+  private void validate(final int i) {
+    for (; valid < i; valid++) {
+      cumulative[valid + 1] = cumulative[valid] + container[valid].card;
+    }
+  }
+
+  private void insertContainer(final int i, final long h, final Container c) {
+    if (count == high.length) {
+      high = Arrays.copyOf(high, 2 * count);
+      container = Arrays.copyOf(container, 2 * count);
+      cumulative = Arrays.copyOf(cumulative, 2 * count + 1);
+    }
+    System.arraycopy(high, i, high, i + 1, count - i);
+    System.arraycopy(container, i, container, i + 1, count - i);
+    high[i] = h;
+    container[i] = c;
+    count++;
+    valid = Math.min(valid, i);
+  }
+
+  private void removeContainer(final int i) {
+    System.arraycopy(high, i + 1, high, i, count - i - 1);
+    System.arraycopy(container, i + 1, container, i, count - i - 1);
+    count--;
+    container[count] = null;
+    valid = Math.min(valid, i);
+  }
+
+  private static long key(final long h, final int low) {
+    return h << 16 | low;
+  }
+
+  /* OPERATIONS */
+
+  @Override
+  public void insert(final long x) {
+    final long h = x >>> 16;
+    int i = find(h);
+    if (i < 0) {
+      i = -i - 1;
+      insertContainer(i, h, new ArrayContainer());
+    }
+    final int before = container[i].card;
+    container[i] = container[i].add((int) x & 0xFFFF);
+    if (container[i].card != before) {
+      n++;
+      valid = Math.min(valid, i);
+    }
+  }
+
+  @Override
+  public void delete(final long x) {
+    final int i = find(x >>> 16);
+    if (i < 0) {
+      return;
+    }
+    final int before = container[i].card;
+    container[i] = container[i].remove((int) x & 0xFFFF);
+    if (container[i].card != before) {
+      n--;
+      valid = Math.min(valid, i);
+      if (container[i].card == 0) {
+        removeContainer(i);
+      }
+    }
+  }
+
+  @Override
+  public boolean member(final long x) {
+    final int i = find(x >>> 16);
+    return i >= 0 && container[i].contains((int) x & 0xFFFF);
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final long h = x >>> 16;
+    int i = find(h);
+    if (i >= 0) {
+      final int low = container[i].predecessor((int) x & 0xFFFF);
+      if (low >= 0) {
+        return key(h, low);
+      }
+      i--;
+    } else {
+      i = -i - 2;
+    }
+    return i < 0 ? null : key(high[i], container[i].select(container[i].card - 1));
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final long h = x >>> 16;
+    int i = find(h);
+    if (i >= 0) {
+      final int low = container[i].successor((int) x & 0xFFFF);
+      if (low >= 0) {
+        return key(h, low);
+      }
+      i++;
+    } else {
+      i = -i - 1;
+    }
+    return i == count ? null : key(high[i], container[i].select(0));
+  }
+
+  @Override
+  public long rank(final long x) {
+    final int i = find(x >>> 16);
+    if (i < 0) {
+      validate(-i - 1);
+      return cumulative[-i - 1];
+    }
+    validate(i);
+    return cumulative[i] + container[i].rank((int) x & 0xFFFF);
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    // the last container with fewer than rank + 1 keys before it
+    validate(count);
+    int lo = 0;
+    int hi = count - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (cumulative[mid] <= rank) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return key(high[lo], container[lo].select((int) (rank - cumulative[lo])));
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor keeps the index of its container and its low bits, and moves with the
+   * {@code successor} and {@code predecessor} of the container, so it never touches the prefix
+   * sums.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new ContainerCursor();
+  }
+
+  private final class ContainerCursor implements LongCursor {
+
+    // the container at the cursor, -1 before the first key and count past the last one
+    private int i = -1;
+    private int low; // the low bits of the key at the cursor
+
+    @Override
+    public boolean seek(final long x) {
+      i = find(x >>> 16);
+      if (i >= 0) {
+        final int s = container[i].successor((int) x & 0xFFFF);
+        if (s >= 0) {
+          low = s;
+          return true;
+        }
+        i++;
+      } else {
+        i = -i - 1;
+      }
+      return first();
+    }
+
+    @Override
+    public boolean next() {
+      if (i >= count) {
+        i = count;
+        return false;
+      }
+      if (i >= 0) {
+        final int s = low < 0xFFFF ? container[i].successor(low + 1) : -1;
+        if (s >= 0) {
+          low = s;
+          return true;
+        }
+      }
+      i++;
+      return first();
+    }
+
+    @Override
+    public boolean prev() {
+      if (i < 0) {
+        return false;
+      }
+      if (i < count) {
+        final int p = container[i].predecessor(low);
+        if (p >= 0) {
+          low = p;
+          return true;
+        }
+      }
+      i = Math.min(i, count) - 1;
+      if (i < 0) {
+        return false;
+      }
+      low = container[i].select(container[i].card - 1);
+      return true;
+    }
+
+    @Override
+    public long current() {
+      if (i < 0 || i >= count) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return key(high[i], low);
+    }
+
+    /**
+     * Moves to the smallest key of container {@code i}, or past the last key if there is none.
+     */
+    private boolean first() {
+      if (i >= count) {
+        i = count;
+        return false;
+      }
+      low = container[i].select(0);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,253 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Union, intersection and difference of two {@code RankSelectPredecessorUpdate} sets, and their
+ * sizes.
+ *
+ * <p>Both sets are walked in ascending order by their {@code LongCursor}s, so the union and the
+ * difference of sets of {@code m} and {@code n} keys take O(m + n) cursor moves, each O(1)
+ * amortized on the sets whose cursors walk their nodes. A cursor that falls behind the other one
+ * first steps over a few keys and then finishes the skip with a single {@code seek}, so runs of
+ * keys that are only in one of the sets cost one search, and a set of {@code m} keys is
+ * intersected with one of {@code n >= m} keys with O(m) seeks. The keys of the result are produced
+ * in ascending order and built into the output set at the end, with {@code appendAll} when it is a
+ * {@code BinarySearchTrie} and with a bulk build when it is an empty {@code YFastTrie}.
+ */
+public abstract class SetOperations {
+
+  /**
+   * The number of keys stepped over before a skip is finished with a {@code seek}.
+   */
+  private static final int STEPS_BEFORE_SEEK = 4;
+
+  /**
+   * This abstract class cannot be instantiated.
+   */
+  public SetOperations(){}
+
+  /* SET OPERATIONS */
+
+  /**
+   * Returns a new set holding the keys that are in {@code a} or in {@code b}.
+   * @param a the first set
+   * @param b the second set
+   * @param supplier the constructor of the result, which must be able to hold all the keys
+   * @return the union of {@code a} and {@code b}
+   */
+  public static <T extends RankSelectPredecessorUpdate> T union(
+      final RankSelectPredecessorUpdate a, final RankSelectPredecessorUpdate b,
+      final Supplier<T> supplier) {
+    final Cursor x = new Cursor(a);
+    final Cursor y = new Cursor(b);
+    final KeyBuffer res = new KeyBuffer(a.size() + b.size());
+    while (!x.done() && !y.done()) {
+      final int c = Long.compareUnsigned(x.key, y.key);
+      if (c <= 0) {
+        res.add(x.key);
+        x.next();
+        if (c == 0) {
+          y.next();
+        }
+      } else {
+        res.add(y.key);
+        y.next();
+      }
+    }
+    for (final Cursor rest : new Cursor[] {x, y}) {
+      while (!rest.done()) {
+        res.add(rest.key);
+        rest.next();
+      }
+    }
+    return res.build(supplier);
+  }
+
+  /**
+   * Returns a new set holding the keys that are both in {@code a} and in {@code b}.
+   * @param a the first set
+   * @param b the second set
+   * @param supplier the constructor of the result, which must be able to hold all the keys
+   * @return the intersection of {@code a} and {@code b}
+   */
+  public static <T extends RankSelectPredecessorUpdate> T intersection(
+      final RankSelectPredecessorUpdate a, final RankSelectPredecessorUpdate b,
+      final Supplier<T> supplier) {
+    final KeyBuffer res = new KeyBuffer(Math.min(a.size(), b.size()));
+    intersect(a, b, res);
+    return res.build(supplier);
+  }
+
+  /**
+   * Returns a new set holding the keys that are in {@code a} but not in {@code b}.
+   * @param a the first set
+   * @param b the second set
+   * @param supplier the constructor of the result, which must be able to hold all the keys
+   * @return the difference of {@code a} and {@code b}
+   */
+  public static <T extends RankSelectPredecessorUpdate> T difference(
+      final RankSelectPredecessorUpdate a, final RankSelectPredecessorUpdate b,
+      final Supplier<T> supplier) {
+    final Cursor x = new Cursor(a);
+    final Cursor y = new Cursor(b);
+    final KeyBuffer res = new KeyBuffer(a.size());
+    while (!x.done()) {
+      if (y.seek(x.key) && y.key == x.key) {
+        x.next();
+        continue;
+      }
+      // every key of a smaller than the key under y is kept
+      while (!x.done() && (y.done() || Long.compareUnsigned(x.key, y.key) < 0)) {
+        res.add(x.key);
+        x.next();
+      }
+    }
+    return res.build(supplier);
+  }
+
+  /**
+   * Returns the number of keys that are in {@code a} or in {@code b}, without building the union.
+   * @param a the first set
+   * @param b the second set
+   * @return the size of the union of {@code a} and {@code b}
+   */
+  public static long unionSize(final RankSelectPredecessorUpdate a,
+      final RankSelectPredecessorUpdate b) {
+    return a.size() + b.size() - intersectionSize(a, b);
+  }
+
+  /**
+   * Returns the number of keys that are both in {@code a} and in {@code b}, without building the
+   * intersection.
+   * @param a the first set
+   * @param b the second set
+   * @return the size of the intersection of {@code a} and {@code b}
+   */
+  public static long intersectionSize(final RankSelectPredecessorUpdate a,
+      final RankSelectPredecessorUpdate b) {
+    return intersect(a, b, null);
+  }
+
+  /**
+   * Returns the number of keys that are in {@code a} but not in {@code b}, without building the
+   * difference.
+   * @param a the first set
+   * @param b the second set
+   * @return the size of the difference of {@code a} and {@code b}
+   */
+  public static long differenceSize(final RankSelectPredecessorUpdate a,
+      final RankSelectPredecessorUpdate b) {
+    return a.size() - intersectionSize(a, b);
+  }
+
+  /* Helper methods */
+
+  /**
+   * Walks the common keys of {@code a} and {@code b}, adding them to {@code res} unless it is
+   * {@code null}. The cursor behind skips to the key of the other one, so runs of keys that are
+   * only in one of the sets cost a single skip.
+   * @return the number of common keys
+   */
+  private static long intersect(final RankSelectPredecessorUpdate a,
+      final RankSelectPredecessorUpdate b, final KeyBuffer res) {
+    final Cursor x = new Cursor(a);
+    final Cursor y = new Cursor(b);
+    long count = 0;
+    while (!x.done() && !y.done()) {
+      final int c = Long.compareUnsigned(x.key, y.key);
+      if (c == 0) {
+        if (res != null) {
+          res.add(x.key);
+        }
+        count++;
+        x.next();
+        y.next();
+      } else if (c < 0) {
+        x.seek(y.key);
+      } else {
+        y.seek(x.key);
+      }
+    }
+    return count;
+  }
+
+  /**
+   * A position in a set, walking its keys in ascending order.
+   */
+  private static final class Cursor {
+
+    private final LongCursor cursor;
+    private boolean done;
+    private long key;
+
+    private Cursor(final RankSelectPredecessorUpdate set) {
+      cursor = set.cursor();
+      next();
+    }
+
+    private boolean done() {
+      return done;
+    }
+
+    private void next() {
+      done = !cursor.next();
+      if (!done) {
+        key = cursor.current();
+      }
+    }
+
+    /**
+     * Moves forward to the smallest key larger than or equal to {@code x}.
+     * @return {@code true} if there is such a key, and {@code false} if the cursor ran out of keys
+     */
+    private boolean seek(final long x) {
+      for (int step = 0; !done && Long.compareUnsigned(key, x) < 0; step++) {
+        if (step == STEPS_BEFORE_SEEK) {
+          done = !cursor.seek(x);
+          if (!done) {
+            key = cursor.current();
+          }
+          return !done;
+        }
+        next();
+      }
+      return !done;
+    }
+  }
+
+  /**
+   * The keys of a result, in ascending order.
+   */
+  private static final class KeyBuffer {
+
+    private long[] keys;
+    private int n;
+
+    private KeyBuffer(final long capacity) {
+      keys = new long[(int) Math.min(Math.max(capacity, 1), 1 << 16)];
+    }
+
+    private void add(final long x) {
+      if (n == keys.length) {
+        keys = Arrays.copyOf(keys, 2 * n);
+      }
+      keys[n++] = x;
+    }
+
+    private <T extends RankSelectPredecessorUpdate> T build(final Supplier<T> supplier) {
+      final T res = supplier.get();
+      if (res instanceof BinarySearchTrie) {
+        ((BinarySearchTrie) res).appendAll(Arrays.copyOf(keys, n));
+      } else if (res instanceof YFastTrie && res.isEmpty() && n > 0) {
+        ((YFastTrie) res).build(Arrays.copyOf(keys, n));
+      } else {
+        for (int i = 0; i < n; i++) {
+          res.insert(keys[i]);
+        }
+      }
+      return res;
+    }
+  }
+}
@@ -0,0 +1,239 @@
+package integersets;
+
+/**
+ * Implementation of the static {@code StaticFusionTree} data structure, following the classic
+ * Fredman and Willard fusion tree described in Section 2.2.6 of the report. The tree is built
+ * once from a sorted array of keys and answers queries in O(log_w n) time. Updates are not
+ * supported.
+ *
+ * <p>The nodes are stored level by level in flat primitive arrays, the leaves first. Every node
+ * holds up to {@code k} keys in {@code nodeKey}, the compressing key of its significant positions
+ * and the sketches of its keys packed in a single word, so that a node is ranked with
+ * {@link Util#rankLemma1(long, long, int, int)}. The keys of an internal node are the largest
+ * keys of each of its children, and the keys of the leaves are the set itself.
+ */
+public class StaticFusionTree implements RankSelectPredecessorUpdate {
+
+  private static final int k = 8;
+  private final int n;
+  private final int height;
+
+  /**
+   * The keys of all the nodes, {@code k} positions per node. The first {@code n} positions hold
+   * the set in sorted order.
+   */
+  private final long[] nodeKey;
+
+  /**
+   * The significant positions of each node.
+   */
+  private final long[] compressingKey;
+
+  /**
+   * The sketches of the keys of each node, stored as fields of {@code k} bits.
+   */
+  private final long[] sketch;
+
+  /**
+   * The index of the first node of each level and the number of keys stored in each level.
+   */
+  private final int[] levelOffset;
+  private final int[] levelSize;
+
+  /**
+   * Constructs a {@code StaticFusionTree} holding the provided keys.
+   * @param keys the keys of the set, distinct and in unsigned sorted order
+   */
+  public StaticFusionTree(final long[] keys) {
+    for (int i = 1; i < keys.length; i++) {
+      if (Long.compareUnsigned(keys[i - 1], keys[i]) >= 0) {
+        throw new IllegalArgumentException("Keys must be distinct and sorted.");
+      }
+    }
+
+    n = keys.length;
+
+    int levels = 0;
+    int items = n;
+    do {
+      levels++;
+      items = (items + k - 1) / k;
+    } while (items > 1);
+    height = n == 0 ? 0 : levels;
+
+    levelOffset = new int[height];
+    levelSize = new int[height];
+    int nodes = 0;
+    items = n;
+    for (int l = 0; l < height; l++) {
+      levelOffset[l] = nodes;
+      levelSize[l] = items;
+      items = (items + k - 1) / k;
+      nodes += items;
+    }
+
+    nodeKey = new long[nodes * k];
+    compressingKey = new long[nodes];
+    sketch = new long[nodes];
+
+    System.arraycopy(keys, 0, nodeKey, 0, n);
+    for (int l = 1; l < height; l++) {
+      for (int c = 0; c < levelSize[l]; c++) {
+        // the largest key below child c of level l
+        final int child = levelOffset[l - 1] + c;
+        final int childSize = Math.min(k, levelSize[l - 1] - c * k);
+        nodeKey[levelOffset[l] * k + c] = nodeKey[child * k + childSize - 1];
+      }
+    }
+
+    for (int l = 0; l < height; l++) {
+      final int levelNodes = (levelSize[l] + k - 1) / k;
+      for (int p = 0; p < levelNodes; p++) {
+        preprocess(levelOffset[l] + p, Math.min(k, levelSize[l] - p * k));
+      }
+    }
+  }
+
+  @Override
+  public void insert(final long x) {
+    throw new UnsupportedOperationException("StaticFusionTree is read-only.");
+  }
+
+  @Override
+  public void delete(final long x) {
+    throw new UnsupportedOperationException("StaticFusionTree is read-only.");
+  }
+
+  @Override
+  public long rank(final long x) {
+    int p = 0;
+    for (int l = height - 1; l >= 0; l--) {
+      final int m = Math.min(k, levelSize[l] - p * k);
+      final int c = rank(levelOffset[l] + p, m, x);
+      if (c == m) { // only happens at the root, when x is larger than all keys
+        return n;
+      }
+      p = p * k + c;
+    }
+    return p;
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    return nodeKey[(int) rank];
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  @Override
+  public void reset() {
+    throw new UnsupportedOperationException("StaticFusionTree is read-only.");
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>The leaves hold the keys in sorted order in the first {@code n} positions of
+   * {@code nodeKey}, so the cursor walks them by rank and every move takes O(1) time.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new RankCursor() {
+      @Override
+      long size() {
+        return n;
+      }
+
+      @Override
+      long rankOf(final long x) {
+        return rank(x);
+      }
+
+      @Override
+      long keyAt(final long rank) {
+        return nodeKey[(int) rank];
+      }
+    };
+  }
+
+  /**
+   * Returns the number of levels of the tree.
+   * @return the height of the tree
+   */
+  public int height() {
+    return height;
+  }
+
+  /**
+   * Pre-processing phase of a node: computes its significant positions and the sketches of its
+   * keys. For sorted keys, the significant positions are the most significant differing bits of
+   * consecutive keys.
+   *
+   * @param node the index of the node
+   * @param m the number of keys in the node
+   */
+  private void preprocess(final int node, final int m) {
+    final int base = node * k;
+    long mask = 0L;
+    for (int i = 0; i < m - 1; i++) {
+      mask = Util.setBit(Util.msb(nodeKey[base + i] ^ nodeKey[base + i + 1]), mask);
+    }
+    compressingKey[node] = mask;
+
+    long sketches = 0L;
+    for (int i = 0; i < m; i++) {
+      sketches = Util.setField(i, Util.compress(nodeKey[base + i], mask), k, sketches);
+    }
+    sketch[node] = sketches;
+  }
+
+  /**
+   * Returns the number of keys in {@code node} that are strictly smaller than {@code x}.
+   * First the sketch of {@code x} is ranked among the sketches of the node. One of its neighbours,
+   * {@code y}, shares the longest common prefix with {@code x}. The query is then repeated with
+   * {@code x} masked below the most significant differing bit {@code j} of {@code x} and
+   * {@code y}, which is ranked correctly by its sketch.
+   *
+   * @param node the index of the node
+   * @param m the number of keys in the node
+   * @param x the query
+   * @return the rank of {@code x} in the node
+   */
+  private int rank(final int node, final int m, final long x) {
+    final int base = node * k;
+    final long mask = compressingKey[node];
+    final long sketches = sketch[node];
+
+    final int i = Util.rankLemma1(Util.compress(x, mask), sketches, m, k);
+
+    int yi;
+    if (i == 0) {
+      yi = 0;
+    } else if (i == m) {
+      yi = m - 1;
+    } else if (Long.compareUnsigned(x ^ nodeKey[base + i - 1], x ^ nodeKey[base + i]) < 0) {
+      yi = i - 1;
+    } else {
+      yi = i;
+    }
+
+    final long y = nodeKey[base + yi];
+    if (x == y) {
+      return yi;
+    }
+
+    final int j = Util.msb(x ^ y);
+    if (Util.bit(j, x) == 0) {
+      // x < y: all keys sharing x's prefix above j are larger than x
+      return Util.rankLemma1(Util.compress(x & ~((1L << j) - 1), mask), sketches, m, k);
+    }
+    // x > y: all keys sharing x's prefix above j are smaller than x
+    return Util.rankLemma1(Util.compress(x | ((1L << j) - 1), mask) + 1, sketches, m, k);
+  }
+}
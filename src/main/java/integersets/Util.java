@@ -1105,6 +1105,29 @@ public abstract class Util {
     }
   }
 
+  /* SKETCHES */
+
+  /**
+   * Compresses {@code x}, keeping only the bits at the positions set in {@code compressingKey}.
+   * The kept bits are packed in the least significant positions of the result, preserving their
+   * relative order. This is the sketch used by the fusion node variants.
+   *
+   * @param x The key to be compressed.
+   * @param compressingKey The word whose set bits mark the significant positions.
+   * @return {@code x} after the compression.
+   */
+  public static long compress(final long x, final long compressingKey) {
+    long res = 0L;
+    long compressingKeyCopy = compressingKey;
+    while (compressingKeyCopy != 0) {
+      res <<= 1;
+      final int bit = msb(compressingKeyCopy);
+      res |= bit(bit, x);
+      compressingKeyCopy = deleteBit(bit, compressingKeyCopy);
+    }
+    return res;
+  }
+
   /* ADDITIONAL HELPER FUNCTIONS */
 
   /**
@@ -0,0 +1,677 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Implementation of the {@code XFastTrie} data structure, related to the van Emde Boas trees
+ * described in Section 2.2.5 of the report.
+ *
+ * <p>Every prefix of every key is stored in the table of its length, so the longest prefix of a
+ * query shared with the set is found by binary search over the {@code w} levels with O(lg w)
+ * probes, instead of the {@code w} pointer hops of the {@code BinarySearchTrie}. An internal node
+ * with a single child keeps a descendant pointer to the largest (only left child) or smallest
+ * (only right child) leaf below it, and the leaves form a doubly linked list, which gives
+ * predecessor and successor from the node found by the binary search. The tables are open
+ * addressing tables of primitive {@code long} keys.
+ *
+ * <p>Each leaf carries a weight and a value. The nodes keep the sum of the weights below them and
+ * below their left child, so that weighted rank and select are answered with one walk down the
+ * levels, in O(w) probes. Used as a set, every leaf weighs one. The {@code YFastTrie} stores its
+ * bucket representatives here, weighted by the bucket sizes, with the position of the bucket as
+ * value. Used as a map, the value of the leaf is the value of the key.
+ *
+ * <p>Several package-private methods address leaves by their slot in the leaf table. A slot is
+ * only valid until the next update.
+ */
+public class XFastTrie implements RankSelectPredecessorMap {
+
+  /**
+   * Word size.
+   */
+  private static final int w = Long.SIZE;
+
+  /* Fields of the entries in the tables of internal nodes. */
+  private static final int DESC = 0;
+  private static final int COUNT = 1;
+  private static final int LEFT_COUNT = 2;
+  private static final int NODE_WIDTH = 3;
+
+  /* Fields of the entries in the table of leaves. */
+  private static final int PREV = 0;
+  private static final int NEXT = 1;
+  private static final int WEIGHT = 2;
+  private static final int VALUE = 3;
+  private static final int LEAF_WIDTH = 4;
+
+  /* Child bits kept in the state of the internal nodes. */
+  private static final byte LEFT = 1;
+  private static final byte RIGHT = 2;
+  private static final byte BOTH = 3;
+
+  /**
+   * Open addressing table keyed by a {@code long}, using linear probing and backward shift
+   * deletion. Each entry holds a non-zero state byte and {@code width} consecutive {@code long}
+   * fields in {@code data}. Nothing is boxed.
+   */
+  static class LevelTable {
+
+    private static final long PHI = 0x9E3779B97F4A7C15L; // Fibonacci hashing constant
+    private final int width;
+    private int bits;
+    private int mask;
+    private int size;
+    long[] key;
+    byte[] state;
+    long[] data;
+
+    LevelTable(final int width) {
+      this.width = width;
+      allocate(2);
+    }
+
+    private void allocate(final int bits) {
+      this.bits = bits;
+      mask = (1 << bits) - 1;
+      key = new long[1 << bits];
+      state = new byte[1 << bits];
+      data = new long[(1 << bits) * width];
+    }
+
+    private int hash(final long k) {
+      return (int) ((k * PHI) >>> (w - bits));
+    }
+
+    /**
+     * Returns the slot of {@code k}, or {@code -1} if it is not in the table.
+     * @param k the key
+     * @return the slot holding {@code k}
+     */
+    int find(final long k) {
+      int i = hash(k);
+      while (state[i] != 0) {
+        if (key[i] == k) {
+          return i;
+        }
+        i = (i + 1) & mask;
+      }
+      return -1;
+    }
+
+    /**
+     * Adds {@code k}, which must not be in the table, and returns its slot. The fields of the new
+     * entry are zero.
+     * @param k the key
+     * @param s the state of the new entry, which must not be zero
+     * @return the slot holding {@code k}
+     */
+    int add(final long k, final byte s) {
+      if (2 * (size + 1) > key.length) {
+        grow();
+      }
+      int i = hash(k);
+      while (state[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      key[i] = k;
+      state[i] = s;
+      Arrays.fill(data, i * width, (i + 1) * width, 0L);
+      size++;
+      return i;
+    }
+
+    /**
+     * Removes the entry in {@code slot}, shifting back the entries of its probe sequence.
+     * @param slot the slot to be emptied
+     */
+    void remove(int slot) {
+      state[slot] = 0;
+      size--;
+      int j = slot;
+      while (true) {
+        j = (j + 1) & mask;
+        if (state[j] == 0) {
+          return;
+        }
+        final int h = hash(key[j]);
+        if (((j - h) & mask) >= ((j - slot) & mask)) {
+          key[slot] = key[j];
+          state[slot] = state[j];
+          System.arraycopy(data, j * width, data, slot * width, width);
+          state[j] = 0;
+          slot = j;
+        }
+      }
+    }
+
+    private void grow() {
+      final long[] oldKey = key;
+      final byte[] oldState = state;
+      final long[] oldData = data;
+      allocate(bits + 1);
+      size = 0;
+      for (int i = 0; i < oldKey.length; i++) {
+        if (oldState[i] != 0) {
+          final int slot = add(oldKey[i], oldState[i]);
+          System.arraycopy(oldData, i * width, data, slot * width, width);
+        }
+      }
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  private final LevelTable[] level = new LevelTable[w];
+  private LevelTable leaves;
+  private long min;
+  private long max;
+  private long totalWeight;
+
+  /**
+   * Constructs an empty {@code XFastTrie}.
+   */
+  public XFastTrie() {
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    for (int l = 0; l < w; l++) {
+      level[l] = new LevelTable(NODE_WIDTH);
+    }
+    leaves = new LevelTable(LEAF_WIDTH);
+    totalWeight = 0;
+  }
+
+  @Override
+  public long size() {
+    return leaves.size();
+  }
+
+  /**
+   * Returns the sum of the weights of all leaves.
+   * @return the total weight
+   */
+  long weight() {
+    return totalWeight;
+  }
+
+  /**
+   * Returns the prefix of length {@code l} of {@code x}.
+   */
+  private static long prefix(final long x, final int l) {
+    return l == 0 ? 0L : x >>> (w - l);
+  }
+
+  /**
+   * Returns the child of the node of length {@code l} on the path of {@code x}.
+   */
+  private static byte child(final long x, final int l) {
+    return Util.bit(w - 1 - l, x) == 0 ? LEFT : RIGHT;
+  }
+
+  @Override
+  public void insert(final long x) {
+    insert(x, 1, 0);
+  }
+
+  @Override
+  public void put(final long x, final long value) {
+    final int leaf = leaves.find(x);
+    if (leaf >= 0) {
+      leaves.data[leaf * LEAF_WIDTH + VALUE] = value;
+    } else {
+      insert(x, 1, value);
+    }
+  }
+
+  /**
+   * Inserts {@code x} with the given weight and value, if it is not a member.
+   * @param x the key
+   * @param weight the weight of the leaf
+   * @param value the value of the leaf
+   */
+  void insert(final long x, final long weight, final long value) {
+    if (leaves.find(x) >= 0) {
+      return;
+    }
+
+    final int p = lower(x);
+    final int s = ceiling(x);
+    final long prevKey = p < 0 ? x : leaves.key[p];
+    final long nextKey = s < 0 ? x : leaves.key[s];
+
+    final int leaf = leaves.add(x, (byte) 1);
+    leaves.data[leaf * LEAF_WIDTH + PREV] = prevKey;
+    leaves.data[leaf * LEAF_WIDTH + NEXT] = nextKey;
+    leaves.data[leaf * LEAF_WIDTH + WEIGHT] = weight;
+    leaves.data[leaf * LEAF_WIDTH + VALUE] = value;
+
+    if (p < 0) {
+      min = x;
+    } else {
+      leaves.data[leaves.find(prevKey) * LEAF_WIDTH + NEXT] = x;
+    }
+    if (s < 0) {
+      max = x;
+    } else {
+      leaves.data[leaves.find(nextKey) * LEAF_WIDTH + PREV] = x;
+    }
+
+    for (int l = 0; l < w; l++) {
+      final LevelTable t = level[l];
+      final byte c = child(x, l);
+      int node = t.find(prefix(x, l));
+      if (node < 0) {
+        node = t.add(prefix(x, l), c);
+        t.data[node * NODE_WIDTH + DESC] = x;
+      } else if ((t.state[node] | c) != t.state[node]) {
+        t.state[node] |= c; // the node now has both children
+      } else if (t.state[node] == LEFT) {
+        if (Long.compareUnsigned(x, t.data[node * NODE_WIDTH + DESC]) > 0) {
+          t.data[node * NODE_WIDTH + DESC] = x;
+        }
+      } else if (t.state[node] == RIGHT) {
+        if (Long.compareUnsigned(x, t.data[node * NODE_WIDTH + DESC]) < 0) {
+          t.data[node * NODE_WIDTH + DESC] = x;
+        }
+      }
+      t.data[node * NODE_WIDTH + COUNT] += weight;
+      if (c == LEFT) {
+        t.data[node * NODE_WIDTH + LEFT_COUNT] += weight;
+      }
+    }
+
+    totalWeight += weight;
+  }
+
+  @Override
+  public void delete(final long x) {
+    final int leaf = leaves.find(x);
+    if (leaf < 0) {
+      return;
+    }
+
+    final boolean hasPrev = x != min;
+    final boolean hasNext = x != max;
+    final long prevKey = leaves.data[leaf * LEAF_WIDTH + PREV];
+    final long nextKey = leaves.data[leaf * LEAF_WIDTH + NEXT];
+    final long weight = leaves.data[leaf * LEAF_WIDTH + WEIGHT];
+    leaves.remove(leaf);
+
+    if (hasPrev) {
+      leaves.data[leaves.find(prevKey) * LEAF_WIDTH + NEXT] = hasNext ? nextKey : prevKey;
+    } else {
+      min = nextKey;
+    }
+    if (hasNext) {
+      leaves.data[leaves.find(nextKey) * LEAF_WIDTH + PREV] = hasPrev ? prevKey : nextKey;
+    } else {
+      max = prevKey;
+    }
+
+    // Walking up, a child is removed while it has no leaves left. The first node that keeps a
+    // child, and every node pointing at x, gets the neighbour of x on that side as descendant.
+    boolean removed = true;
+    for (int l = w - 1; l >= 0; l--) {
+      final LevelTable t = level[l];
+      final byte c = child(x, l);
+      final int node = t.find(prefix(x, l));
+      if (removed) {
+        t.state[node] &= ~c;
+        if (t.state[node] == 0) {
+          t.remove(node);
+          continue;
+        }
+        removed = false;
+        t.data[node * NODE_WIDTH + DESC] = t.state[node] == LEFT ? prevKey : nextKey;
+      } else if (t.state[node] != BOTH && t.data[node * NODE_WIDTH + DESC] == x) {
+        t.data[node * NODE_WIDTH + DESC] = t.state[node] == LEFT ? prevKey : nextKey;
+      }
+      t.data[node * NODE_WIDTH + COUNT] -= weight;
+      if (c == LEFT) {
+        t.data[node * NODE_WIDTH + LEFT_COUNT] -= weight;
+      }
+    }
+
+    totalWeight -= weight;
+  }
+
+  /**
+   * Adds {@code delta} to the weight of the leaf {@code x}, which must be a member.
+   * @param x the key
+   * @param delta the change in weight
+   */
+  void addWeight(final long x, final long delta) {
+    leaves.data[leaves.find(x) * LEAF_WIDTH + WEIGHT] += delta;
+    for (int l = 0; l < w; l++) {
+      final LevelTable t = level[l];
+      final int node = t.find(prefix(x, l));
+      t.data[node * NODE_WIDTH + COUNT] += delta;
+      if (child(x, l) == LEFT) {
+        t.data[node * NODE_WIDTH + LEFT_COUNT] += delta;
+      }
+    }
+    totalWeight += delta;
+  }
+
+  /**
+   * Returns the length of the longest prefix of {@code x} stored in the trie, found by binary
+   * search over the levels. The trie must not be empty and {@code x} must not be a leaf.
+   */
+  private int longestPrefix(final long x) {
+    int lo = 0;
+    int hi = w - 1;
+    while (lo < hi) {
+      final int mid = (lo + hi + 1) >>> 1;
+      if (level[mid].find(prefix(x, mid)) >= 0) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return lo;
+  }
+
+  /**
+   * Returns the descendant pointer of the deepest node on the path of {@code x}, which has a
+   * single child. The trie must not be empty and {@code x} must not be a leaf.
+   */
+  private long descendant(final int l, final long x) {
+    return level[l].data[level[l].find(prefix(x, l)) * NODE_WIDTH + DESC];
+  }
+
+  /**
+   * Returns the slot of the leaf {@code x}, or {@code -1} if it is not a member.
+   * @param x the key
+   * @return the slot of the leaf
+   */
+  int find(final long x) {
+    return leaves.find(x);
+  }
+
+  /**
+   * Returns the slot of the smallest leaf larger than or equal to {@code x}, or {@code -1}.
+   * @param x the query
+   * @return the slot of the leaf
+   */
+  int ceiling(final long x) {
+    if (size() == 0) {
+      return -1;
+    }
+    final int leaf = leaves.find(x);
+    if (leaf >= 0) {
+      return leaf;
+    }
+    final int l = longestPrefix(x);
+    final int desc = leaves.find(descendant(l, x));
+    if (child(x, l) == LEFT) { // the node has only a right child, desc is its smallest leaf
+      return desc;
+    }
+    return next(desc); // the node has only a left child, desc is its largest leaf
+  }
+
+  /**
+   * Returns the slot of the largest leaf strictly smaller than {@code x}, or {@code -1}.
+   * @param x the query
+   * @return the slot of the leaf
+   */
+  int lower(final long x) {
+    if (size() == 0) {
+      return -1;
+    }
+    final int leaf = leaves.find(x);
+    if (leaf >= 0) {
+      return prev(leaf);
+    }
+    final int l = longestPrefix(x);
+    final int desc = leaves.find(descendant(l, x));
+    if (child(x, l) == LEFT) {
+      return prev(desc);
+    }
+    return desc;
+  }
+
+  /**
+   * Returns the slot of the largest leaf smaller than or equal to {@code x}, or {@code -1}.
+   * @param x the query
+   * @return the slot of the leaf
+   */
+  int floor(final long x) {
+    final int leaf = leaves.find(x);
+    if (leaf >= 0) {
+      return leaf;
+    }
+    return lower(x);
+  }
+
+  /**
+   * Returns the slot of the leaf following the leaf in {@code slot}, or {@code -1}.
+   * @param slot the slot of a leaf
+   * @return the slot of the next leaf
+   */
+  int next(final int slot) {
+    if (leaves.key[slot] == max) {
+      return -1;
+    }
+    return leaves.find(leaves.data[slot * LEAF_WIDTH + NEXT]);
+  }
+
+  /**
+   * Returns the slot of the leaf preceding the leaf in {@code slot}, or {@code -1}.
+   * @param slot the slot of a leaf
+   * @return the slot of the previous leaf
+   */
+  int prev(final int slot) {
+    if (leaves.key[slot] == min) {
+      return -1;
+    }
+    return leaves.find(leaves.data[slot * LEAF_WIDTH + PREV]);
+  }
+
+  long key(final int slot) {
+    return leaves.key[slot];
+  }
+
+  long value(final int slot) {
+    return leaves.data[slot * LEAF_WIDTH + VALUE];
+  }
+
+  long weight(final int slot) {
+    return leaves.data[slot * LEAF_WIDTH + WEIGHT];
+  }
+
+  @Override
+  public boolean member(final long x) {
+    return leaves.find(x) >= 0;
+  }
+
+  @Override
+  public Long get(final long x) {
+    final int leaf = leaves.find(x);
+    return leaf < 0 ? null : value(leaf);
+  }
+
+  @Override
+  public Long predecessorValue(final long x) {
+    final int leaf = lower(x);
+    return leaf < 0 ? null : value(leaf);
+  }
+
+  @Override
+  public boolean predecessorEntry(final long x, final long[] entry) {
+    final int leaf = lower(x);
+    if (leaf < 0) {
+      return false;
+    }
+    entry[0] = leaves.key[leaf];
+    entry[1] = value(leaf);
+    return true;
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final int leaf = lower(x);
+    if (leaf < 0) {
+      return null;
+    }
+    return leaves.key[leaf];
+  }
+
+  @Override
+  public Long peekFirst() {
+    return size() == 0 ? null : min;
+  }
+
+  @Override
+  public Long peekLast() {
+    return size() == 0 ? null : max;
+  }
+
+  @Override
+  public Long pollFirst() {
+    if (size() == 0) {
+      return null;
+    }
+    final long res = min;
+    delete(res);
+    return res;
+  }
+
+  @Override
+  public Long pollLast() {
+    if (size() == 0) {
+      return null;
+    }
+    final long res = max;
+    delete(res);
+    return res;
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final int leaf = ceiling(x);
+    if (leaf < 0) {
+      return null;
+    }
+    return leaves.key[leaf];
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor follows the links between the leaves, so every move is a lookup in the table of
+   * leaves.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new LeafCursor();
+  }
+
+  private final class LeafCursor implements LongCursor {
+
+    private int slot = -1; // the slot of the leaf at the cursor, or -1 off the keys
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      slot = ceiling(x);
+      after = true;
+      return slot >= 0;
+    }
+
+    @Override
+    public boolean next() {
+      if (slot >= 0) {
+        slot = XFastTrie.this.next(slot);
+      } else if (!after && size() > 0) {
+        slot = leaves.find(min);
+      }
+      after = true;
+      return slot >= 0;
+    }
+
+    @Override
+    public boolean prev() {
+      if (slot >= 0) {
+        slot = XFastTrie.this.prev(slot);
+      } else if (after && size() > 0) {
+        slot = leaves.find(max);
+      }
+      after = false;
+      return slot >= 0;
+    }
+
+    @Override
+    public long current() {
+      if (slot < 0) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return leaves.key[slot];
+    }
+  }
+
+  /**
+   * Returns the sum of the weights of the leaves strictly smaller than {@code x}. Used as a set,
+   * this is the rank of {@code x}.
+   * @param x the query
+   * @return the weighted rank of {@code x}
+   */
+  @Override
+  public long rank(final long x) {
+    long res = 0;
+    for (int l = 0; l < w; l++) {
+      final LevelTable t = level[l];
+      final int node = t.find(prefix(x, l));
+      if (node < 0) {
+        break;
+      }
+      if (child(x, l) == RIGHT) {
+        res += t.data[node * NODE_WIDTH + LEFT_COUNT];
+      }
+    }
+    return res;
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= weight()) {
+      return null;
+    }
+
+    return selectKey(rank);
+  }
+
+  @Override
+  public Long valueAt(final long rank) {
+    if (rank < 0 || rank >= weight()) {
+      return null;
+    }
+
+    return value(leaves.find(selectKey(rank)));
+  }
+
+  /**
+   * Returns the key of the leaf whose weights cover {@code rank}, that is, the leaf {@code y}
+   * with {@code rank(y) <= rank < rank(y) + weight(y)}. Requires
+   * {@code 0 <= rank < weight()}.
+   * @param rank the weighted rank
+   * @return the key of the leaf
+   */
+  long selectKey(long rank) {
+    long p = 0L;
+    for (int l = 0; l < w; l++) {
+      final LevelTable t = level[l];
+      final int node = t.find(p);
+      final long left = t.data[node * NODE_WIDTH + LEFT_COUNT];
+      if (rank < left || t.state[node] == LEFT) {
+        p <<= 1;
+      } else {
+        rank -= left;
+        p = (p << 1) | 1;
+      }
+    }
+    return p;
+  }
+}
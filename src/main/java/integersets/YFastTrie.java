@@ -0,0 +1,420 @@
+package integersets;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Implementation of the {@code YFastTrie} data structure, the linear space variant of the
+ * {@code XFastTrie} related to the van Emde Boas trees described in Section 2.2.5 of the report.
+ *
+ * <p>The keys are partitioned in buckets of consecutive keys, each one a small
+ * {@code RankSelectPredecessorUpdate}, by default a {@code DynamicFusionNodeBinaryRank}. Every
+ * bucket has a representative, which is smaller than or equal to all of its keys and larger than
+ * all the keys of the preceding bucket. The representatives are kept in an {@code XFastTrie},
+ * weighted by the size of their buckets, so the bucket of a query is found in O(lg w) time and
+ * the rank of a query is the weighted rank of its representative plus its rank in the bucket.
+ *
+ * <p>The first bucket is represented by {@code 0}, so every key has a representative. A full
+ * bucket is split in two halves and a bucket with less than a quarter of its capacity is merged
+ * with, or takes keys from, a neighbour. Only the first bucket may be empty, and only when the set
+ * is empty.
+ */
+public class YFastTrie implements RankSelectPredecessorUpdate {
+
+  private final Supplier<RankSelectPredecessorUpdate> bucketSupplier;
+  private final int capacity;
+  private final XFastTrie top = new XFastTrie();
+  private RankSelectPredecessorUpdate[] bucket;
+  private int[] freeSlots;
+  private int freeCount;
+  private int slots;
+  private long n;
+
+  /**
+   * Constructs an empty {@code YFastTrie} using {@code DynamicFusionNodeBinaryRank} buckets with
+   * capacity for 16 elements.
+   */
+  public YFastTrie() {
+    this(DynamicFusionNodeBinaryRank::new, 16);
+  }
+
+  /**
+   * Constructs an empty {@code YFastTrie} whose buckets are produced by {@code bucketSupplier}.
+   * @param bucketSupplier produces empty buckets
+   * @param capacity the capacity of the buckets produced, at least 4
+   */
+  public YFastTrie(final Supplier<RankSelectPredecessorUpdate> bucketSupplier,
+      final int capacity) {
+    if (capacity < 4) {
+      throw new IllegalArgumentException("The capacity of the buckets must be at least 4.");
+    }
+    this.bucketSupplier = bucketSupplier;
+    this.capacity = capacity;
+    reset();
+  }
+
+  @Override
+  public void reset() {
+    top.reset();
+    bucket = new RankSelectPredecessorUpdate[16];
+    freeSlots = new int[16];
+    freeCount = 0;
+    slots = 0;
+    n = 0;
+    top.insert(0L, 0, newBucket());
+  }
+
+  @Override
+  public void insert(final long x) {
+    long rep = top.key(top.floor(x));
+    RankSelectPredecessorUpdate b = bucketOf(rep);
+    if (b.member(x)) {
+      return;
+    }
+
+    if (b.size() == capacity) {
+      final long newRep = split(rep, b);
+      if (Long.compareUnsigned(x, newRep) >= 0) {
+        rep = newRep;
+        b = bucketOf(rep);
+      }
+    }
+
+    b.insert(x);
+    top.addWeight(rep, 1);
+    n++;
+  }
+
+  @Override
+  public void delete(final long x) {
+    final long rep = top.key(top.floor(x));
+    final RankSelectPredecessorUpdate b = bucketOf(rep);
+    if (!b.member(x)) {
+      return;
+    }
+
+    b.delete(x);
+    top.addWeight(rep, -1);
+    n--;
+
+    if (b.size() < capacity / 4) {
+      rebalance(rep, b);
+    }
+  }
+
+  @Override
+  public boolean member(final long x) {
+    return bucketOf(top.key(top.floor(x))).member(x);
+  }
+
+  @Override
+  public Long predecessor(final long x) {
+    final int leaf = top.floor(x);
+    final Long res = bucket(leaf).predecessor(x);
+    if (res != null) {
+      return res;
+    }
+    final int prev = top.prev(leaf);
+    if (prev < 0) {
+      return null;
+    }
+    final RankSelectPredecessorUpdate b = bucket(prev);
+    return b.select(b.size() - 1);
+  }
+
+  @Override
+  public Long successor(final long x) {
+    final int leaf = top.floor(x);
+    final Long res = bucket(leaf).successor(x);
+    if (res != null) {
+      return res;
+    }
+    final int next = top.next(leaf);
+    if (next < 0) {
+      return null;
+    }
+    return bucket(next).select(0);
+  }
+
+  @Override
+  public long rank(final long x) {
+    final long rep = top.key(top.floor(x));
+    return top.rank(rep) + bucketOf(rep).rank(x);
+  }
+
+  @Override
+  public Long select(final long rank) {
+    if (rank < 0 || rank >= size()) {
+      return null;
+    }
+
+    final long rep = top.selectKey(rank);
+    return bucketOf(rep).select(rank - top.rank(rep));
+  }
+
+  @Override
+  public long size() {
+    return n;
+  }
+
+  /**
+   * Returns the number of buckets currently in use.
+   * @return the number of buckets
+   */
+  public long buckets() {
+    return top.size();
+  }
+
+  /**
+   * Replaces the keys of this trie with {@code keys}, which must be distinct and in ascending
+   * unsigned order. The keys are shared out evenly among as few buckets as keep each at most half
+   * full, so each is also at least a quarter full unless there is a single bucket, and a bucket
+   * can take as many inserts as it holds keys before it splits. The buckets are filled in parallel
+   * in the common {@code ForkJoinPool}; the representatives are then inserted in the top level in
+   * order.
+   * @param keys the keys, distinct and in ascending unsigned order
+   */
+  void build(final long[] keys) {
+    reset();
+    final int count = Math.max(1, (keys.length + capacity / 2 - 1) / (capacity / 2));
+    final RankSelectPredecessorUpdate[] filled = new RankSelectPredecessorUpdate[count];
+    IntStream.range(0, count).parallel().forEach(i -> {
+      final RankSelectPredecessorUpdate b = bucketSupplier.get();
+      for (int j = start(keys, count, i); j < start(keys, count, i + 1); j++) {
+        b.insert(keys[j]);
+      }
+      filled[i] = b;
+    });
+
+    bucket = Arrays.copyOf(filled, Math.max(16, count));
+    freeSlots = new int[bucket.length];
+    slots = count;
+    top.addWeight(0L, filled[0].size());
+    for (int i = 1; i < count; i++) {
+      top.insert(keys[start(keys, count, i)], filled[i].size(), i);
+    }
+    n = keys.length;
+  }
+
+  /**
+   * Returns the position in {@code keys} of the first key of bucket {@code i} of {@code count}.
+   */
+  private static int start(final long[] keys, final int count, final int i) {
+    return (int) ((long) i * keys.length / count);
+  }
+
+  /* CURSOR */
+
+  /**
+   * {@inheritDoc}
+   * <br>The cursor walks the cursor of one bucket at a time and moves to the neighbouring bucket
+   * through the linked leaves of the top level, so a full scan takes O(1) time per key on top of
+   * the cursors of the buckets.
+   */
+  @Override
+  public LongCursor cursor() {
+    return new BucketCursor();
+  }
+
+  private final class BucketCursor implements LongCursor {
+
+    private int leaf = -1; // the leaf of the top level holding the bucket at the cursor
+    private LongCursor keys; // the cursor of that bucket
+    private boolean after; // off the keys, whether the cursor is past the last key
+
+    @Override
+    public boolean seek(final long x) {
+      leaf = top.floor(x);
+      keys = bucket(leaf).cursor();
+      return keys.seek(x) || nextBucket();
+    }
+
+    @Override
+    public boolean next() {
+      if (leaf < 0) {
+        if (after) {
+          return false;
+        }
+        leaf = top.floor(0L);
+        keys = bucket(leaf).cursor();
+      }
+      return keys.next() || nextBucket();
+    }
+
+    @Override
+    public boolean prev() {
+      if (leaf < 0) {
+        if (!after) {
+          return false;
+        }
+        leaf = top.floor(-1L);
+        return lastOf(bucket(leaf)) || prevBucket();
+      }
+      return keys.prev() || prevBucket();
+    }
+
+    @Override
+    public long current() {
+      if (leaf < 0) {
+        throw new NoSuchElementException("The cursor is not on a key.");
+      }
+      return keys.current();
+    }
+
+    /**
+     * Moves to the first key of the buckets following the current one, or past the last key.
+     */
+    private boolean nextBucket() {
+      while ((leaf = top.next(leaf)) >= 0) {
+        keys = bucket(leaf).cursor();
+        if (keys.next()) {
+          return true;
+        }
+      }
+      after = true;
+      return false;
+    }
+
+    /**
+     * Moves to the last key of the buckets preceding the current one, or before the first key.
+     */
+    private boolean prevBucket() {
+      while ((leaf = top.prev(leaf)) >= 0) {
+        if (lastOf(bucket(leaf))) {
+          return true;
+        }
+      }
+      after = false;
+      return false;
+    }
+
+    /**
+     * Places a new cursor of {@code b} on its last key, if it has one.
+     */
+    private boolean lastOf(final RankSelectPredecessorUpdate b) {
+      keys = b.cursor();
+      return b.size() > 0 && keys.seek(b.select(b.size() - 1));
+    }
+  }
+
+  /* HELPER METHODS */
+
+  private RankSelectPredecessorUpdate bucket(final int leaf) {
+    return bucket[(int) top.value(leaf)];
+  }
+
+  private RankSelectPredecessorUpdate bucketOf(final long rep) {
+    return bucket(top.find(rep));
+  }
+
+  /**
+   * Returns the position of a new empty bucket in {@code bucket}.
+   */
+  private int newBucket() {
+    final int slot;
+    if (freeCount > 0) {
+      slot = freeSlots[--freeCount];
+    } else {
+      if (slots == bucket.length) {
+        bucket = Arrays.copyOf(bucket, 2 * slots);
+        freeSlots = Arrays.copyOf(freeSlots, 2 * slots);
+      }
+      slot = slots++;
+    }
+    bucket[slot] = bucketSupplier.get();
+    return slot;
+  }
+
+  /**
+   * Releases the bucket represented by {@code rep} and removes {@code rep} from the top level.
+   */
+  private void removeBucket(final long rep) {
+    final int slot = (int) top.value(top.find(rep));
+    bucket[slot] = null;
+    freeSlots[freeCount++] = slot;
+    top.delete(rep);
+  }
+
+  /**
+   * Moves the keys with ranks {@code lo} (inclusive) to {@code hi} (exclusive) from {@code from}
+   * to {@code to}.
+   */
+  private static void move(final RankSelectPredecessorUpdate from,
+      final RankSelectPredecessorUpdate to, final int lo, final int hi) {
+    final long[] keys = new long[hi - lo];
+    for (int i = lo; i < hi; i++) {
+      keys[i - lo] = from.select(i);
+    }
+    for (final long key : keys) {
+      from.delete(key);
+      to.insert(key);
+    }
+  }
+
+  /**
+   * Splits the full bucket {@code b}, represented by {@code rep}, moving its upper half to a new
+   * bucket.
+   * @return the representative of the new bucket
+   */
+  private long split(final long rep, final RankSelectPredecessorUpdate b) {
+    final int size = (int) b.size();
+    final int half = size / 2;
+    final long newRep = b.select(half);
+    final int slot = newBucket();
+    move(b, bucket[slot], half, size);
+    top.addWeight(rep, half - size);
+    top.insert(newRep, size - half, slot);
+    return newRep;
+  }
+
+  /**
+   * Merges the underfull bucket {@code b}, represented by {@code rep}, with a neighbour, or moves
+   * keys from the neighbour when both do not fit in a single bucket. The next bucket is preferred,
+   * so that the representative {@code 0} of the first bucket never changes.
+   */
+  private void rebalance(final long rep, final RankSelectPredecessorUpdate b) {
+    final int leaf = top.find(rep);
+    final int next = top.next(leaf);
+    final int prev = top.prev(leaf);
+
+    if (next >= 0) {
+      final long nextRep = top.key(next);
+      final RankSelectPredecessorUpdate c = bucket(next);
+      final int size = (int) c.size();
+      if (b.size() + size <= capacity) {
+        move(c, b, 0, size);
+        top.addWeight(rep, size);
+        removeBucket(nextRep);
+      } else {
+        // the smallest keys of c move to b, so c gets a new representative
+        final int t = (size - (int) b.size()) / 2;
+        final int slot = (int) top.value(next);
+        move(c, b, 0, t);
+        top.addWeight(rep, t);
+        top.delete(nextRep);
+        top.insert(c.select(0), c.size(), slot);
+      }
+
+    } else if (prev >= 0) {
+      final long prevRep = top.key(prev);
+      final RankSelectPredecessorUpdate a = bucket(prev);
+      final int size = (int) a.size();
+      if (b.size() + size <= capacity) {
+        final int moved = (int) b.size();
+        move(b, a, 0, moved);
+        top.addWeight(prevRep, moved);
+        removeBucket(rep);
+      } else {
+        // the largest keys of a move to b, so b gets a new representative
+        final int t = (size - (int) b.size()) / 2;
+        final int slot = (int) top.value(leaf);
+        move(a, b, size - t, size);
+        top.addWeight(prevRep, -t);
+        top.delete(rep);
+        top.insert(b.select(0), b.size(), slot);
+      }
+    }
+  }
+}
@@ -0,0 +1,142 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import integersets.AdaptiveRadixTree;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AdaptiveRadixTreeTest {
+
+  static final long seed = 42;
+  static final int passes = 10;
+  static final int numKeys = 100_000;
+
+  private AdaptiveRadixTree set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new AdaptiveRadixTree();
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void insertAndMemberSmallTest() {
+    test.insertAndMemberSmallTest(set);
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRangeOfKeysTest() {
+    test.insertThenDeleteRangeOfKeysTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+  
+  @Test
+  void deleteTest() {
+    test.deleteTest(set);
+  }
+
+  @Test
+  void sizeTest() {
+    test.sizeTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void selectOfRankTest() {
+    test.selectOfRankTest(set);
+  }
+
+  @Test
+  void rankOfSelectTest() {
+    test.rankOfSelectTest(set);
+  }
+
+  @Test
+  void nodeGrowthAndShrinkTest() {
+    // all 256 children of a single node, so the root grows through every node type
+    final long high = 0xFEDCBA9876543200L;
+    for (int c = 255; c >= 0; c--) {
+      set.insert(high | c);
+    }
+    assertEquals(256, set.size());
+    assertEquals(1, set.height());
+    for (int c = 0; c < 256; c++) {
+      assertEquals(high | c, (long) set.select(c));
+      assertEquals(c, set.rank(high | c));
+    }
+    assertEquals(0, set.rank(high - 1));
+    assertEquals(256, set.rank(-1L));
+    assertNull(set.predecessor(high));
+    assertNull(set.successor((high | 255) + 1));
+
+    for (int c = 0; c < 255; c++) {
+      set.delete(high | c);
+      assertEquals(high | (c + 1), (long) set.successor(high));
+      assertEquals(254 - c, set.rank(high | 255));
+    }
+    assertEquals(0, set.height());
+    set.delete(high | 255);
+    assertEquals(0, set.size());
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+
+  @Test
+  void interleavedTest() {
+    test.interleavedTest(set);
+  }
+
+  @Test
+  void quantileTest() {
+    test.quantileTest(set);
+  }
+}
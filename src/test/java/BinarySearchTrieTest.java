@@ -1,4 +1,9 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
 import integersets.BinarySearchTrie;
+import java.util.Random;
+import java.util.TreeSet;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -83,4 +88,172 @@ class BinarySearchTrieTest {
   void rankOfSelectTest() {
     test.rankOfSelectTest(set);
   }
-}
\ No newline at end of file
+
+  @Test
+  void mapTest() {
+    test.mapTest(set);
+  }
+
+  @Test
+  void multisetTest() {
+    test.multisetTest(new BinarySearchTrie(true));
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void splitAtAndJoinTest() {
+    test.splitAtAndJoinTest(set, BinarySearchTrie::splitAt, BinarySearchTrie::join);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+
+  @Test
+  void batchTest() {
+    test.batchTest(set);
+  }
+
+  @Test
+  void interleavedTest() {
+    test.interleavedTest(set);
+  }
+
+  /**
+   * Appends increasing keys, with gaps of every size, mixed with inserts and deletes in the middle
+   * and bulk appends, and compares the trie with a {@code TreeSet}.
+   */
+  @Test
+  void appendTest() {
+    for (final boolean multiset : new boolean[] {false, true}) {
+      final BinarySearchTrie trie = new BinarySearchTrie(multiset);
+      final TreeSet<Long> ref = new TreeSet<>(Long::compareUnsigned);
+      final Random rand = new Random(seed);
+      long max = 1L << 32;
+      long copies = 0;
+
+      for (int i = 0; i < numKeys; i++) {
+        final int op = rand.nextInt(64);
+        if (op == 0 && !ref.isEmpty()) {
+          final long x = ref.first() + rand.nextInt(1000);
+          copies -= trie.count(x);
+          trie.delete(x);
+          copies += trie.count(x);
+          if (trie.count(x) == 0) {
+            ref.remove(x);
+          }
+        } else if (op == 1) {
+          final long x = max - rand.nextInt(1000);
+          trie.insert(x);
+          ref.add(x);
+          copies++;
+        } else if (op == 2) {
+          final long[] keys = new long[rand.nextInt(100)];
+          long x = max - rand.nextInt(100);
+          for (int j = 0; j < keys.length; j++) {
+            x += rand.nextInt(3);
+            keys[j] = x;
+            ref.add(x);
+          }
+          trie.appendAll(keys);
+          copies += keys.length;
+          max = Math.max(max, x);
+        } else {
+          max += rand.nextInt(4) == 0 ? rand.nextInt(1 << 20) : rand.nextInt(3);
+          trie.insert(max);
+          ref.add(max);
+          copies++;
+        }
+        if (i % 97 == 0) {
+          final long x = max - rand.nextInt(2000);
+          assertEquals(ref.ceiling(x), trie.successor(x));
+          assertEquals(ref.lower(x), trie.predecessor(x));
+        }
+      }
+
+      assertEquals(multiset ? copies : ref.size(), trie.size());
+      int rank = 0;
+      for (final long x : ref) {
+        assertEquals(rank, trie.rank(x));
+        assertEquals(x, trie.select(trie.rank(x)));
+        rank += multiset ? (int) trie.count(x) : 1;
+      }
+    }
+    assertThrows(IllegalArgumentException.class, () -> set.appendAll(new long[] {2, 1}));
+  }
+
+  /**
+   * Walks two fingers through the keys by small and large steps, updating the trie both through
+   * them and directly, and compares every answer with a {@code TreeSet}.
+   */
+  @Test
+  void fingerTest() {
+    for (final boolean multiset : new boolean[] {false, true}) {
+      final BinarySearchTrie trie = new BinarySearchTrie(multiset);
+      final TreeSet<Long> ref = new TreeSet<>(Long::compareUnsigned);
+      final BinarySearchTrie.Finger[] fingers = {trie.finger(), trie.finger()};
+      final Random rand = new Random(seed);
+      final long[] pos = {-50, 1L << 40};
+
+      for (int i = 0; i < numKeys; i++) {
+        final int f = rand.nextInt(2);
+        pos[f] += rand.nextInt(8) == 0 ? rand.nextLong() >> 20 : rand.nextInt(64) - 24;
+        final long x = pos[f];
+        final BinarySearchTrie.Finger finger = fingers[f];
+        final String msg = "Step " + i + " | Multiset: " + multiset + "\n";
+
+        switch (rand.nextInt(8)) {
+          case 0:
+          case 1:
+            trie.insert(x, finger);
+            ref.add(x);
+            break;
+          case 2:
+            trie.delete(x, finger);
+            if (trie.count(x) == 0) {
+              ref.remove(x);
+            }
+            break;
+          case 3:
+            trie.insert(x + 1);
+            ref.add(x + 1);
+            break;
+          case 4:
+            trie.delete(x - 1);
+            if (trie.count(x - 1) == 0) {
+              ref.remove(x - 1);
+            }
+            break;
+          default:
+            break;
+        }
+
+        assertEquals(ref.lower(x), trie.predecessor(x, finger), msg);
+        assertEquals(ref.ceiling(x), trie.successor(x, finger), msg);
+        assertEquals(trie.rank(x), trie.rank(x, finger), msg);
+        assertEquals(trie.rank(x), trie.rank(x, fingers[1 - f]), msg);
+      }
+      if (!multiset) {
+        assertEquals(ref.size(), trie.size());
+      }
+
+      final BinarySearchTrie other = new BinarySearchTrie();
+      assertThrows(IllegalArgumentException.class, () -> other.rank(0, trie.finger()));
+    }
+  }
+
+  @Test
+  void quantileTest() {
+    test.quantileTest(set);
+  }
+}
@@ -0,0 +1,125 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.BinarySearchTrie;
+import integersets.CachedSet;
+import integersets.RedBlackBST;
+import java.util.Random;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CachedSetTest {
+
+  static final long seed = 42;
+  static final int passes = 10;
+  static final int numKeys = 100_000;
+
+  private CachedSet set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new CachedSet(new BinarySearchTrie(), 64);
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  /**
+   * Repeats queries from a small pool of keys, which mostly hit the cache, between inserts and
+   * deletes, which invalidate it, and compares every answer with an uncached set.
+   */
+  @Test
+  void skewedQueriesTest() {
+    final RedBlackBST ref = new RedBlackBST();
+    final CachedSet cached = new CachedSet(new RedBlackBST(), 1024);
+    final Random rand = new Random(seed);
+    final long[] pool = new long[100];
+    for (int i = 0; i < pool.length; i++) {
+      pool[i] = rand.nextLong();
+    }
+
+    for (int i = 0; i < numKeys; i++) {
+      // the first keys of the pool are the most frequent
+      final long x = pool[(int) (pool.length * Math.pow(rand.nextDouble(), 3))];
+      final int op = rand.nextInt(1000);
+      if (op == 0) {
+        ref.insert(x + 1);
+        cached.insert(x + 1);
+      } else if (op == 1) {
+        ref.delete(x + 1);
+        cached.delete(x + 1);
+      } else if (op == 2) {
+        final long y = rand.nextLong();
+        ref.insert(y);
+        cached.insert(y);
+      }
+
+      assertEquals(ref.rank(x), cached.rank(x));
+      assertEquals(ref.predecessor(x), cached.predecessor(x));
+      assertEquals(ref.successor(x), cached.successor(x));
+      assertEquals(ref.successor(x + 1), cached.successor(x + 1));
+    }
+    assertTrue(cached.hitRatio() > 0.6, "Hit ratio: " + cached.hitRatio());
+    assertEquals(4L * numKeys, cached.hits() + cached.misses());
+
+    cached.reset();
+    assertEquals(0, cached.rank(pool[0]));
+
+    // a query that throws leaves no entry behind
+    final CachedSet failing = new CachedSet(new RedBlackBST() {
+      @Override
+      public long rank(final long x) {
+        if (x == 2) {
+          throw new IllegalStateException();
+        }
+        return super.rank(x);
+      }
+    }, 8);
+    for (long x = 0; x < 64; x++) {
+      failing.insert(x);
+    }
+    for (long x = 3; x < 64; x++) {
+      assertEquals(x, failing.rank(x));
+    }
+    assertThrows(IllegalStateException.class, () -> failing.rank(2));
+    assertThrows(IllegalStateException.class, () -> failing.rank(2));
+    assertThrows(IllegalArgumentException.class, () -> new CachedSet(cached, 4));
+  }
+}
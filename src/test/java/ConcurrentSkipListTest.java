@@ -0,0 +1,244 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.ConcurrentSkipList;
+import integersets.LongCursor;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentSkipListTest {
+
+  static final long seed = 42;
+  static final int passes = 10;
+  static final int numKeys = 100_000;
+
+  private ConcurrentSkipList set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new ConcurrentSkipList();
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void insertAndMemberSmallTest() {
+    test.insertAndMemberSmallTest(set);
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRangeOfKeysTest() {
+    test.insertThenDeleteRangeOfKeysTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+  
+  @Test
+  void deleteTest() {
+    test.deleteTest(set);
+  }
+
+  @Test
+  void sizeTest() {
+    test.sizeTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void selectOfRankTest() {
+    test.selectOfRankTest(set);
+  }
+
+  @Test
+  void rankOfSelectTest() {
+    test.rankOfSelectTest(set);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void concurrentUpdatesTest() throws InterruptedException {
+    // the even keys stay in the set while writers insert and delete odd keys
+    final int m = 10_000;
+    final int threads = 4;
+    for (long x = 0; x < 2 * m; x += 2) {
+      set.insert(x);
+    }
+
+    final AtomicBoolean failed = new AtomicBoolean();
+    final Thread[] writers = new Thread[threads];
+    final Thread[] readers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      writers[t] = new Thread(() -> {
+        for (int pass = 0; pass < 3; pass++) {
+          for (long x = 2 * offset + 1; x < 2 * m; x += 2 * threads) {
+            set.insert(x);
+          }
+          for (long x = 2 * offset + 1; x < 2 * m; x += 2 * threads) {
+            if (pass < 2) {
+              set.delete(x);
+            }
+          }
+        }
+      });
+      readers[t] = new Thread(() -> {
+        final Random rand = new Random(seed + offset);
+        for (int i = 0; i < 100_000; i++) {
+          final long x = 2 * rand.nextInt(m);
+          final long rank = set.rank(x);
+          if (!set.member(x) || set.successor(x) != x || rank < x / 2 || rank > x) {
+            failed.set(true);
+          }
+        }
+      });
+    }
+    for (int t = 0; t < threads; t++) {
+      writers[t].start();
+      readers[t].start();
+    }
+    for (int t = 0; t < threads; t++) {
+      writers[t].join();
+      readers[t].join();
+    }
+
+    assertFalse(failed.get());
+    assertEquals(2 * m, set.size());
+    for (long x = 0; x < 2 * m; x++) {
+      assertEquals(x, set.rank(x));
+      assertEquals(x, (long) set.select(x));
+    }
+  }
+
+  @Test
+  void contendedUpdatesTest() throws InterruptedException {
+    // the writers insert and delete the same few keys, so that their links and spans collide
+    final int range = 4096;
+    final int threads = 4;
+    final Thread[] writers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final Random rand = new Random(seed + t);
+      writers[t] = new Thread(() -> {
+        for (int i = 0; i < 200_000; i++) {
+          final long x = rand.nextInt(range);
+          if (rand.nextBoolean()) {
+            set.insert(x);
+          } else if (rand.nextInt(4) == 0) {
+            set.deleteByRank(x);
+          } else {
+            set.delete(x);
+          }
+        }
+      });
+    }
+    for (final Thread writer : writers) {
+      writer.start();
+    }
+    for (final Thread writer : writers) {
+      writer.join();
+    }
+
+    // once the updates are over, the spans agree with the keys at the bottom level
+    final LongCursor cursor = set.cursor();
+    long rank = 0;
+    while (cursor.next()) {
+      final long key = cursor.current();
+      assertTrue(set.member(key));
+      assertEquals(rank, set.rank(key));
+      assertEquals(key, (long) set.select(rank));
+      rank++;
+    }
+    assertEquals(rank, set.size());
+    assertEquals(null, set.select(rank));
+  }
+
+  @Test
+  void concurrentPollTest() throws InterruptedException {
+    final int m = 20_000;
+    final int threads = 4;
+    for (long x = 0; x < m; x++) {
+      set.insert(x);
+    }
+
+    final boolean[] polled = new boolean[m];
+    final AtomicBoolean failed = new AtomicBoolean();
+    final Thread[] pollers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      final boolean first = t % 2 == 0;
+      pollers[t] = new Thread(() -> {
+        Long x;
+        while ((x = first ? set.pollFirst() : set.pollLast()) != null) {
+          synchronized (polled) {
+            if (polled[(int) (long) x]) {
+              failed.set(true);
+            }
+            polled[(int) (long) x] = true;
+          }
+        }
+      });
+    }
+    for (final Thread poller : pollers) {
+      poller.start();
+    }
+    for (final Thread poller : pollers) {
+      poller.join();
+    }
+
+    assertFalse(failed.get());
+    for (int x = 0; x < m; x++) {
+      assertTrue(polled[x]);
+    }
+    assertEquals(0, set.size());
+    assertEquals(null, set.peekFirst());
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+}
@@ -1,3 +1,5 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 import integersets.DynamicFusionNodeBinaryRank;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
@@ -83,4 +85,67 @@ class DynamicFusionNodeBinaryRankTest {
   void rankOfSelectTest() {
     test.rankOfSelectTest(set);
   }
-}
\ No newline at end of file
+
+  @Test
+  void mapTest() {
+    test.mapTest(set);
+  }
+
+  /**
+   * Updates a full node at rank {@code k - 1}, whose field ends at bit 64 of Index. Shifting the
+   * fields above it by 64 bits used to wrap around: deleting the largest key copied the slot of
+   * the smallest one to the unused last field, which inserting a new largest key later ORed into
+   * the slot of the smallest key.
+   */
+  @Test
+  void lastRankTest() {
+    // the smallest key is in the last slot
+    for (long x = numKeys - 1; x >= 0; x--) {
+      set.insert(100 + 10 * x);
+    }
+    set.delete(100 + 10 * (numKeys - 1));
+    set.delete(100);
+    set.insert(115);
+    set.insert(1000);
+    final long[] expected = new long[numKeys];
+    expected[0] = 110;
+    expected[1] = 115;
+    for (int i = 2; i < numKeys - 1; i++) {
+      expected[i] = 100 + 10 * i;
+    }
+    expected[numKeys - 1] = 1000;
+    for (int i = 0; i < numKeys; i++) {
+      assertEquals(expected[i], (long) set.select(i));
+    }
+  }
+
+  @Test
+  void multisetTest() {
+    test.multisetTest(new DynamicFusionNodeBinaryRank(true));
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void splitAtAndJoinTest() {
+    test.splitAtAndJoinTest(set, DynamicFusionNodeBinaryRank::splitAt, DynamicFusionNodeBinaryRank::join);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+
+  @Test
+  void batchTest() {
+    test.batchTest(set);
+  }
+}
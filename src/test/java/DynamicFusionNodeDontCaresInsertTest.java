@@ -83,4 +83,39 @@ class DynamicFusionNodeDontCaresInsertTest {
   void rankOfSelectTest() {
     test.rankOfSelectTest(set);
   }
-}
\ No newline at end of file
+
+  @Test
+  void mapTest() {
+    test.mapTest(set);
+  }
+
+  @Test
+  void multisetTest() {
+    test.multisetTest(new DynamicFusionNodeDontCaresInsert(true));
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void splitAtAndJoinTest() {
+    test.splitAtAndJoinTest(set, DynamicFusionNodeDontCaresInsert::splitAt, DynamicFusionNodeDontCaresInsert::join);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+
+  @Test
+  void batchTest() {
+    test.batchTest(set);
+  }
+}
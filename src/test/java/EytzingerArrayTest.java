@@ -0,0 +1,176 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.BinarySearchTrie;
+import integersets.EytzingerArray;
+import integersets.LongCursor;
+import integersets.RankSelectPredecessorUpdate;
+import integersets.Util;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class EytzingerArrayTest {
+
+  static final long seed = 42;
+  static final int passes = 1_000;
+  static final int[] sizes = {0, 1, 2, 7, 8, 9, 63, 64, 65, 513, 10_000};
+
+  /**
+   * Reference rank: the number of keys in the sorted array {@code keys} that are strictly smaller
+   * than {@code x}, computed with unsigned binary search.
+   */
+  private static long rank(final long[] keys, final long x) {
+    int lo = 0;
+    int hi = keys.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (Long.compareUnsigned(keys[mid], x) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    final EytzingerArray set = new EytzingerArray(new long[] {10, 12, 42, -1337, -42});
+    assertEquals(5, set.size());
+
+    assertTrue(set.member(10));
+    assertFalse(set.member(11));
+    assertEquals(0, set.rank(10));
+    assertEquals(1, set.rank(11));
+    assertEquals(2, set.rank(42));
+    assertEquals(3, set.rank(-1337));
+    assertEquals(4, set.rank(-1000));
+    assertEquals(5, set.rank(-1));
+
+    assertEquals(null, set.predecessor(10));
+    assertEquals(12L, set.predecessor(42));
+    assertEquals(-1337L, set.predecessor(-42));
+    assertEquals(12L, set.successor(11));
+    assertEquals(-42L, set.successor(-1000));
+    assertEquals(null, set.successor(-1));
+  }
+
+  @Test
+  void rankTest() {
+    for (final int n : sizes) {
+      final long[] keys = Util.distinctSortedLongs(n, seed + n);
+      final EytzingerArray set = new EytzingerArray(keys);
+      assertEquals(n, set.size());
+
+      for (int i = 0; i < n; i++) {
+        assertEquals(i, set.rank(keys[i]), "n = " + n + " | rank of key " + i + "\n");
+        assertEquals(rank(keys, keys[i] + 1), set.rank(keys[i] + 1),
+            "n = " + n + " | rank of key " + i + " + 1\n");
+        assertEquals(rank(keys, keys[i] - 1), set.rank(keys[i] - 1),
+            "n = " + n + " | rank of key " + i + " - 1\n");
+      }
+
+      final Random rand = new Random(seed);
+      for (int p = 0; p < passes; p++) {
+        final long x = rand.nextLong();
+        assertEquals(rank(keys, x), set.rank(x), "n = " + n + " | query " + x + "\n");
+      }
+      assertEquals(0, set.rank(0));
+      assertEquals(rank(keys, -1), set.rank(-1));
+    }
+  }
+
+  @Test
+  void boundedKeysRankTest() {
+    // dense keys share long prefixes, exercising nodes with few significant positions
+    final long[] keys = Util.distinctBoundedSortedLongs(5_000, 20_000, seed);
+    final EytzingerArray set = new EytzingerArray(keys);
+
+    for (long x = 0; x < 20_010; x++) {
+      assertEquals(rank(keys, x), set.rank(x), "query " + x + "\n");
+    }
+  }
+
+  @Test
+  void selectOfRankTest() {
+    final long[] keys = Util.distinctSortedLongs(10_000, seed);
+    final EytzingerArray set = new EytzingerArray(keys);
+
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(keys[i], set.select(set.rank(keys[i])));
+      assertEquals(keys[i], set.successor(keys[i]));
+      assertEquals(i == 0 ? null : keys[i - 1], set.predecessor(keys[i]));
+      assertTrue(set.member(keys[i]));
+    }
+    assertEquals(null, set.select(-1));
+    assertEquals(null, set.select(keys.length));
+  }
+
+  @Test
+  void cursorTest() {
+    final long[] keys = Util.distinctSortedLongs(10_000, seed);
+    final EytzingerArray set = new EytzingerArray(keys);
+
+    final LongCursor cursor = set.cursor();
+    for (final long key : keys) {
+      assertTrue(cursor.next());
+      assertEquals(key, cursor.current());
+    }
+    assertFalse(cursor.next());
+    assertTrue(cursor.prev());
+    assertEquals(keys[keys.length - 1], cursor.current());
+    for (int i = 0; i < keys.length; i++) {
+      assertTrue(cursor.seek(keys[i]));
+      assertEquals(keys[i], cursor.current());
+      assertEquals(i + 1 < keys.length, cursor.seek(keys[i] + 1));
+    }
+  }
+
+  @Test
+  void freezeTest() {
+    final BinarySearchTrie trie = new BinarySearchTrie();
+    final long[] keys = Util.distinctSortedLongs(1_000, seed);
+    for (final long key : keys) {
+      trie.insert(key);
+    }
+
+    final RankSelectPredecessorUpdate frozen = trie.freezeEytzinger();
+    trie.delete(keys[0]);
+    assertEquals(keys.length, frozen.size());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(keys[i], frozen.select(i));
+      assertEquals(i, frozen.rank(keys[i]));
+    }
+    assertEquals(0, new BinarySearchTrie().freezeEytzinger().size());
+
+    // a multiset is frozen as the set of its distinct keys
+    final BinarySearchTrie multiset = new BinarySearchTrie(true);
+    for (int i = 0; i < keys.length; i++) {
+      for (int j = 0; j <= i % 3; j++) {
+        multiset.insert(keys[i]);
+      }
+    }
+    final RankSelectPredecessorUpdate distinct = multiset.freezeEytzinger();
+    assertEquals(keys.length, distinct.size());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(keys[i], distinct.select(i));
+    }
+  }
+
+  @Test
+  void invalidInputTest() {
+    assertThrows(IllegalArgumentException.class, () -> new EytzingerArray(new long[] {2, 1}));
+    assertThrows(IllegalArgumentException.class, () -> new EytzingerArray(new long[] {1, 1}));
+    assertThrows(IllegalArgumentException.class, () -> new EytzingerArray(new long[] {-1, 1}));
+  }
+
+  @Test
+  void updateTest() {
+    final EytzingerArray set = new EytzingerArray(new long[] {1, 2, 3});
+    assertThrows(UnsupportedOperationException.class, () -> set.insert(4));
+    assertThrows(UnsupportedOperationException.class, () -> set.delete(1));
+    assertThrows(UnsupportedOperationException.class, () -> set.reset());
+  }
+}
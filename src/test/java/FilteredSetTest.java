@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.BinarySearchTrie;
+import integersets.FilteredSet;
+import integersets.RedBlackBST;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FilteredSetTest {
+
+  static final long seed = 42;
+  static final int passes = 10;
+  static final int numKeys = 100_000;
+
+  private FilteredSet set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new FilteredSet(new BinarySearchTrie());
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+
+  @Test
+  void deleteTest() {
+    test.deleteTest(new FilteredSet(new RedBlackBST()));
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  /**
+   * Grows and shrinks the set until its filter is fully loaded, then checks that no key of the set
+   * is rejected and that the false-positive rate measured at full load stays close to the one
+   * expected for the bits per key.
+   */
+  @Test
+  void falsePositiveRateTest() {
+    for (final int bitsPerKey : new int[] {4, 10, 16}) {
+      final FilteredSet filtered = new FilteredSet(new RedBlackBST(), bitsPerKey);
+      final Set<Long> ref = new HashSet<>();
+      final Random rand = new Random(seed);
+      for (int i = 0; i < numKeys; i++) {
+        final long x = rand.nextLong();
+        filtered.insert(x);
+        ref.add(x);
+        if (rand.nextInt(4) == 0) {
+          final long y = filtered.select(rand.nextInt((int) filtered.size()));
+          filtered.delete(y);
+          ref.remove(y);
+        }
+      }
+      while (filtered.load() < 1) {
+        final long x = rand.nextLong();
+        filtered.insert(x);
+        ref.add(x);
+      }
+      assertEquals(1.0, filtered.load());
+
+      for (final long x : ref) {
+        assertTrue(filtered.member(x));
+      }
+      assertEquals(0, filtered.falsePositives() + filtered.rejected());
+      for (int i = 0; i < 10 * numKeys; i++) {
+        final long x = rand.nextLong();
+        assertEquals(ref.contains(x), filtered.member(x));
+      }
+
+      // at full load, a plain Bloom filter with the same bits per key has 14.6%, 0.82% and 0.046%
+      // of false positives; blocking costs a little more, and more so as more bits are set per key
+      final double bound = bitsPerKey == 4 ? 0.25 : bitsPerKey == 10 ? 0.02 : 0.004;
+      assertTrue(filtered.falsePositiveRate() < bound,
+          "Bits per key: " + bitsPerKey + " | Rate: " + filtered.falsePositiveRate());
+      assertEquals(10 * numKeys, filtered.falsePositives() + filtered.rejected());
+      assertEquals(1.0, filtered.load());
+    }
+
+    set.insert(1);
+    set.reset();
+    assertFalse(set.member(1));
+    assertThrows(IllegalArgumentException.class, () -> new FilteredSet(set, 0));
+  }
+}
@@ -0,0 +1,132 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.IntDynamicFusionNodeDontCaresInsert;
+import integersets.LongCursor;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IntDynamicFusionNodeDontCaresInsertTest {
+
+  static final long seed = 42;
+  static final int passes = 20_000;
+  static final int numKeys = 8;
+
+  private IntDynamicFusionNodeDontCaresInsert set;
+
+  @BeforeEach
+  void setUp() {
+    set = new IntDynamicFusionNodeDontCaresInsert();
+  }
+
+  /**
+   * Fills the node with keys drawn from {@code bound} and compares every query against a
+   * {@code TreeSet} while the keys are deleted in random order.
+   */
+  private void randomPass(final Random rand, final int bound) {
+    final TreeSet<Long> reference = new TreeSet<>();
+    final long[] keys = new long[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = (bound == 0 ? rand.nextInt() : rand.nextInt(bound)) & 0xFFFFFFFFL;
+      if (reference.size() < numKeys) {
+        set.insert(keys[i]);
+        reference.add(keys[i]);
+      }
+    }
+    assertEquals(reference.size(), set.size());
+
+    for (final long key : keys) {
+      compare(reference, key);
+      compare(reference, (key + 1) & 0xFFFFFFFFL);
+      compare(reference, (key - 1) & 0xFFFFFFFFL);
+      set.delete(key);
+      reference.remove(key);
+      assertEquals(reference.size(), set.size());
+    }
+    assertTrue(set.isEmpty());
+  }
+
+  private void compare(final TreeSet<Long> reference, final long x) {
+    final long rank = reference.headSet(x).size();
+    assertEquals(reference.contains(x), set.member(x), "member " + x);
+    assertEquals(reference.contains(x), set.memberInt((int) x), "int member " + x);
+    assertEquals(rank, set.rank(x), "rank " + x);
+    assertEquals(rank, set.rankInt((int) x), "int rank " + x);
+    assertEquals(reference.lower(x), set.predecessor(x), "predecessor " + x);
+    assertEquals(reference.ceiling(x), set.successor(x), "successor " + x);
+    if (rank < reference.size()) {
+      assertEquals(reference.ceiling(x), set.select(rank));
+      assertEquals((long) reference.ceiling(x), set.selectInt((int) rank) & 0xFFFFFFFFL);
+    }
+
+    final LongCursor cursor = set.cursor();
+    assertEquals(rank < reference.size(), cursor.seek(x), "seek " + x);
+    if (rank < reference.size()) {
+      assertEquals((long) reference.ceiling(x), cursor.current(), "seek " + x);
+    }
+    assertEquals(rank > 0, cursor.prev(), "prev " + x);
+    if (rank > 0) {
+      assertEquals((long) reference.lower(x), cursor.current(), "prev " + x);
+    }
+  }
+
+  @Test
+  void randomKeysTest() {
+    final Random rand = new Random(seed);
+    for (int pass = 0; pass < passes; pass++) {
+      randomPass(rand, 0);
+    }
+  }
+
+  @Test
+  void smallKeysTest() {
+    final Random rand = new Random(seed);
+    for (int pass = 0; pass < passes; pass++) {
+      randomPass(rand, 64);
+    }
+  }
+
+  @Test
+  void extremeKeysTest() {
+    set.insertInt(0);
+    set.insertInt(-1);
+    set.insertInt(Integer.MIN_VALUE);
+    set.insertInt(Integer.MAX_VALUE);
+    assertEquals(4, set.size());
+
+    assertTrue(set.memberInt(-1));
+    assertTrue(set.member(0xFFFFFFFFL));
+    assertFalse(set.member(-1L));
+    assertFalse(set.member(-1));
+    assertEquals(3, set.rankInt(-1));
+    assertEquals(4, set.rank(-1L));
+    assertEquals(2, set.rankInt(Integer.MIN_VALUE));
+    assertEquals(Integer.MIN_VALUE, set.selectInt(2));
+    assertEquals(0xFFFFFFFFL, (long) set.predecessor(-1L));
+    assertEquals(0x80000000L, (long) set.predecessor(0xFFFFFFFFL));
+    assertNull(set.successor(1L << 32));
+
+    set.deleteInt(-1);
+    assertEquals(0x80000000L, (long) set.predecessor(-1L));
+  }
+
+  @Test
+  void invalidInputTest() {
+    assertThrows(IllegalArgumentException.class, () -> set.insert(1L << 32));
+    assertThrows(IllegalArgumentException.class, () -> set.insert(-1L));
+    // an int argument goes to the long methods, which reject it when negative
+    assertThrows(IllegalArgumentException.class, () -> set.insert(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> set.selectInt(0));
+    set.delete(1L << 32);
+    assertEquals(0, set.size());
+    for (int i = 0; i < numKeys; i++) {
+      set.insert(i);
+    }
+    assertThrows(RuntimeException.class, () -> set.insert(numKeys));
+  }
+}
@@ -0,0 +1,170 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.IntRankSelect;
+import integersets.LongCursor;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IntRankSelectTest {
+
+  static final long seed = 42;
+  static final int numKeys = 100_000;
+  static final int queries = 100_000;
+
+  private IntRankSelect set;
+
+  @BeforeEach
+  void setUp() {
+    set = new IntRankSelect();
+  }
+
+  /**
+   * Inserts the keys in both {@code set} and {@code reference}, then compares every query on the
+   * keys, their neighbours and random values, and a walk of the cursor over all the keys.
+   */
+  private void insertAndCompare(final long[] keys) {
+    final TreeSet<Long> reference = new TreeSet<>();
+    for (final long key : keys) {
+      set.insert(key);
+      reference.add(key);
+    }
+    assertEquals(reference.size(), set.size());
+
+    final LongCursor cursor = set.cursor();
+    for (final long key : reference) {
+      assertTrue(cursor.next());
+      assertEquals(key, cursor.current());
+    }
+    assertFalse(cursor.next());
+    for (final long key : reference.descendingSet()) {
+      assertTrue(cursor.prev());
+      assertEquals(key, cursor.current());
+    }
+    assertFalse(cursor.prev());
+
+    final Random rand = new Random(seed);
+    for (int i = 0; i < queries; i++) {
+      final long key = keys[rand.nextInt(keys.length)];
+      final long x = (i % 3 == 0 ? rand.nextInt() : key + i % 3 - 1) & 0xFFFFFFFFL;
+      final long rank = reference.headSet(x).size();
+
+      assertEquals(reference.contains(x), set.member(x), "member " + x);
+      assertEquals(reference.contains(x), set.memberInt((int) x), "int member " + x);
+      assertEquals(rank, set.rank(x), "rank " + x);
+      assertEquals(rank, set.rankInt((int) x), "int rank " + x);
+      assertEquals(reference.lower(x), set.predecessor(x), "predecessor " + x);
+      assertEquals(reference.ceiling(x), set.successor(x), "successor " + x);
+      final Long lower = reference.lower(x);
+      final Long ceiling = reference.ceiling(x);
+      assertEquals(lower == null ? -1 : lower, set.predecessorInt((int) x));
+      assertEquals(ceiling == null ? -1 : ceiling, set.successorInt((int) x));
+      assertEquals(ceiling != null, cursor.seek(x), "seek " + x);
+      if (rank < reference.size()) {
+        assertEquals((long) ceiling, cursor.current());
+        assertEquals(ceiling, set.select(rank));
+        assertEquals((long) ceiling, set.selectInt(rank) & 0xFFFFFFFFL);
+      }
+    }
+
+    for (final long key : keys) {
+      set.delete(key);
+      reference.remove(key);
+      assertEquals(reference.size(), set.size());
+    }
+    assertNull(set.select(0));
+    assertNull(set.predecessor(-1));
+    assertNull(set.successor(0));
+  }
+
+  @Test
+  void sparseKeysTest() {
+    final Random rand = new Random(seed);
+    final long[] keys = new long[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = rand.nextInt() & 0xFFFFFFFFL;
+    }
+    insertAndCompare(keys);
+  }
+
+  @Test
+  void denseKeysTest() {
+    // few buckets, each dense enough to become a bitmap
+    final Random rand = new Random(seed);
+    final long[] keys = new long[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      keys[i] = (rand.nextInt(4) * 1_000_003L << 16 | rand.nextInt(1 << 16)) & 0xFFFFFFFFL;
+    }
+    insertAndCompare(keys);
+  }
+
+  @Test
+  void extremeKeysTest() {
+    set.insertInt(0);
+    set.insertInt(-1);
+    set.insert(0xFFFFL);
+    set.insert(0x10000L);
+    assertEquals(4, set.size());
+
+    assertTrue(set.memberInt(-1));
+    assertTrue(set.member(0xFFFFFFFFL));
+    assertFalse(set.member(-1L));
+    assertFalse(set.member(-1));
+    assertEquals(3, set.rankInt(-1));
+    assertEquals(4, set.rank(-1L));
+    assertEquals(0xFFFFFFFFL, (long) set.predecessor(-1L));
+    assertEquals(0x10000L, set.predecessorInt(-1));
+    assertEquals(0xFFFFL, set.predecessorInt(0x10000));
+    assertEquals(-1, set.predecessorInt(0));
+    assertEquals(0xFFFFFFFFL, set.successorInt(0x10001));
+    assertEquals(-1, set.selectInt(3));
+    assertNull(set.successor(1L << 32));
+
+    final LongCursor cursor = set.cursor();
+    assertFalse(cursor.seek(1L << 32));
+    assertTrue(cursor.prev());
+    assertEquals(0xFFFFFFFFL, cursor.current());
+    assertTrue(cursor.prev());
+    assertEquals(0x10000L, cursor.current());
+    assertTrue(cursor.seek(0x10001L));
+    assertEquals(0xFFFFFFFFL, cursor.current());
+    assertFalse(cursor.next());
+
+    set.deleteInt(-1);
+    assertEquals(-1, set.successorInt(0x10001));
+    assertEquals(0x10000L, (long) set.predecessor(-1L));
+  }
+
+  @Test
+  void invalidInputTest() {
+    assertThrows(IllegalArgumentException.class, () -> set.insert(1L << 32));
+    assertThrows(IllegalArgumentException.class, () -> set.insert(-1L));
+    // an int argument goes to the long methods, which reject it when negative
+    assertThrows(IllegalArgumentException.class, () -> set.insert(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> set.selectInt(0));
+    set.delete(1L << 32);
+    assertEquals(0, set.size());
+  }
+
+  @Test
+  void emptySetTest() {
+    // the top level is only allocated by the first insert, and freed again by reset
+    for (int pass = 0; pass < 2; pass++) {
+      assertEquals(0, set.size());
+      assertFalse(set.memberInt(-1));
+      assertEquals(0, set.rankInt(-1));
+      assertEquals(-1, set.predecessorInt(-1));
+      assertEquals(-1, set.successorInt(0));
+      assertNull(set.select(0));
+      set.deleteInt(7);
+      set.insertInt(7);
+      assertEquals(1, set.rank(8));
+      set.reset();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import integersets.BinarySearchTrie;
+import integersets.DynamicFusionNodeDontCaresInsert;
+import integersets.ParallelBuild;
+import integersets.RankSelectPredecessorUpdate;
+import integersets.RedBlackBST;
+import integersets.YFastTrie;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class ParallelBuildTest {
+
+  static final long seed = 42;
+  static final int[] sizes = {0, 1, 2, 100, 5_000, 200_000};
+
+  /**
+   * Returns {@code n} pseudorandom keys with many repeats, spread over the whole unsigned range
+   * when {@code p} is even and clustered in a small range when it is odd.
+   */
+  private static long[] keys(final int n, final int p) {
+    final Random rand = new Random(seed + p);
+    final long[] res = new long[n];
+    for (int i = 0; i < n; i++) {
+      res[i] = p % 2 == 0 ? rand.nextLong() : rand.nextInt(n + 1);
+      if (i > 0 && rand.nextInt(4) == 0) {
+        res[i] = res[rand.nextInt(i)];
+      }
+    }
+    return res;
+  }
+
+  private static long[] expected(final long[] keys) {
+    return Arrays.stream(keys).map(x -> x ^ Long.MIN_VALUE).sorted().distinct()
+        .map(x -> x ^ Long.MIN_VALUE).toArray();
+  }
+
+  /**
+   * Checks that {@code set} holds exactly {@code sorted}, and that it keeps working under updates.
+   */
+  private static void compare(final long[] sorted, final long[] keys,
+      final RankSelectPredecessorUpdate set, final RankSelectPredecessorUpdate reference) {
+    assertEquals(sorted.length, set.size());
+    for (int i = 0; i < sorted.length; i++) {
+      assertEquals(sorted[i], (long) set.select(i));
+    }
+    for (final long x : keys) {
+      assertEquals(reference.rank(x), set.rank(x));
+      assertEquals(reference.rank(x + 1), set.rank(x + 1));
+    }
+
+    final Random rand = new Random(seed);
+    for (int i = 0; i < Math.min(keys.length, 10_000); i++) {
+      final long x = keys[rand.nextInt(keys.length)];
+      if (rand.nextBoolean()) {
+        set.delete(x);
+        reference.delete(x);
+      } else {
+        set.insert(x + 1);
+        reference.insert(x + 1);
+      }
+      assertEquals(reference.size(), set.size());
+      assertEquals(reference.rank(x), set.rank(x));
+    }
+  }
+
+  private static RankSelectPredecessorUpdate reference(final long[] keys) {
+    final RankSelectPredecessorUpdate res = new RedBlackBST();
+    for (final long x : keys) {
+      res.insert(x);
+    }
+    return res;
+  }
+
+  @Test
+  void sortedDistinctTest() {
+    for (int p = 0; p < 2 * sizes.length; p++) {
+      final long[] keys = keys(sizes[p / 2], p);
+      final long[] copy = keys.clone();
+      assertArrayEquals(expected(keys), ParallelBuild.sortedDistinct(keys));
+      assertArrayEquals(copy, keys);
+    }
+  }
+
+  @Test
+  void binarySearchTrieTest() {
+    for (int p = 0; p < 2 * sizes.length; p++) {
+      final long[] keys = keys(sizes[p / 2], p);
+      final BinarySearchTrie set = ParallelBuild.binarySearchTrie(keys);
+      compare(expected(keys), keys, set, reference(keys));
+
+      // splitting visits the nodes on the path of the split key, so it checks their counts
+      final BinarySearchTrie inserted = new BinarySearchTrie();
+      for (final long x : keys) {
+        inserted.insert(x);
+      }
+      final BinarySearchTrie built = ParallelBuild.binarySearchTrie(keys);
+      for (int i = 0; i < keys.length; i += Math.max(1, keys.length / 16)) {
+        assertEquals(inserted.splitAt(keys[i]).size(), built.splitAt(keys[i]).size());
+      }
+    }
+  }
+
+  @Test
+  void yFastTrieTest() {
+    for (int p = 0; p < 2 * sizes.length; p++) {
+      final long[] keys = keys(sizes[p / 2], p);
+      compare(expected(keys), keys, ParallelBuild.yFastTrie(keys), reference(keys));
+      final YFastTrie set = ParallelBuild.yFastTrie(keys, DynamicFusionNodeDontCaresInsert::new, 8);
+      compare(expected(keys), keys, set, reference(keys));
+    }
+  }
+
+  @Test
+  void buildTest() {
+    for (int p = 0; p < 2 * sizes.length; p++) {
+      final long[] keys = keys(sizes[p / 2], p);
+      compare(expected(keys), keys, ParallelBuild.build(keys, RedBlackBST::new), reference(keys));
+    }
+  }
+}
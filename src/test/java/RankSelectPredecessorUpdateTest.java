@@ -1,16 +1,28 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import integersets.LongCursor;
+import integersets.RankSelectPredecessorMap;
+import integersets.RankSelectPredecessorMultiset;
 import integersets.RankSelectPredecessorUpdate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.TreeSet;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
 class RankSelectPredecessorUpdateTest {
   
@@ -524,4 +536,484 @@ class RankSelectPredecessorUpdateTest {
       testSet.reset();
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * 1. Puts all the pseudorandomly-generated keys in {@code testMap}, with a value derived from the
+   *    key, and asserts that {@code get}, {@code valueAt} and {@code predecessorValue} agree.
+   * 2. Overwrites the values, asserting that {@code insert} keeps them and {@code put} does not.
+   * 3. Removes the keys in random order, asserting that {@code remove} returns their values.
+   * This test is executed in passes.
+   *
+   * @param testMap the data structure to be tested
+   */
+  void mapTest(final RankSelectPredecessorMap testMap) {
+
+    for (int p = 0; p < passes; p++) {
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+      for (final long key : keys) {
+        testMap.put(key, key * 31);
+      }
+
+      Long prev = null;
+      final long[] entry = new long[2];
+      for (int i = 0; i < numKeys; i++) {
+        final long key = keys.get(i);
+        final String msg = "Pass " + (p + 1) + "/" + passes + " | Key: " + key + "\n";
+        assertEquals(key * 31, (long) testMap.get(key), msg);
+        assertEquals(key * 31, (long) testMap.valueAt(i), msg);
+        assertEquals(prev, testMap.predecessorValue(key), msg);
+        assertEquals(prev != null, testMap.predecessorEntry(key, entry), msg);
+        if (prev != null) {
+          assertEquals((long) keys.get(i - 1), entry[0], msg);
+          assertEquals((long) prev, entry[1], msg);
+        }
+        if (key != -1L) {
+          assertTrue(testMap.predecessorEntry(key + 1, entry), msg);
+          assertEquals(key, entry[0], msg);
+          assertEquals(key * 31, entry[1], msg);
+        }
+
+        testMap.insert(key);
+        assertEquals(key * 31, (long) testMap.get(key), msg);
+        testMap.put(key, ~key);
+        assertEquals(~key, (long) testMap.get(key), msg);
+        assertEquals(numKeys, testMap.size(), msg);
+        prev = ~key;
+      }
+      assertNull(testMap.valueAt(numKeys));
+      assertNull(testMap.valueAt(-1));
+
+      final Random rand = new Random(seeds.get(p));
+      while (keys.size() > 0) {
+        final long key = keys.remove(rand.nextInt(keys.size()));
+        assertEquals(~key, (long) testMap.remove(key),
+            "Pass " + (p + 1) + "/" + passes + " | Key: " + key + "\n");
+        assertNull(testMap.get(key));
+        assertNull(testMap.remove(key));
+      }
+      assertTrue(testMap.isEmpty());
+    }
+  }
+
+  /**
+   * 1. Inserts the {@code i}-th smallest pseudorandomly-generated key {@code i % 3 + 1} times and
+   *    asserts that {@code size}, {@code count}, {@code rank} and {@code select} count the copies.
+   * 2. Deletes one copy of every key and asserts the same with the remaining copies.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested, constructed as a multiset
+   */
+  void multisetTest(final RankSelectPredecessorMultiset testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+      for (int i = 0; i < numKeys; i++) {
+        for (int c = 0; c <= i % 3; c++) {
+          testSet.insert(keys.get(i));
+        }
+      }
+
+      for (int round = 0; round < 2; round++) {
+        final String msg = "Pass " + (p + 1) + "/" + passes + " | Round " + round + "\n";
+        long copies = 0;
+        for (int i = 0; i < numKeys; i++) {
+          final long key = keys.get(i);
+          final long count = Math.max(0, i % 3 + 1 - round);
+          assertEquals(count, testSet.count(key), msg);
+          assertEquals(copies, testSet.rank(key), msg);
+          assertEquals(count > 0, testSet.member(key), msg);
+          for (long c = 0; c < count; c++) {
+            assertEquals(key, (long) testSet.select(copies + c), msg);
+          }
+          copies += count;
+        }
+        assertEquals(copies, testSet.size(), msg);
+        assertNull(testSet.select(copies));
+        assertEquals(copies, testSet.stream().count(), msg);
+        assertEquals(copies, testSet.stream().parallel().count(), msg);
+        final long[] ranks = new long[numKeys];
+        testSet.rankBatch(keys.stream().mapToLong(Long::longValue).toArray(), ranks);
+        for (int i = 0; i < numKeys; i++) {
+          assertEquals(testSet.rank(keys.get(i)), ranks[i], msg);
+        }
+
+        for (final long key : keys) {
+          testSet.delete(key);
+        }
+      }
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Remove them with {@code pollFirst}, {@code pollLast} and {@code deleteByRank} in turns,
+   *    asserting that the removed keys and {@code peekFirst} and {@code peekLast} agree with the
+   *    sorted keys.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void priorityQueueTest(final RankSelectPredecessorUpdate testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      insertAllKeys(testSet, p);
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+
+      int i = 0;
+      while (keys.size() > 0) {
+        final String msg = "Pass " + (p + 1) + "/" + passes + " | Iteration " + (i + 1) + "/"
+            + numKeys + "\n";
+        assertEquals(keys.get(0), testSet.peekFirst(), msg);
+        assertEquals(keys.get(keys.size() - 1), testSet.peekLast(), msg);
+        switch (i++ % 3) {
+          case 0:
+            assertEquals(keys.remove(0), testSet.pollFirst(), msg);
+            break;
+          case 1:
+            assertEquals(keys.remove(keys.size() - 1), testSet.pollLast(), msg);
+            break;
+          default:
+            final int rank = keys.size() / 2;
+            assertEquals(keys.remove(rank), testSet.deleteByRank(rank), msg);
+            break;
+        }
+        assertEquals(keys.size(), testSet.size(), msg);
+      }
+      assertNull(testSet.pollFirst());
+      assertNull(testSet.pollLast());
+      assertNull(testSet.peekFirst());
+      assertNull(testSet.deleteByRank(0));
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Split it at a key (or just past one) and assert that both halves hold the expected keys.
+   * 3. Join the halves back, asserting that joining them in the wrong order is rejected, and that
+   *    the joined set holds all the keys and the other one is left empty.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   * @param splitAt the {@code splitAt} method of the data structure
+   * @param join the {@code join} method of the data structure
+   */
+  <T extends RankSelectPredecessorUpdate> void splitAtAndJoinTest(final T testSet,
+      final BiFunction<T, Long, T> splitAt, final BiConsumer<T, T> join) {
+
+    for (int p = 0; p < passes; p++) {
+      insertAllKeys(testSet, p);
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+      final int rank = p % (numKeys + 1);
+      final long x = rank < numKeys ? keys.get(rank) + (p & 1) : keys.get(numKeys - 1) + 1;
+      final int expected = rank < numKeys ? rank + (p & 1) : numKeys;
+      final String msg = "Pass " + (p + 1) + "/" + passes + " | Split at: " + x + "\n";
+
+      final T other = splitAt.apply(testSet, x);
+      assertEquals(expected, testSet.size(), msg);
+      assertEquals(numKeys - expected, other.size(), msg);
+      for (int i = 0; i < numKeys; i++) {
+        final RankSelectPredecessorUpdate half = i < expected ? testSet : other;
+        final long key = keys.get(i);
+        assertTrue(half.member(key), msg);
+        assertFalse((i < expected ? other : testSet).member(key), msg);
+        assertEquals(i < expected ? i : i - expected, half.rank(key), msg);
+      }
+
+      if (expected > 0 && expected < numKeys) {
+        assertThrows(IllegalArgumentException.class, () -> join.accept(other, testSet), msg);
+      }
+      join.accept(testSet, other);
+      assertEquals(numKeys, testSet.size(), msg);
+      assertTrue(other.isEmpty(), msg);
+      for (int i = 0; i < numKeys; i++) {
+        assertEquals(keys.get(i), testSet.select(i), msg);
+      }
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Walk them forwards and backwards with a cursor, asserting that it visits the sorted keys and
+   *    stops at both ends.
+   * 3. Seek every key and the value following it, asserting that the cursor lands on the key and on
+   *    its successor.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void cursorTest(final RankSelectPredecessorUpdate testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      final String msg = "Pass " + (p + 1) + "/" + passes + "\n";
+      final LongCursor empty = testSet.cursor();
+      assertFalse(empty.next(), msg);
+      assertFalse(empty.prev(), msg);
+      assertFalse(empty.seek(0), msg);
+      assertThrows(NoSuchElementException.class, empty::current, msg);
+
+      insertAllKeys(testSet, p);
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+      final LongCursor cursor = testSet.cursor();
+      assertThrows(NoSuchElementException.class, cursor::current, msg);
+      for (final long key : keys) {
+        assertTrue(cursor.next(), msg);
+        assertEquals(key, cursor.current(), msg);
+      }
+      assertFalse(cursor.next(), msg);
+      assertFalse(cursor.next(), msg);
+      assertThrows(NoSuchElementException.class, cursor::current, msg);
+      for (int i = numKeys - 1; i >= 0; i--) {
+        assertTrue(cursor.prev(), msg);
+        assertEquals(keys.get(i), cursor.current(), msg);
+      }
+      assertFalse(cursor.prev(), msg);
+      assertTrue(cursor.next(), msg);
+      assertEquals(keys.get(0), cursor.current(), msg);
+
+      for (int i = 0; i < numKeys; i++) {
+        final long key = keys.get(i);
+        assertTrue(cursor.seek(key), msg);
+        assertEquals(key, cursor.current(), msg);
+        if (i > 0) {
+          assertTrue(cursor.prev(), msg);
+          assertEquals(keys.get(i - 1), cursor.current(), msg);
+        }
+        if (key != -1L && cursor.seek(key + 1)) {
+          assertEquals(keys.get(i + 1), cursor.current(), msg);
+        } else {
+          assertEquals(numKeys - 1, i, msg);
+          assertTrue(cursor.prev(), msg);
+          assertEquals(key, cursor.current(), msg);
+        }
+      }
+      assertEquals(numKeys > 0, cursor.seek(0), msg);
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Assert that sequential and parallel streams yield the sorted keys, and that the spliterator
+   *    splits them by rank into parts of exact sizes.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void streamTest(final RankSelectPredecessorUpdate testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      final String msg = "Pass " + (p + 1) + "/" + passes + "\n";
+      assertEquals(0, testSet.stream().count(), msg);
+
+      insertAllKeys(testSet, p);
+      final long[] keys = new long[numKeys];
+      long sum = 0;
+      int i = 0;
+      for (final long key : keySetList.get(p)) {
+        keys[i++] = key;
+        sum += key;
+      }
+
+      assertArrayEquals(keys, testSet.stream().toArray(), msg);
+      assertArrayEquals(keys, testSet.stream().parallel().toArray(), msg);
+      assertEquals(sum, testSet.stream().parallel().sum(), msg);
+      assertEquals(numKeys, testSet.stream().parallel().filter(x -> true).count(), msg);
+
+      final Spliterator.OfLong suffix = testSet.longSpliterator();
+      assertTrue(suffix.hasCharacteristics(Spliterator.SORTED | Spliterator.DISTINCT
+          | Spliterator.SIZED | Spliterator.SUBSIZED), msg);
+      assertTrue(suffix.tryAdvance((long x) -> assertEquals(keys[0], x, msg)), msg);
+      final Spliterator.OfLong prefix = suffix.trySplit();
+      final long expected = (numKeys - 1) / 2;
+      if (prefix != null) {
+        assertEquals(expected, prefix.getExactSizeIfKnown(), msg);
+        assertEquals(numKeys - 1 - expected, suffix.getExactSizeIfKnown(), msg);
+        final int[] rank = {1};
+        prefix.forEachRemaining((long x) -> assertEquals(keys[rank[0]++], x, msg));
+        suffix.forEachRemaining((long x) -> assertEquals(keys[rank[0]++], x, msg));
+        assertEquals(numKeys, rank[0], msg);
+      }
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Assert that {@code rankBatch} agrees with {@code rank} on the keys, their neighbours and
+   *    random values, both sorted and shuffled.
+   * 3. Assert that {@code selectBatch} agrees with {@code select} on dense, sparse and shuffled
+   *    ranks, and rejects ranks out of bounds.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void batchTest(final RankSelectPredecessorUpdate testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      insertAllKeys(testSet, p);
+      final String msg = "Pass " + (p + 1) + "/" + passes + "\n";
+      final Random rand = new Random(seeds.get(p));
+
+      final List<Long> queries = new ArrayList<>();
+      for (final long key : keySetList.get(p)) {
+        queries.add(key);
+        queries.add(key + 1);
+        queries.add(key - 1);
+        queries.add(rand.nextLong());
+      }
+      queries.add(0L);
+      queries.add(-1L);
+      queries.sort(Long::compareUnsigned);
+      for (int round = 0; round < 2; round++) {
+        final long[] x = queries.stream().mapToLong(Long::longValue).toArray();
+        final long[] out = new long[x.length];
+        testSet.rankBatch(x, out);
+        for (int i = 0; i < x.length; i++) {
+          assertEquals(testSet.rank(x[i]), out[i], msg + "Query: " + x[i] + "\n");
+        }
+        Collections.shuffle(queries, rand);
+      }
+
+      final long size = testSet.size();
+      final long[][] ranks = new long[3][];
+      ranks[0] = new long[(int) size];
+      for (int i = 0; i < size; i++) {
+        ranks[0][i] = i;
+      }
+      ranks[1] = new long[numKeys];
+      for (int i = 0; i < numKeys; i++) {
+        ranks[1][i] = (long) (rand.nextDouble() * size);
+      }
+      ranks[2] = ranks[1].clone();
+      Arrays.sort(ranks[1]);
+      for (final long[] r : ranks) {
+        final long[] out = new long[r.length];
+        testSet.selectBatch(r, out);
+        for (int i = 0; i < r.length; i++) {
+          assertEquals(testSet.select(r[i]), out[i], msg + "Rank: " + r[i] + "\n");
+        }
+      }
+      assertThrows(IndexOutOfBoundsException.class,
+          () -> testSet.selectBatch(new long[] {0, size}, new long[2]), msg);
+      assertThrows(IndexOutOfBoundsException.class,
+          () -> testSet.selectBatch(new long[] {-1}, new long[1]), msg);
+      assertThrows(IllegalArgumentException.class,
+          () -> testSet.rankBatch(new long[] {1, 2}, new long[1]), msg);
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 2. Assert that {@code rankAndPredecessorBatch} agrees with {@code rank} and
+   *    {@code predecessor} on the keys, their neighbours and random values, for several group
+   *    sizes.
+   * This test is executed in passes.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void interleavedTest(final RankSelectPredecessorUpdate testSet) {
+
+    for (int p = 0; p < passes; p++) {
+      insertAllKeys(testSet, p);
+      final Random rand = new Random(seeds.get(p));
+      final long[] queries = new long[3 * numKeys + 2];
+      int i = 0;
+      for (final long key : keySetList.get(p)) {
+        queries[i++] = key;
+        queries[i++] = key + 1;
+        queries[i++] = rand.nextLong();
+      }
+      queries[i++] = 0;
+      queries[i] = -1;
+
+      for (final int group : new int[] {1, 3, 16, queries.length + 1}) {
+        final String msg = "Pass " + (p + 1) + "/" + passes + " | Group: " + group + "\n";
+        final long[] ranks = new long[queries.length];
+        final long[] predecessors = new long[queries.length];
+        testSet.rankAndPredecessorBatch(queries, group, ranks, predecessors);
+        for (int j = 0; j < queries.length; j++) {
+          final Long pred = testSet.predecessor(queries[j]);
+          assertEquals(testSet.rank(queries[j]), ranks[j], msg);
+          assertEquals(pred == null ? 0 : pred, predecessors[j], msg);
+        }
+      }
+      assertThrows(IllegalArgumentException.class,
+          () -> testSet.rankAndPredecessorBatch(queries, 0, queries, queries));
+
+      testSet.reset();
+    }
+  }
+
+  /**
+   * 1. Checks that the quantiles of the empty {@code testSet} are rejected.
+   * 2. Insert all the pseudorandomly-generated keys in {@code testSet}.
+   * 3. Compares {@code quantile} and {@code quantiles} with the nearest-rank quantiles of the sorted
+   *    keys, including the fractions that are exact multiples of {@code 1 / numKeys}.
+   * 4. Checks that {@code percentileRank} counts the keys up to the query, and that it is the
+   *    inverse of {@code quantile} on the keys.
+   *
+   * @param testSet the data structure to be tested
+   */
+  void quantileTest(final RankSelectPredecessorUpdate testSet) {
+    assertThrows(NoSuchElementException.class, () -> testSet.quantile(0.5));
+    assertEquals(0, testSet.quantiles(new double[0]).length);
+    assertEquals(0, testSet.percentileRank(42), 0);
+
+    for (int p = 0; p < passes; p++) {
+      final String msg = "Pass " + (p + 1) + "/" + passes + "\n";
+      insertAllKeys(testSet, p);
+      final List<Long> keys = new ArrayList<>(keySetList.get(p));
+      final Random rand = new Random(seeds.get(p));
+
+      final double[] qs = new double[1000];
+      for (int i = 0; i < qs.length; i++) {
+        qs[i] = i % 2 == 0 ? rand.nextDouble() : (double) rand.nextInt(numKeys + 1) / numKeys;
+      }
+      qs[0] = 0;
+      qs[1] = 1;
+      qs[2] = 0.99;
+      final long[] res = testSet.quantiles(qs);
+      for (int i = 0; i < qs.length; i++) {
+        // the smallest rank r such that (r + 1) / numKeys >= q
+        int r = 0;
+        int hi = numKeys - 1;
+        while (r < hi) {
+          final int mid = (r + hi) >>> 1;
+          if ((double) (mid + 1) / numKeys < qs[i]) {
+            r = mid + 1;
+          } else {
+            hi = mid;
+          }
+        }
+        assertEquals((long) keys.get(r), testSet.quantile(qs[i]), msg + "q = " + qs[i]);
+        assertEquals((long) keys.get(r), res[i], msg + "q = " + qs[i]);
+      }
+
+      for (int i = 0; i < numKeys; i += Math.max(1, numKeys / 100)) {
+        final long key = keys.get(i);
+        assertEquals((double) (i + 1) / numKeys, testSet.percentileRank(key), 0, msg);
+        assertEquals(key, testSet.quantile(testSet.percentileRank(key)), msg);
+        if (i == 0 || keys.get(i - 1) != key - 1) {
+          assertEquals((double) i / numKeys, testSet.percentileRank(key - 1), 0, msg);
+        }
+      }
+      assertEquals(1, testSet.percentileRank(-1L), 0, msg);
+
+      for (final double q : new double[] {-0.1, 1.1, Double.NaN}) {
+        assertThrows(IllegalArgumentException.class, () -> testSet.quantile(q), msg);
+        assertThrows(IllegalArgumentException.class, () -> testSet.quantiles(new double[] {q}),
+            msg);
+      }
+
+      testSet.reset();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.RedBlackBST;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RedBlackBSTTest {
+
+  static final long seed = 42;
+  static final int passes = 20;
+  static final int numKeys = 100_000;
+
+  private RedBlackBST set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new RedBlackBST();
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void insertAndMemberSmallTest() {
+    test.insertAndMemberSmallTest(set);
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRangeOfKeysTest() {
+    test.insertThenDeleteRangeOfKeysTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+  
+  @Test
+  void deleteTest() {
+    test.deleteTest(set);
+  }
+
+  @Test
+  void sizeTest() {
+    test.sizeTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void selectOfRankTest() {
+    test.selectOfRankTest(set);
+  }
+
+  @Test
+  void rankOfSelectTest() {
+    test.rankOfSelectTest(set);
+  }
+
+  @Test
+  void heightTest() {
+    // sorted insertions and deletions are the worst case of an unbalanced tree
+    final int n = (1 << 16) - 1;
+    for (long x = 0; x < n; x++) {
+      set.insert(x);
+      assertTrue(set.height() <= 2 * (64 - Long.numberOfLeadingZeros(x + 1)));
+    }
+    assertEquals(n, set.size());
+    for (long x = 0; x < n; x += 2) {
+      set.delete(x);
+    }
+    assertTrue(set.height() <= 2 * 15);
+    for (long x = 1; x < n; x += 2) {
+      assertEquals(x / 2, set.rank(x));
+      assertEquals(x, (long) set.select(x / 2));
+    }
+  }
+
+  @Test
+  void priorityQueueTest() {
+    test.priorityQueueTest(set);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  @Test
+  void streamTest() {
+    test.streamTest(set);
+  }
+
+  @Test
+  void batchTest() {
+    test.batchTest(set);
+  }
+
+  @Test
+  void interleavedTest() {
+    test.interleavedTest(set);
+  }
+
+  @Test
+  void quantileTest() {
+    test.quantileTest(set);
+  }
+}
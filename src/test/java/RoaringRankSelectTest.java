@@ -0,0 +1,171 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.LongCursor;
+import integersets.RoaringRankSelect;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RoaringRankSelectTest {
+
+  static final long seed = 42;
+  static final int passes = 10;
+  static final int numKeys = 100_000;
+
+  private RoaringRankSelect set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new RoaringRankSelect();
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void insertAndMemberSmallTest() {
+    test.insertAndMemberSmallTest(set);
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRangeOfKeysTest() {
+    test.insertThenDeleteRangeOfKeysTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+  
+  @Test
+  void deleteTest() {
+    test.deleteTest(set);
+  }
+
+  @Test
+  void sizeTest() {
+    test.sizeTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void selectOfRankTest() {
+    test.selectOfRankTest(set);
+  }
+
+  @Test
+  void rankOfSelectTest() {
+    test.rankOfSelectTest(set);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+  }
+
+  /**
+   * Compares every query around the keys of {@code reference}, below {@code bound}, and a walk of
+   * the cursor over all the keys, with {@code set}.
+   */
+  private void assertSameSet(final TreeSet<Long> reference, final long bound) {
+    assertEquals(reference.size(), set.size());
+    long rank = 0;
+    for (long x = 0; x < bound; x++) {
+      assertEquals(reference.contains(x), set.member(x), "member " + x);
+      assertEquals(rank, set.rank(x), "rank " + x);
+      assertEquals(reference.lower(x), set.predecessor(x), "predecessor " + x);
+      assertEquals(reference.ceiling(x), set.successor(x), "successor " + x);
+      if (reference.contains(x)) {
+        assertEquals(x, (long) set.select(rank));
+        rank++;
+      }
+    }
+
+    final LongCursor cursor = set.cursor();
+    for (final long key : reference) {
+      assertTrue(cursor.next());
+      assertEquals(key, cursor.current());
+    }
+    assertFalse(cursor.next());
+    for (final long key : reference.descendingSet()) {
+      assertTrue(cursor.prev());
+      assertEquals(key, cursor.current());
+    }
+    assertFalse(cursor.prev());
+  }
+
+  @Test
+  void containerKindsTest() {
+    final TreeSet<Long> reference = new TreeSet<>();
+    final long bound = 4 * 65536;
+
+    // one long run in the first two partitions
+    for (long x = 0; x < 100_000; x++) {
+      set.insert(x);
+      reference.add(x);
+    }
+    assertArrayEquals(new int[] {0, 0, 2}, set.containerCounts());
+    assertSameSet(reference, bound);
+
+    // every other key of the run: too many runs, and too many keys for an array
+    for (long x = 1; x < 100_000; x += 2) {
+      set.delete(x);
+      reference.remove(x);
+    }
+    assertArrayEquals(new int[] {0, 2, 0}, set.containerCounts());
+    assertSameSet(reference, bound);
+
+    // random keys in the last two partitions
+    final Random rand = new Random(seed);
+    for (int i = 0; i < 20_000; i++) {
+      final long x = 2 * 65536 + rand.nextInt(2 * 65536);
+      set.insert(x);
+      reference.add(x);
+    }
+    assertSameSet(reference, bound);
+
+    for (long x = 0; x < 100_000; x += 2) {
+      if (x % 1024 != 0) {
+        set.delete(x);
+        reference.remove(x);
+      }
+    }
+    set.runOptimize();
+    assertSameSet(reference, bound);
+    assertArrayEquals(new int[] {2, 2, 0}, set.containerCounts());
+  }
+}
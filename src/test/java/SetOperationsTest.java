@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import integersets.BinarySearchTrie;
+import integersets.DynamicFusionNodeBinaryRank;
+import integersets.RankSelectPredecessorUpdate;
+import integersets.RedBlackBST;
+import integersets.SetOperations;
+import integersets.YFastTrie;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+
+class SetOperationsTest {
+
+  static final long seed = 42;
+  static final int passes = 300;
+
+  /**
+   * Builds pseudorandom sets of different sizes and overlaps in both {@code supplier} sets and
+   * {@code TreeSet}s, and compares the results of every operation.
+   */
+  private static void compareWithTreeSet(final Supplier<RankSelectPredecessorUpdate> supplier,
+      final int maxKeys) {
+    final Random rand = new Random(seed);
+    for (int p = 0; p < passes; p++) {
+      final RankSelectPredecessorUpdate a = supplier.get();
+      final RankSelectPredecessorUpdate b = supplier.get();
+      final TreeSet<Long> refA = new TreeSet<>(Long::compareUnsigned);
+      final TreeSet<Long> refB = new TreeSet<>(Long::compareUnsigned);
+      // small universes give large overlaps, and uneven sizes exercise the skips
+      final int universe = p % 3 == 0 ? Integer.MAX_VALUE : 4 * maxKeys;
+      final int sizeA = rand.nextInt(maxKeys + 1);
+      final int sizeB = p % 2 == 0 ? rand.nextInt(maxKeys + 1) : rand.nextInt(sizeA / 8 + 1);
+      while (refA.size() < sizeA) {
+        final long x = rand.nextInt(universe) * 0x9E3779B97F4A7C15L;
+        refA.add(x);
+        a.insert(x);
+      }
+      while (refB.size() < sizeB) {
+        final long x = rand.nextInt(universe) * 0x9E3779B97F4A7C15L;
+        refB.add(x);
+        b.insert(x);
+      }
+      final String msg = "Pass " + (p + 1) + "/" + passes + "\n";
+
+      final TreeSet<Long> union = new TreeSet<>(refA);
+      union.addAll(refB);
+      final TreeSet<Long> intersection = new TreeSet<>(refA);
+      intersection.retainAll(refB);
+      final TreeSet<Long> difference = new TreeSet<>(refA);
+      difference.removeAll(refB);
+
+      assertSame(union, SetOperations.union(a, b, supplier), msg);
+      assertSame(union, SetOperations.union(b, a, supplier), msg);
+      assertSame(intersection, SetOperations.intersection(a, b, supplier), msg);
+      assertSame(intersection, SetOperations.intersection(b, a, supplier), msg);
+      assertSame(difference, SetOperations.difference(a, b, supplier), msg);
+      final TreeSet<Long> reverse = new TreeSet<>(refB);
+      reverse.removeAll(refA);
+      assertSame(reverse, SetOperations.difference(b, a, supplier), msg);
+
+      assertEquals(union.size(), SetOperations.unionSize(a, b), msg);
+      assertEquals(intersection.size(), SetOperations.intersectionSize(b, a), msg);
+      assertEquals(difference.size(), SetOperations.differenceSize(a, b), msg);
+      assertEquals(reverse.size(), SetOperations.differenceSize(b, a), msg);
+      assertEquals(sizeA, a.size(), msg);
+      assertEquals(sizeB, b.size(), msg);
+    }
+  }
+
+  private static void assertSame(final TreeSet<Long> expected,
+      final RankSelectPredecessorUpdate actual, final String msg) {
+    assertEquals(expected.size(), actual.size(), msg);
+    int i = 0;
+    for (final long key : expected) {
+      assertEquals(key, (long) actual.select(i++), msg);
+    }
+  }
+
+  @Test
+  void binarySearchTrieTest() {
+    compareWithTreeSet(BinarySearchTrie::new, 2_000);
+  }
+
+  @Test
+  void redBlackBSTTest() {
+    compareWithTreeSet(RedBlackBST::new, 2_000);
+  }
+
+  @Test
+  void yFastTrieTest() {
+    compareWithTreeSet(YFastTrie::new, 2_000);
+  }
+
+  @Test
+  void fusionNodeTest() {
+    compareWithTreeSet(DynamicFusionNodeBinaryRank::new, 8);
+  }
+
+  @Test
+  void emptySetsTest() {
+    final BinarySearchTrie a = new BinarySearchTrie();
+    final BinarySearchTrie b = new BinarySearchTrie();
+    assertEquals(0, SetOperations.union(a, b, BinarySearchTrie::new).size());
+    a.insert(-1);
+    assertEquals(1, SetOperations.union(a, b, BinarySearchTrie::new).size());
+    assertEquals(0, SetOperations.intersection(a, b, BinarySearchTrie::new).size());
+    assertEquals(1, SetOperations.difference(a, b, BinarySearchTrie::new).size());
+    assertEquals(0, SetOperations.difference(b, a, BinarySearchTrie::new).size());
+    assertEquals(1, SetOperations.unionSize(b, a));
+  }
+}
@@ -0,0 +1,140 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import integersets.LongCursor;
+import integersets.StaticFusionTree;
+import integersets.Util;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class StaticFusionTreeTest {
+
+  static final long seed = 42;
+  static final int passes = 1_000;
+  static final int[] sizes = {0, 1, 2, 7, 8, 9, 63, 64, 65, 513, 10_000};
+
+  /**
+   * Reference rank: the number of keys in the sorted array {@code keys} that are strictly smaller
+   * than {@code x}, computed with unsigned binary search.
+   */
+  private static long rank(final long[] keys, final long x) {
+    int lo = 0;
+    int hi = keys.length;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      if (Long.compareUnsigned(keys[mid], x) < 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    final StaticFusionTree set = new StaticFusionTree(new long[] {10, 12, 42, -1337, -42});
+    assertEquals(5, set.size());
+
+    assertTrue(set.member(10));
+    assertFalse(set.member(11));
+    assertEquals(0, set.rank(10));
+    assertEquals(1, set.rank(11));
+    assertEquals(2, set.rank(42));
+    assertEquals(3, set.rank(-1337));
+    assertEquals(4, set.rank(-1000));
+    assertEquals(5, set.rank(-1));
+
+    assertEquals(null, set.predecessor(10));
+    assertEquals(12L, set.predecessor(42));
+    assertEquals(-1337L, set.predecessor(-42));
+    assertEquals(12L, set.successor(11));
+    assertEquals(-42L, set.successor(-1000));
+    assertEquals(null, set.successor(-1));
+
+    final LongCursor cursor = set.cursor();
+    assertTrue(cursor.seek(11));
+    assertEquals(12, cursor.current());
+    assertTrue(cursor.next());
+    assertEquals(42, cursor.current());
+    assertFalse(cursor.seek(-41));
+    assertTrue(cursor.prev());
+    assertEquals(-42, cursor.current());
+  }
+
+  @Test
+  void rankTest() {
+    for (final int n : sizes) {
+      final long[] keys = Util.distinctSortedLongs(n, seed + n);
+      final StaticFusionTree set = new StaticFusionTree(keys);
+      assertEquals(n, set.size());
+
+      for (int i = 0; i < n; i++) {
+        assertEquals(i, set.rank(keys[i]), "n = " + n + " | rank of key " + i + "\n");
+        assertEquals(rank(keys, keys[i] + 1), set.rank(keys[i] + 1),
+            "n = " + n + " | rank of key " + i + " + 1\n");
+        assertEquals(rank(keys, keys[i] - 1), set.rank(keys[i] - 1),
+            "n = " + n + " | rank of key " + i + " - 1\n");
+      }
+
+      final Random rand = new Random(seed);
+      for (int p = 0; p < passes; p++) {
+        final long x = rand.nextLong();
+        assertEquals(rank(keys, x), set.rank(x), "n = " + n + " | query " + x + "\n");
+      }
+      assertEquals(0, set.rank(0));
+      assertEquals(rank(keys, -1), set.rank(-1));
+    }
+  }
+
+  @Test
+  void boundedKeysRankTest() {
+    // dense keys share long prefixes, exercising nodes with few significant positions
+    final long[] keys = Util.distinctBoundedSortedLongs(5_000, 20_000, seed);
+    final StaticFusionTree set = new StaticFusionTree(keys);
+
+    for (long x = 0; x < 20_010; x++) {
+      assertEquals(rank(keys, x), set.rank(x), "query " + x + "\n");
+    }
+  }
+
+  @Test
+  void selectOfRankTest() {
+    final long[] keys = Util.distinctSortedLongs(10_000, seed);
+    final StaticFusionTree set = new StaticFusionTree(keys);
+
+    for (final long key : keys) {
+      assertEquals(key, set.select(set.rank(key)));
+      assertEquals(key, set.successor(key));
+      assertTrue(set.member(key));
+    }
+    assertEquals(null, set.select(-1));
+    assertEquals(null, set.select(keys.length));
+  }
+
+  @Test
+  void heightTest() {
+    assertEquals(0, new StaticFusionTree(new long[0]).height());
+    assertEquals(1, new StaticFusionTree(Util.distinctSortedLongs(8)).height());
+    assertEquals(2, new StaticFusionTree(Util.distinctSortedLongs(9)).height());
+    assertEquals(3, new StaticFusionTree(Util.distinctSortedLongs(512)).height());
+    assertEquals(4, new StaticFusionTree(Util.distinctSortedLongs(513)).height());
+  }
+
+  @Test
+  void invalidInputTest() {
+    assertThrows(IllegalArgumentException.class, () -> new StaticFusionTree(new long[] {2, 1}));
+    assertThrows(IllegalArgumentException.class, () -> new StaticFusionTree(new long[] {1, 1}));
+    assertThrows(IllegalArgumentException.class, () -> new StaticFusionTree(new long[] {-1, 1}));
+  }
+
+  @Test
+  void updateTest() {
+    final StaticFusionTree set = new StaticFusionTree(new long[] {1, 2, 3});
+    assertThrows(UnsupportedOperationException.class, () -> set.insert(4));
+    assertThrows(UnsupportedOperationException.class, () -> set.delete(1));
+    assertThrows(UnsupportedOperationException.class, () -> set.reset());
+  }
+}
@@ -0,0 +1,103 @@
+import integersets.DynamicFusionNodeDontCaresInsert;
+import integersets.YFastTrie;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class YFastTrieTest {
+
+  static final long seed = 42;
+  static final int passes = 3;
+  static final int numKeys = 100_000;
+
+  private YFastTrie set;
+  private static RankSelectPredecessorUpdateTest test;
+
+  @BeforeAll
+  static void generateTests() {
+    test = new RankSelectPredecessorUpdateTest(seed, passes, numKeys);
+  }
+
+  @BeforeEach
+  void setUp() {
+    set = new YFastTrie();
+  }
+
+  @AfterEach
+  void tearDown() {
+    set = null;
+  }
+
+  @AfterAll
+  static void clear() {
+    test = null;
+  }
+
+  @Test
+  void insertAndMemberSmallTest() {
+    test.insertAndMemberSmallTest(set);
+  }
+
+  @Test
+  void smallCorrectnessTest() {
+    test.smallCorrectnessTest(set);
+  }
+
+  @Test
+  void insertThenMemberTest() {
+    test.insertThenMemberTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRangeOfKeysTest() {
+    test.insertThenDeleteRangeOfKeysTest(set);
+  }
+
+  @Test
+  void insertThenDeleteRandomKeysTest() {
+    test.insertThenDeleteRandomKeysTest(set);
+  }
+  
+  @Test
+  void deleteTest() {
+    test.deleteTest(set);
+  }
+
+  @Test
+  void sizeTest() {
+    test.sizeTest(set);
+  }
+
+  @Test
+  void growingRankTest() {
+    test.growingRankTest(set);
+  }
+
+  @Test
+  void selectOfRankTest() {
+    test.selectOfRankTest(set);
+  }
+
+  @Test
+  void rankOfSelectTest() {
+    test.rankOfSelectTest(set);
+  }
+
+  @Test
+  void cursorTest() {
+    test.cursorTest(set);
+    test.cursorTest(new YFastTrie(DynamicFusionNodeDontCaresInsert::new, 8));
+  }
+
+  @Test
+  void dontCaresInsertBucketsTest() {
+    final YFastTrie dontCaresSet = new YFastTrie(DynamicFusionNodeDontCaresInsert::new, 8);
+    test.smallCorrectnessTest(dontCaresSet);
+    dontCaresSet.reset();
+    test.growingRankTest(dontCaresSet);
+    test.rankOfSelectTest(dontCaresSet);
+    test.insertThenDeleteRandomKeysTest(dontCaresSet);
+  }
+}